@@ -0,0 +1,45 @@
+package org.opennms.riptide;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building flows and records through the builders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuilderBenchmark {
+
+    private final Instant time = Instant.now();
+    private final FlowRecord record = FlowBenchmark.record(0).build();
+
+    @Benchmark
+    public FlowRecord record() {
+        return FlowBenchmark.record(0).build();
+    }
+
+    @Benchmark
+    public Flow flow() {
+        return Flow.builder()
+                .withUptime(Duration.ofMillis(5000))
+                .withTime(this.time)
+                .withRecord(this.record)
+                .withRecord(this.record)
+                .build();
+    }
+}
@@ -0,0 +1,86 @@
+package org.opennms.riptide;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * Encoding of a flow with a varying number of records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlowBenchmark {
+
+    @Param({"1", "2", "30"})
+    public int records;
+
+    private Flow flow;
+
+    private final NetflowV5Encoder encoder = new NetflowV5Encoder();
+    private final ByteBuffer buffer = ByteBuffer.allocate(Encoder.MAX_PACKET_SIZE);
+
+    static FlowRecord.Builder record(final int i) {
+        return FlowRecord.builder()
+                .withSrcAddr((Inet4Address) InetAddresses.fromInteger(0x0A000000 + i))
+                .withDstAddr((Inet4Address) InetAddresses.fromInteger(0x0A010000 + i))
+                .withNextHop((Inet4Address) InetAddresses.fromInteger(0x0A0000FE))
+                .withSnmpInputIface(1)
+                .withSnmpOutputIface(2)
+                .withPackets(10)
+                .withOctets(1500)
+                .withFirstUptime(Duration.ofMillis(1000))
+                .withLastUptime(Duration.ofMillis(2000))
+                .withSrcPort(40000 + i)
+                .withDstPort(80)
+                .withProtocol((short) 6);
+    }
+
+    @Setup
+    public void setup() {
+        final Flow.Builder builder = Flow.builder()
+                .withUptime(Duration.ofMillis(5000))
+                .withTime(Instant.now());
+        for (int i = 0; i < this.records; i++) {
+            builder.withRecord(record(i));
+        }
+        this.flow = builder.build();
+    }
+
+    /**
+     * Allocates a fresh buffer per flow.
+     */
+    @Benchmark
+    public ByteBuffer write() {
+        return this.flow.write();
+    }
+
+    /**
+     * Encodes into a re-used buffer as the senders do.
+     */
+    @Benchmark
+    public ByteBuffer encode() {
+        this.buffer.clear();
+        this.encoder.encode(this.flow, this.buffer);
+        return this.buffer;
+    }
+}
@@ -0,0 +1,107 @@
+package org.opennms.riptide;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Header assembly of the spoofing sender and sending through a datagram socket to a loopback sink.
+ *
+ * The spoofing sender needs a raw socket and therefore root privileges - only the assembly of the headers in front of
+ * the encoded payload is measured here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SenderBenchmark {
+
+    private final static int HEADER_SIZE = UdpHeaderTemplate.SIZE;
+
+    private Flow flow;
+
+    private final NetflowV5Encoder encoder = new NetflowV5Encoder();
+    private final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + Encoder.MAX_PACKET_SIZE);
+
+    private Inet4SockAddr source;
+    private Inet4SockAddr target;
+
+    private UdpHeaderTemplate template;
+    private int identification = 0;
+
+    private DatagramChannel sink;
+    private SimpleSender sender;
+
+    @Setup
+    public void setup() throws IOException {
+        this.flow = Flow.builder()
+                .withUptime(Duration.ofMillis(5000))
+                .withTime(Instant.now())
+                .withRecord(FlowBenchmark.record(0))
+                .withRecord(FlowBenchmark.record(1))
+                .build();
+
+        final Inet4Address loopback = (Inet4Address) InetAddress.getLoopbackAddress();
+
+        // The sink is never read - the kernel drops whatever does not fit into its receive buffer
+        this.sink = DatagramChannel.open();
+        this.sink.bind(new InetSocketAddress(loopback, 0));
+
+        this.source = new Inet4SockAddr(loopback, 9995);
+        this.target = new Inet4SockAddr(loopback, ((InetSocketAddress) this.sink.getLocalAddress()).getPort());
+
+        this.template = new UdpHeaderTemplate(this.source, this.target);
+
+        this.sender = new SimpleSender(Collections.singletonList(this.target));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.sender.close();
+        this.sink.close();
+    }
+
+    /**
+     * Encodes behind the headers and completes the header template including checksums as {@link SpoofingSender}
+     * does.
+     */
+    @Benchmark
+    public ByteBuffer spoofingHeaders() {
+        this.buffer.clear();
+        this.buffer.position(HEADER_SIZE);
+        this.encoder.encode(this.flow, this.buffer);
+
+        final int payloadLength = this.buffer.position() - HEADER_SIZE;
+        final int payloadSum = PacketHeaders.sum(this.buffer.array(), HEADER_SIZE, payloadLength);
+
+        this.template.write(this.buffer.array(), 0, payloadLength, payloadSum, this.identification++ & 0xFFFF);
+
+        return this.buffer;
+    }
+
+    @Benchmark
+    public void simpleSender() {
+        this.sender.send(this.flow);
+    }
+}
@@ -0,0 +1,84 @@
+package org.opennms.riptide;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The per-tick body of a simulation without any sleeping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBenchmark {
+
+    private Simulation simulation;
+    private Iterator<Simulation.Positional.Positioned<Timespan>> ticks;
+
+    private final FlowRecordBatch records = new FlowRecordBatch(Simulation.RECORDS_PER_TICK);
+
+    private Aggregator aggregator;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        final TcpSession session = TcpSession.builder()
+                .withClient(Endpoint.builder().withAddress("10.0.0.1").build())
+                .withServer(Endpoint.builder().withAddress("10.0.0.2").withPort(80).build())
+                .withDuration(Duration.ofDays(365))
+                .withSendSize(1_000_000_000L)
+                .withSendPackets(1_000_000L)
+                .withRecvSize(500_000_000L)
+                .withRecvPackets(500_000L)
+                .build();
+
+        this.simulation = new Simulation(session, Duration.ofSeconds(1), Instant.EPOCH);
+        this.ticks = Simulation.Positional.from(this.simulation.ticker()).iterator();
+
+        this.aggregator = new Aggregator(new ConsumingSender(blackhole::consume), Aggregator.MAX_RECORDS);
+    }
+
+    private Simulation.Positional.Positioned<Timespan> tick() {
+        if (!this.ticks.hasNext()) {
+            this.ticks = Simulation.Positional.from(this.simulation.ticker()).iterator();
+        }
+        return this.ticks.next();
+    }
+
+    /**
+     * Builds a flow per tick as {@link Simulation#simulate(Simulation.Sender)} does.
+     */
+    @Benchmark
+    public Flow flow() {
+        return this.simulation.flow(this.tick()).build();
+    }
+
+    /**
+     * Appends the records of a tick to a re-used batch and aggregates them as the engine does.
+     */
+    @Benchmark
+    public void records() {
+        final Simulation.Positional.Positioned<Timespan> tick = this.tick();
+
+        this.records.clear();
+        this.simulation.records(tick, this.records);
+
+        final long time = tick.element.e.toEpochMilli();
+        this.aggregator.add(this.records, time, time);
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.riptide;
+
+import java.time.Instant;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Packs the records of many flows into as few packets as possible.
+ *
+ * Records are copied into a pending batch until a packet is full and sent out as one flow. The header of the emitted
+ * flow is taken from the latest records added. Partially filled packets are held back until {@link #flush()} is called,
+ * which is expected to happen periodically to bound the delay of a record.
+ *
+ * The pending batch is handed to the sender without copying, wrapped in a flow whose header is filled in place, and
+ * both are re-used as soon as the sender returns, so no garbage is produced per packet.
+ *
+ * As the packets are re-assembled, the flow sequence is re-calculated as the number of records sent before by the
+ * exporter and the packet sequence as the number of packets sent before. Multiple aggregators, each owned by a single thread, can share an exporter.
+ */
+public class Aggregator {
+
+    public final static int MAX_RECORDS = NetflowV5Encoder.MAX_RECORDS;
+
+    private final static int IP_UDP_HEADER_SIZE = 20 + 8;
+
+    private final Simulation.Sender sender;
+    private final Exporter exporter;
+
+    private final FlowRecordBatch pending;
+    private final FlowHeader header;
+    private final Flow flow;
+
+    private long time;
+    private long uptime;
+
+    public Aggregator(final Simulation.Sender sender, final int maxRecords) {
+        this(sender, maxRecords, Exporter.random(Instant.now()));
+    }
+
+    public Aggregator(final Simulation.Sender sender, final int maxRecords, final Exporter exporter) {
+        Preconditions.checkArgument(maxRecords > 0 && maxRecords <= 0xFFFF, "Records per packet must be between 1 and 65535");
+
+        this.sender = Preconditions.checkNotNull(sender);
+        this.exporter = Preconditions.checkNotNull(exporter);
+
+        this.pending = new FlowRecordBatch(maxRecords);
+        this.header = new FlowHeader();
+        this.flow = new Flow(this.header, this.pending);
+    }
+
+    public Exporter exporter() {
+        return this.exporter;
+    }
+
+    /**
+     * Returns the number of Netflow v5 records fitting into a single datagram of the given MTU.
+     */
+    public static int recordsPerPacket(final int mtu) {
+        return recordsPerPacket(new NetflowV5Encoder(), mtu);
+    }
+
+    /**
+     * Returns the number of records fitting into a single datagram of the given MTU using the given encoder.
+     */
+    public static int recordsPerPacket(final Encoder encoder, final int mtu) {
+        return encoder.maxRecords(Math.min(Encoder.MAX_PACKET_SIZE, mtu - IP_UDP_HEADER_SIZE));
+    }
+
+    /**
+     * Adds all records of the batch.
+     *
+     * @param time the export time of the records in epoch milliseconds
+     * @param uptime the uptime of the exporter at export time in milliseconds
+     */
+    public void add(final FlowRecordBatch records, final long time, final long uptime) {
+        this.time = time;
+        this.uptime = uptime;
+
+        for (int i = 0; i < records.size(); i++) {
+            this.pending.add(records, i);
+
+            if (this.pending.isFull()) {
+                this.emit();
+            }
+        }
+    }
+
+    public void flush() {
+        if (!this.pending.isEmpty()) {
+            this.emit();
+        }
+
+        this.sender.flush();
+    }
+
+    private void emit() {
+        this.header.set(this.uptime, this.time,
+                this.exporter.reserve(this.pending.size()),
+                this.exporter.reservePacket(),
+                this.exporter.engineType,
+                this.exporter.engineId);
+
+        if (this.exporter.source != null) {
+            this.sender.send(this.flow, this.exporter.source);
+        } else {
+            this.sender.send(this.flow);
+        }
+
+        this.pending.clear();
+    }
+}
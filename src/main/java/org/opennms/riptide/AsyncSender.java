@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Publishes packets into a {@link PacketRing} instead of sending them.
+ *
+ * Flows are encoded right into the claimed slot on the calling thread, so the generator never waits for a socket. The
+ * packets are sent by the threads draining the ring. Each generator thread needs its own instance as the encoder is not
+ * shared.
+ */
+public class AsyncSender implements Simulation.Sender {
+
+    private final PacketRing ring;
+    private final Encoder encoder;
+    private final Inet4SockAddr source;
+
+    /**
+     * @param source the source used for flows sent without one
+     */
+    public AsyncSender(final PacketRing ring,
+                       final Encoder encoder,
+                       final Inet4SockAddr source) {
+        this.ring = Preconditions.checkNotNull(ring);
+        this.encoder = Preconditions.checkNotNull(encoder);
+        this.source = Preconditions.checkNotNull(source);
+    }
+
+    @Override
+    public void send(final Flow flow) {
+        this.send(flow, this.source);
+    }
+
+    @Override
+    public void send(final Flow flow, final Inet4SockAddr source) {
+        final long position = this.ring.claim(this.encoder.size(flow));
+        if (position < 0) {
+            return;
+        }
+
+        this.encoder.encode(flow, this.ring.buffer(position));
+        this.ring.publish(position, source != null ? source : this.source);
+    }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        final long position = this.ring.claim(packet.remaining());
+        if (position < 0) {
+            return;
+        }
+
+        this.ring.buffer(position).put(packet);
+        this.ring.publish(position, source != null ? source : this.source);
+    }
+}
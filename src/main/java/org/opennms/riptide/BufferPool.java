@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A pool of equally sized buffers.
+ *
+ * Buffers are created on demand and handed back to the pool after use. Released buffers are cleared and re-used by
+ * later acquisitions which avoids allocations in steady state.
+ */
+public class BufferPool {
+
+    private final int capacity;
+    private final boolean direct;
+
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+
+    public BufferPool(final int capacity, final boolean direct) {
+        Preconditions.checkArgument(capacity > 0);
+
+        this.capacity = capacity;
+        this.direct = direct;
+    }
+
+    public synchronized ByteBuffer acquire() {
+        final ByteBuffer buffer = this.buffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+
+        return this.direct
+                ? ByteBuffer.allocateDirect(this.capacity)
+                : ByteBuffer.allocate(this.capacity);
+    }
+
+    public synchronized void release(final ByteBuffer buffer) {
+        Preconditions.checkArgument(buffer.capacity() == this.capacity);
+
+        buffer.clear();
+        this.buffers.push(buffer);
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.riptide;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Sends packets using a connected {@link DatagramChannel} per target.
+ *
+ * Flows are encoded into pooled direct buffers and queued. As soon as the queue is full or the sender is flushed, all
+ * queued packets are written to one target after the other. A failure to send to one target does not affect the other
+ * targets and is counted per target.
+ */
+public class ChannelSender implements Simulation.Sender {
+    private final static Logger LOG = LoggerFactory.getLogger(ChannelSender.class);
+
+    public final static int DEFAULT_BATCH_SIZE = 64;
+
+    private final List<Inet4SockAddr> targets;
+    private final DatagramChannel[] channels;
+
+    private final long[] sent;
+    private final long[] failed;
+
+    private final Metrics.Target[] metrics;
+
+    private final Encoder encoder;
+    private final BufferPool pool;
+
+    private final ByteBuffer[] queue;
+    private int queued = 0;
+
+    public ChannelSender(final List<Inet4SockAddr> targets) throws IOException {
+        this(targets, new NetflowV5Encoder(), 0, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param sendBufferSize the size of the socket send buffer or {@code 0} to use the system default
+     * @param batchSize the number of packets queued before they are written out
+     */
+    public ChannelSender(final List<Inet4SockAddr> targets,
+                         final Encoder encoder,
+                         final int sendBufferSize,
+                         final int batchSize) throws IOException {
+        this(targets, encoder, sendBufferSize, batchSize, new Metrics());
+    }
+
+    /**
+     * @param sendBufferSize the size of the socket send buffer or {@code 0} to use the system default
+     * @param batchSize the number of packets queued before they are written out
+     * @param metrics the metrics to count the sent packets per target in
+     */
+    public ChannelSender(final List<Inet4SockAddr> targets,
+                         final Encoder encoder,
+                         final int sendBufferSize,
+                         final int batchSize,
+                         final Metrics metrics) throws IOException {
+        Preconditions.checkArgument(batchSize > 0);
+
+        this.targets = Preconditions.checkNotNull(targets);
+        this.encoder = Preconditions.checkNotNull(encoder);
+
+        this.channels = new DatagramChannel[this.targets.size()];
+        for (int i = 0; i < this.channels.length; i++) {
+            final DatagramChannel channel = DatagramChannel.open();
+            if (sendBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+            }
+            channel.connect(this.targets.get(i).toSocketAddress());
+
+            this.channels[i] = channel;
+        }
+
+        this.sent = new long[this.channels.length];
+        this.failed = new long[this.channels.length];
+
+        this.metrics = new Metrics.Target[this.channels.length];
+        for (int i = 0; i < this.metrics.length; i++) {
+            this.metrics[i] = metrics.target(this.targets.get(i));
+        }
+
+        this.pool = new BufferPool(Encoder.MAX_PACKET_SIZE, true);
+        this.queue = new ByteBuffer[batchSize];
+    }
+
+    @Override
+    public void send(final Flow flow) {
+        final ByteBuffer buffer = this.pool.acquire();
+        this.encoder.encode(flow, buffer);
+        buffer.flip();
+
+        this.enqueue(buffer);
+    }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        final ByteBuffer buffer = this.pool.acquire();
+        buffer.put(packet);
+        buffer.flip();
+
+        this.enqueue(buffer);
+    }
+
+    private void enqueue(final ByteBuffer buffer) {
+        this.queue[this.queued++] = buffer;
+        if (this.queued == this.queue.length) {
+            this.drain();
+        }
+    }
+
+    @Override
+    public void flush() {
+        this.drain();
+    }
+
+    private void drain() {
+        for (int i = 0; i < this.channels.length; i++) {
+            final DatagramChannel channel = this.channels[i];
+
+            for (int j = 0; j < this.queued; j++) {
+                final ByteBuffer buffer = this.queue[j];
+                buffer.rewind();
+
+                try {
+                    final int length = channel.write(buffer);
+                    this.sent[i]++;
+                    this.metrics[i].sent(length);
+                } catch (final IOException e) {
+                    this.metrics[i].failed();
+                    // Keep going with the next packet and target
+                    if (this.failed[i]++ == 0) {
+                        LOG.error("Failed to send packet to {}", this.targets.get(i), e);
+                    } else {
+                        LOG.debug("Failed to send packet to {}", this.targets.get(i), e);
+                    }
+                }
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Sent {} packets to {}", this.queued, this.targets.get(i));
+            }
+        }
+
+        for (int j = 0; j < this.queued; j++) {
+            this.pool.release(this.queue[j]);
+            this.queue[j] = null;
+        }
+
+        this.queued = 0;
+    }
+
+    public long sent(final int target) {
+        return this.sent[target];
+    }
+
+    public long failed(final int target) {
+        return this.failed[target];
+    }
+
+    @Override
+    public void close() {
+        this.drain();
+
+        for (int i = 0; i < this.channels.length; i++) {
+            LOG.info("Sent {} packets to {} ({} failed)", this.sent[i], this.targets.get(i), this.failed[i]);
+
+            try {
+                this.channels[i].close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close channel to {}", this.targets.get(i), e);
+            }
+        }
+    }
+}
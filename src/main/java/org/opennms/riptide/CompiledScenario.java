@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.net.InetAddresses;
+
+/**
+ * A scenario compiled into a fixed-width binary file.
+ *
+ * All addresses are resolved and all ports are drawn at compile time. The file is mapped into memory and sessions are
+ * materialized while iterating, so opening a file takes the same time regardless of the number of sessions in it.
+ *
+ * Session times are stored in milliseconds relative to the time of compilation and are anchored at the time given on
+ * open. All values are stored in network byte order:
+ * <pre>
+ * header:  magic (4) | version (2) | record size (2) | session count (8)
+ * session: start offset (8) | duration (8) | send size (8) | send packets (8) | recv size (8) | recv packets (8) |
+ *          client endpoint (20) | server endpoint (20)
+ * endpoint: address (4) | gateway (4) | snmp interface (4) | AS (4) | port (2) | mask (1) | padding (1)
+ * </pre>
+ *
+ * This class is not thread-safe.
+ */
+public class CompiledScenario implements SessionSource {
+
+    public final static int MAGIC = 0x52495043; // "RIPC"
+    public final static short VERSION = 1;
+
+    final static int HEADER_SIZE = 16;
+    final static int ENDPOINT_SIZE = 20;
+    final static int RECORD_SIZE = 48 + 2 * ENDPOINT_SIZE;
+
+    private final static int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // Sessions never span regions
+    private final static long RECORDS_PER_REGION = Integer.MAX_VALUE / RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final long size;
+
+    private final Instant anchor;
+
+    private long count = 0;
+
+    public CompiledScenario(final Path path, final Instant anchor) throws IOException {
+        this.anchor = Preconditions.checkNotNull(anchor);
+        this.channel = FileChannel.open(Preconditions.checkNotNull(path), StandardOpenOption.READ);
+
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && this.channel.read(header, header.position()) >= 0);
+            header.flip();
+
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a compiled scenario: " + path);
+            }
+
+            final short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported compiled scenario version " + version + ": " + path);
+            }
+
+            final short recordSize = header.getShort();
+            if (recordSize != RECORD_SIZE) {
+                throw new IOException("Unexpected record size " + recordSize + ": " + path);
+            }
+
+            this.size = header.getLong();
+            if (this.channel.size() < HEADER_SIZE + this.size * RECORD_SIZE) {
+                throw new IOException("Truncated compiled scenario: " + path);
+            }
+
+            this.regions = new MappedByteBuffer[(int) ((this.size + RECORDS_PER_REGION - 1) / RECORDS_PER_REGION)];
+            for (int i = 0; i < this.regions.length; i++) {
+                final long first = i * RECORDS_PER_REGION;
+                final long records = Math.min(this.size - first, RECORDS_PER_REGION);
+                this.regions[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+            }
+
+        } catch (final IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the compiled scenario and anchors it at the given time.
+     */
+    public static CompiledScenario open(final Path path, final Instant anchor) throws IOException {
+        return new CompiledScenario(path, anchor);
+    }
+
+    /**
+     * Checks if the file is a compiled scenario.
+     */
+    public static boolean detect(final Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic, magic.position()) >= 0);
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Compiles the sessions into a file.
+     *
+     * @param sessions the sessions to compile
+     * @param output the file to write
+     * @param anchor the time the session times are stored relative to
+     * @return the number of sessions written
+     */
+    public static long compile(final Iterator<TcpSession> sessions,
+                               final Path output,
+                               final Instant anchor) throws IOException {
+        try (final FileChannel channel = FileChannel.open(output,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE - WRITE_BUFFER_SIZE % RECORD_SIZE);
+
+            // The header is written last as the number of sessions is not known in advance
+            channel.position(HEADER_SIZE);
+
+            long count = 0;
+            while (sessions.hasNext()) {
+                write(buffer, sessions.next(), anchor);
+                count++;
+
+                if (!buffer.hasRemaining()) {
+                    drain(channel, buffer);
+                }
+            }
+            drain(channel, buffer);
+
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putShort((short) RECORD_SIZE);
+            buffer.putLong(count);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+
+            return count;
+        }
+    }
+
+    private static void drain(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void write(final ByteBuffer buffer, final TcpSession session, final Instant anchor) {
+        buffer.putLong(Duration.between(anchor, session.timespan.s).toMillis());
+        buffer.putLong(session.timespan.duration().toMillis());
+        buffer.putLong(session.sendSize);
+        buffer.putLong(session.sendPackets);
+        buffer.putLong(session.recvSize);
+        buffer.putLong(session.recvPackets);
+        write(buffer, session.client);
+        write(buffer, session.server);
+    }
+
+    private static void write(final ByteBuffer buffer, final Endpoint endpoint) {
+        buffer.putInt(InetAddresses.coerceToInteger(endpoint.address));
+        buffer.putInt(InetAddresses.coerceToInteger(endpoint.gateway));
+        buffer.putInt(endpoint.snmpInterface);
+        buffer.putInt(endpoint.as);
+        buffer.putShort((short) endpoint.port);
+        buffer.put((byte) endpoint.mask);
+        buffer.put((byte) 0);
+    }
+
+    private static Endpoint endpoint(final ByteBuffer buffer, final int offset) {
+        return Endpoint.builder()
+                .withResolvedAddress(InetAddresses.fromInteger(buffer.getInt(offset)))
+                .withResolvedGateway(InetAddresses.fromInteger(buffer.getInt(offset + 4)))
+                .withSnmpInterface(buffer.getInt(offset + 8))
+                .withAS(buffer.getInt(offset + 12))
+                .withPort(Short.toUnsignedInt(buffer.getShort(offset + 16)))
+                .withMask((short) Byte.toUnsignedInt(buffer.get(offset + 18)))
+                .build();
+    }
+
+    /**
+     * Returns the session at the given index.
+     */
+    public TcpSession get(final long index) {
+        Preconditions.checkArgument(index >= 0 && index < this.size, "index out of range: %s", index);
+
+        final ByteBuffer region = this.regions[(int) (index / RECORDS_PER_REGION)];
+        final int offset = (int) (index % RECORDS_PER_REGION) * RECORD_SIZE;
+
+        final Instant s = this.anchor.plusMillis(region.getLong(offset));
+        return TcpSession.builder()
+                .withTimespan(new Timespan(s, s.plusMillis(region.getLong(offset + 8))))
+                .withSendSize(region.getLong(offset + 16))
+                .withSendPackets(region.getLong(offset + 24))
+                .withRecvSize(region.getLong(offset + 32))
+                .withRecvPackets(region.getLong(offset + 40))
+                .withClient(endpoint(region, offset + 48))
+                .withServer(endpoint(region, offset + 48 + ENDPOINT_SIZE))
+                .build();
+    }
+
+    /**
+     * Returns the number of sessions in the file.
+     */
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.count < this.size;
+    }
+
+    @Override
+    public TcpSession next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return this.get(this.count++);
+    }
+
+    @Override
+    public long count() {
+        return this.count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
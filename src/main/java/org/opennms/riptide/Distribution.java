@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.util.SplittableRandom;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+/**
+ * A distribution of positive values.
+ *
+ * Distributions are defined by their {@code type} and the parameters of the type, e.g.
+ * {@code {type: pareto, scale: 1000, shape: 1.2}}. The heavy-tailed distributions can be capped by {@code max}.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = Distribution.Constant.class, name = "constant"),
+        @JsonSubTypes.Type(value = Distribution.Uniform.class, name = "uniform"),
+        @JsonSubTypes.Type(value = Distribution.Exponential.class, name = "exponential"),
+        @JsonSubTypes.Type(value = Distribution.Pareto.class, name = "pareto"),
+        @JsonSubTypes.Type(value = Distribution.LogNormal.class, name = "log-normal"),
+})
+public abstract class Distribution {
+
+    /**
+     * Draws a value from this distribution.
+     */
+    public abstract double sample(final SplittableRandom random);
+
+    public static class Constant extends Distribution {
+        public final double value;
+
+        @JsonCreator
+        public Constant(@JsonProperty("value") final double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double sample(final SplittableRandom random) {
+            return this.value;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("value", this.value)
+                    .toString();
+        }
+    }
+
+    public static class Uniform extends Distribution {
+        public final double min;
+        public final double max;
+
+        @JsonCreator
+        public Uniform(@JsonProperty("min") final double min,
+                       @JsonProperty("max") final double max) {
+            Preconditions.checkArgument(min <= max, "min must not exceed max");
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public double sample(final SplittableRandom random) {
+            return this.min + random.nextDouble() * (this.max - this.min);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("min", this.min)
+                    .add("max", this.max)
+                    .toString();
+        }
+    }
+
+    public static class Exponential extends Distribution {
+        public final double mean;
+
+        @JsonCreator
+        public Exponential(@JsonProperty("mean") final double mean) {
+            Preconditions.checkArgument(mean > 0.0, "mean must be positive");
+            this.mean = mean;
+        }
+
+        @Override
+        public double sample(final SplittableRandom random) {
+            return -this.mean * Math.log(1.0 - random.nextDouble());
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("mean", this.mean)
+                    .toString();
+        }
+    }
+
+    public static class Pareto extends Distribution {
+        public final double scale;
+        public final double shape;
+        public final double max;
+
+        @JsonCreator
+        public Pareto(@JsonProperty("scale") final double scale,
+                      @JsonProperty("shape") final double shape,
+                      @JsonProperty("max") final Double max) {
+            Preconditions.checkArgument(scale > 0.0, "scale must be positive");
+            Preconditions.checkArgument(shape > 0.0, "shape must be positive");
+            this.scale = scale;
+            this.shape = shape;
+            this.max = max != null ? max : Double.MAX_VALUE;
+        }
+
+        @Override
+        public double sample(final SplittableRandom random) {
+            return Math.min(this.max, this.scale / Math.pow(1.0 - random.nextDouble(), 1.0 / this.shape));
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("scale", this.scale)
+                    .add("shape", this.shape)
+                    .add("max", this.max)
+                    .toString();
+        }
+    }
+
+    public static class LogNormal extends Distribution {
+        public final double mu;
+        public final double sigma;
+        public final double max;
+
+        @JsonCreator
+        public LogNormal(@JsonProperty("mu") final double mu,
+                         @JsonProperty("sigma") final double sigma,
+                         @JsonProperty("max") final Double max) {
+            Preconditions.checkArgument(sigma >= 0.0, "sigma must not be negative");
+            this.mu = mu;
+            this.sigma = sigma;
+            this.max = max != null ? max : Double.MAX_VALUE;
+        }
+
+        @Override
+        public double sample(final SplittableRandom random) {
+            return Math.min(this.max, Math.exp(this.mu + this.sigma * gaussian(random)));
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("mu", this.mu)
+                    .add("sigma", this.sigma)
+                    .add("max", this.max)
+                    .toString();
+        }
+    }
+
+    /**
+     * Draws a standard normal value using the polar method.
+     */
+    static double gaussian(final SplittableRandom random) {
+        double u, v, s;
+        do {
+            u = 2.0 * random.nextDouble() - 1.0;
+            v = 2.0 * random.nextDouble() - 1.0;
+            s = u * u + v * v;
+        } while (s >= 1.0 || s == 0.0);
+
+        return u * Math.sqrt(-2.0 * Math.log(s) / s);
+    }
+}
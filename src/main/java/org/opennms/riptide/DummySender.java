@@ -28,6 +28,8 @@
 
 package org.opennms.riptide;
 
+import java.nio.ByteBuffer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,4 +40,9 @@ public class DummySender implements Simulation.Sender {
     public void send(final Flow flow) {
         LOG.info("Sending flow {} ", flow);
     }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        LOG.info("Sending packet from {} ({} bytes)", source, packet.remaining());
+    }
 }
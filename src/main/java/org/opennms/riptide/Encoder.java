@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes a flow into a caller-supplied buffer.
+ *
+ * The flow is written starting at the current position of the buffer which must have enough space remaining. After
+ * encoding, the position of the buffer points right behind the written packet.
+ */
+public interface Encoder {
+    /**
+     * The maximum payload of an UDP datagram.
+     */
+    int MAX_PACKET_SIZE = 0xFFFF - 20 - 8;
+
+    void encode(Flow flow, ByteBuffer buffer);
+
+    /**
+     * Returns the number of bytes required to encode the given flow.
+     */
+    int size(Flow flow);
+
+    /**
+     * Returns the maximum number of records fitting into a packet with the given payload size.
+     */
+    int maxRecords(int packetSize);
+}
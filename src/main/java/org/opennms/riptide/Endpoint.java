@@ -30,8 +30,9 @@ package org.opennms.riptide;
 
 import java.net.Inet4Address;
 import java.net.UnknownHostException;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 import com.google.common.net.InetAddresses;
@@ -64,7 +65,7 @@ public class Endpoint {
         private short mask;
 
         public Builder() {
-            this.port = new Random().nextInt(0xFFFF);
+            this.port = ThreadLocalRandom.current().nextInt(0xFFFF);
             this.gateway = InetAddresses.fromInteger(0);
             this.snmpInterface = 1;
         }
@@ -78,6 +79,15 @@ public class Endpoint {
             return this;
         }
 
+        /**
+         * Sets an already resolved address.
+         */
+        @JsonIgnore
+        public Builder withResolvedAddress(final Inet4Address address) {
+            this.address = address;
+            return this;
+        }
+
         public Builder withPort(final int port) {
             this.port = port;
             return this;
@@ -92,6 +102,15 @@ public class Endpoint {
             return this;
         }
 
+        /**
+         * Sets an already resolved gateway.
+         */
+        @JsonIgnore
+        public Builder withResolvedGateway(final Inet4Address gateway) {
+            this.gateway = gateway;
+            return this;
+        }
+
         public Builder withSnmpInterface(final int snmpInterface) {
             this.snmpInterface = snmpInterface;
             return this;
@@ -112,7 +131,7 @@ public class Endpoint {
         }
     }
 
-    public static TcpSession.Builder builder() {
-        return new TcpSession.Builder();
+    public static Builder builder() {
+        return new Builder();
     }
 }
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Sets;
+
+/**
+ * Drives any number of simulations from a single thread.
+ *
+ * The ticks of all sessions are kept in a shared {@link TimingWheel} ordered by the end of the tick. The engine sleeps
+ * until the next tick is due and fires all due ticks in one go. A session is only re-scheduled after its current tick
+ * has fired and is released as soon as its last tick was sent.
+ *
+ * Time is taken from a {@link SimulationClock} which allows to run the simulation faster than real time.
+ *
+ * Each session exports its records through an {@link Aggregator} and therefore as the exporter of that aggregator.
+ * This allows a single engine to emulate many exporters.
+ *
+ * Sessions can be added up front or pulled from a {@link SessionFeed} while running. Sessions from the feed are added
+ * between ticks as long as less than the maximum number of sessions are active, so the engine only holds the sessions
+ * it currently simulates.
+ *
+ * Besides the sessions, the wheel drives periodic tasks like flushing out partially filled packets. These tasks are
+ * dropped as soon as the last session has finished and the feed is exhausted.
+ */
+public class Engine {
+    private final static Logger LOG = LoggerFactory.getLogger(Engine.class);
+
+    private final static long TICK = 1; // ms
+    private final static int WHEEL_SIZE = 512;
+
+    private interface Task {
+        void fire();
+    }
+
+    private class Session implements Task {
+        private final Simulation simulation;
+        private final Aggregator aggregator;
+        private final long bootMillis;
+        private final PeekingIterator<Simulation.Positional.Positioned<Timespan>> ticks;
+
+        private Simulation.Positional.Positioned<Timespan> current;
+
+        private Session(final Simulation simulation, final Aggregator aggregator) {
+            this.simulation = Preconditions.checkNotNull(simulation);
+            this.aggregator = Preconditions.checkNotNull(aggregator);
+            this.bootMillis = aggregator.exporter().bootTime.toEpochMilli();
+            this.ticks = Iterators.peekingIterator(Simulation.Positional.from(simulation.ticker()).iterator());
+        }
+
+        private boolean schedule() {
+            if (!this.ticks.hasNext()) {
+                return false;
+            }
+
+            this.current = this.ticks.next();
+            Engine.this.wheel.schedule(this.current.element.e.toEpochMilli(), this);
+            return true;
+        }
+
+        @Override
+        public void fire() {
+            final long s = this.current.element.s.toEpochMilli();
+            long e = this.current.element.e.toEpochMilli();
+            boolean last = this.current.last;
+
+            if (Engine.this.clock.catchUp() == Pacer.CatchUp.SKIP) {
+                // Merge all ticks which are already over into this one
+                final long now = Engine.this.clock.millis();
+                while (this.ticks.hasNext() && this.ticks.peek().element.e.toEpochMilli() <= now) {
+                    final Simulation.Positional.Positioned<Timespan> next = this.ticks.next();
+                    e = next.element.e.toEpochMilli();
+                    last = next.last;
+                }
+            }
+
+            final FlowRecordBatch records = Engine.this.records;
+            records.clear();
+
+            this.simulation.records(s, e, this.current.first, last, records);
+
+            final long time = e;
+            this.aggregator.add(records, time, time - this.bootMillis);
+
+            if (!this.schedule()) {
+                Engine.this.active--;
+            }
+        }
+    }
+
+    private class Periodic implements Task {
+        private final long period;
+        private final Runnable action;
+
+        private long deadline;
+
+        private Periodic(final Duration period, final Runnable action) {
+            this.period = period.toMillis();
+            this.action = Preconditions.checkNotNull(action);
+
+            Preconditions.checkArgument(this.period > 0);
+        }
+
+        private void schedule() {
+            this.deadline += this.period;
+            Engine.this.wheel.schedule(this.deadline, this);
+        }
+
+        @Override
+        public void fire() {
+            this.action.run();
+            this.schedule();
+        }
+    }
+
+    // The aggregator of sessions added without one or null if every session brings its own
+    private final Aggregator aggregator;
+    private final Duration flushInterval;
+    private final SimulationClock clock;
+
+    private final Set<Aggregator> aggregators = Sets.newLinkedHashSet();
+
+    private final TimingWheel<Task> wheel;
+
+    private final FlowRecordBatch records = new FlowRecordBatch(Simulation.RECORDS_PER_TICK);
+
+    private int active = 0;
+
+    private SessionFeed feed;
+    private Function<Exporter, Aggregator> feedAggregators;
+    private int maxActive;
+
+    public Engine(final Aggregator aggregator, final Duration flushInterval) {
+        this(aggregator, flushInterval, SimulationClock.wall());
+    }
+
+    public Engine(final Aggregator aggregator, final Duration flushInterval, final SimulationClock clock) {
+        this(flushInterval, clock, Preconditions.checkNotNull(aggregator));
+    }
+
+    /**
+     * Creates an engine without a default aggregator, so every session must be given its own one - either when added
+     * or by the feed.
+     */
+    public Engine(final Duration flushInterval, final SimulationClock clock) {
+        this(flushInterval, clock, null);
+    }
+
+    private Engine(final Duration flushInterval, final SimulationClock clock, final Aggregator aggregator) {
+        this.aggregator = aggregator;
+        this.flushInterval = Preconditions.checkNotNull(flushInterval);
+        this.clock = Preconditions.checkNotNull(clock);
+
+        if (aggregator != null) {
+            this.aggregators.add(aggregator);
+        }
+
+        this.wheel = new TimingWheel<>(TICK, WHEEL_SIZE, clock.millis());
+    }
+
+    public void add(final TcpSession tcpSession) {
+        Preconditions.checkState(this.aggregator != null, "Engine has no default aggregator");
+        this.add(tcpSession, this.aggregator);
+    }
+
+    /**
+     * Adds a session exporting its records through the given aggregator.
+     */
+    public void add(final TcpSession tcpSession, final Aggregator aggregator) {
+        final Instant bootTime = aggregator.exporter().bootTime;
+        Preconditions.checkArgument(bootTime.toEpochMilli() <= this.clock.millis(), "Exporter must be booted before the simulation starts");
+
+        this.aggregators.add(aggregator);
+
+        final Session session = new Session(new Simulation(tcpSession, this.flushInterval, bootTime), aggregator);
+        if (session.schedule()) {
+            this.active++;
+        }
+    }
+
+    /**
+     * Pulls sessions from the feed while running.
+     *
+     * @param aggregators maps the exporter of each session to the aggregator used for it
+     * @param maxActive the maximum number of active sessions up to which sessions are pulled from the feed
+     */
+    public void feed(final SessionFeed feed, final Function<Exporter, Aggregator> aggregators, final int maxActive) {
+        Preconditions.checkArgument(maxActive > 0, "Maximum of active sessions must be positive");
+
+        this.feed = Preconditions.checkNotNull(feed);
+        this.feedAggregators = Preconditions.checkNotNull(aggregators);
+        this.maxActive = maxActive;
+    }
+
+    /**
+     * Runs the action periodically as long as there are active sessions.
+     */
+    public void every(final Duration period, final Runnable action) {
+        final Periodic periodic = new Periodic(period, action);
+        periodic.deadline = this.clock.millis();
+        periodic.schedule();
+    }
+
+    public int active() {
+        return this.active;
+    }
+
+    public void run() {
+        LOG.debug("Starting engine with {} sessions", this.active);
+
+        while (true) {
+            this.pull();
+
+            if (this.active == 0) {
+                break;
+            }
+
+            this.clock.sleepUntil(this.wheel.nextDeadline());
+            if (Thread.currentThread().isInterrupted()) {
+                LOG.info("Interrupted - stopping with {} active sessions", this.active);
+                break;
+            }
+
+            this.wheel.advance(this.clock.millis(), Task::fire);
+        }
+
+        for (final Aggregator aggregator : this.aggregators) {
+            aggregator.flush();
+        }
+
+        LOG.debug("All sessions finished");
+    }
+
+    /**
+     * Adds sessions from the feed up to the maximum of active sessions. Waits for the feed only if there is nothing
+     * else to do.
+     */
+    private void pull() {
+        if (this.feed == null) {
+            return;
+        }
+
+        while (this.active < this.maxActive && !this.feed.finished()) {
+            final SessionFeed.Item item;
+            if (this.active == 0) {
+                try {
+                    item = this.feed.take();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.feed = null;
+                    return;
+                }
+            } else {
+                item = this.feed.poll();
+            }
+
+            if (item == null) {
+                return;
+            }
+
+            this.add(item.session, this.feedAggregators.apply(item.exporter));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.net.InetAddresses;
+
+/**
+ * The simulated device exporting the flows.
+ *
+ * Each exporter has its own engine type and id, boot time and flow sequence. Optionally, it has its own source address
+ * which is used by senders controlling the IP header. Otherwise, the packets are sent from the sender's source.
+ *
+ * An exporter can be shared by multiple generating threads. The flow sequence is counted in records and reserved
+ * lock-free for each packet, so the packets of all threads together form a gap-free sequence. The same holds for the
+ * packet sequence used by protocols counting packets instead of records.
+ *
+ * Uptimes are kept as milliseconds since boot and may exceed 32 bits. They wrap around when encoded, just like the
+ * sysUptime of a real device does after 49.7 days. As header and record uptimes wrap consistently, the differences
+ * between them stay correct when calculated modulo 2^32.
+ */
+public class Exporter {
+
+    public final short engineType;
+    public final short engineId;
+
+    public final Instant bootTime;
+
+    public final Inet4SockAddr source;
+
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final AtomicLong packets = new AtomicLong(0);
+
+    public Exporter(final short engineType, final short engineId, final Instant bootTime) {
+        this(engineType, engineId, bootTime, null);
+    }
+
+    /**
+     * @param source the source address of the exporter or {@code null} to use the one of the sender
+     */
+    public Exporter(final short engineType, final short engineId, final Instant bootTime, final Inet4SockAddr source) {
+        this.engineType = engineType;
+        this.engineId = engineId;
+        this.bootTime = Preconditions.checkNotNull(bootTime);
+        this.source = source;
+    }
+
+    /**
+     * Creates an exporter which has been booted at a random time before the given point in time.
+     */
+    public static Exporter random(final Instant now) {
+        return new Exporter(Simulation.ENGINE_TYPE, Simulation.ENGINE_ID, Simulation.randomBootTime(now));
+    }
+
+    /**
+     * Creates a range of exporters booted independently at random times before the given point in time.
+     *
+     * The first exporter uses the default engine type and id, all following exporters count up the engine id and
+     * carry over into the engine type. If a source is given, the exporters use consecutive addresses starting at the
+     * source.
+     */
+    public static List<Exporter> range(final int count, final Inet4SockAddr source, final Instant now) {
+        Preconditions.checkArgument(count > 0);
+
+        final List<Exporter> exporters = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            final int engine = ((Simulation.ENGINE_TYPE << 8) | Simulation.ENGINE_ID) + i;
+
+            exporters.add(new Exporter(
+                    (short) ((engine >> 8) & 0xFF),
+                    (short) (engine & 0xFF),
+                    Simulation.randomBootTime(now),
+                    source != null
+                            ? new Inet4SockAddr(InetAddresses.fromInteger(source.addrBits + i), source.port)
+                            : null));
+        }
+
+        return exporters;
+    }
+
+    /**
+     * Reserves the sequence numbers for a packet containing the given number of records.
+     *
+     * @return the flow sequence of the packet
+     */
+    public long reserve(final int records) {
+        return this.sequence.getAndAdd(records);
+    }
+
+    /**
+     * Reserves the packet sequence number for a single packet.
+     *
+     * @return the packet sequence of the packet
+     */
+    public long reservePacket() {
+        return this.packets.getAndIncrement();
+    }
+
+    /**
+     * Returns the number of records sent so far.
+     */
+    public long sequence() {
+        return this.sequence.get();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("engineType", engineType)
+                .add("engineId", engineId)
+                .add("bootTime", bootTime)
+                .add("source", source)
+                .add("sequence", sequence)
+                .add("packets", packets)
+                .toString();
+    }
+}
@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Sends each packet to many targets through independent lanes.
+ *
+ * Each flow is encoded once into a pooled buffer which is shared read-only by all lanes. Every target has its own lane
+ * consisting of a bounded queue, a thread and a sender of its own, so a slow or unreachable target only stalls its own
+ * lane. If the queue of a lane is full, the packet is either dropped for this target and counted as such or the caller
+ * waits until the lane has room, depending on the overflow policy.
+ *
+ * The lane senders are flushed whenever their queue runs empty, which lets batching senders write out everything they
+ * have collected while the lane is busy.
+ *
+ * The pooled buffers are sized to the largest packet to send, which is limited by the MTU, as the pool grows up to the
+ * capacity of the slowest lane. Larger packets are dropped for all targets.
+ */
+public class FanoutSender implements Simulation.Sender {
+    private final static Logger LOG = LoggerFactory.getLogger(FanoutSender.class);
+
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    public enum Overflow {
+        /**
+         * Drops the packet for the target whose lane is full.
+         */
+        DROP,
+
+        /**
+         * Waits for the lane to make room, which slows down all targets to the pace of the slowest one.
+         */
+        BLOCK,
+    }
+
+    /**
+     * Creates the sender of a lane for a single target.
+     */
+    @FunctionalInterface
+    public interface LaneFactory {
+        Simulation.Sender create(Inet4SockAddr target) throws IOException;
+    }
+
+    /**
+     * An encoded packet shared by all lanes.
+     */
+    private static class Packet {
+        private final ByteBuffer buffer;
+
+        // A read-only view for each lane, so lanes do not interfere with each others position
+        private final ByteBuffer[] views;
+
+        // The number of lanes still holding the packet
+        private final AtomicInteger references = new AtomicInteger();
+
+        private Inet4SockAddr source;
+
+        private Packet(final int lanes, final int size) {
+            this.buffer = ByteBuffer.allocateDirect(size);
+            this.views = new ByteBuffer[lanes];
+            for (int i = 0; i < lanes; i++) {
+                this.views[i] = this.buffer.asReadOnlyBuffer();
+            }
+        }
+    }
+
+    // Marks the end of the packets queued for a lane
+    private final static Packet END = new Packet(0, 0);
+
+    private class Lane implements Runnable {
+        private final int index;
+        private final Inet4SockAddr target;
+        private final Simulation.Sender sender;
+        private final Metrics.Target metrics;
+
+        private final BlockingQueue<Packet> queue;
+        private final Thread thread;
+
+        private long dropped = 0;
+
+        private Lane(final int index,
+                     final Inet4SockAddr target,
+                     final Simulation.Sender sender,
+                     final Metrics.Target metrics,
+                     final int capacity) {
+            this.index = index;
+            this.target = target;
+            this.sender = sender;
+            this.metrics = metrics;
+
+            this.queue = new ArrayBlockingQueue<>(capacity);
+
+            this.thread = new Thread(this, "lane-" + target);
+            this.thread.setDaemon(true);
+        }
+
+        private void offer(final Packet packet) throws InterruptedException {
+            if (FanoutSender.this.overflow == Overflow.BLOCK) {
+                this.queue.put(packet);
+                return;
+            }
+
+            if (!this.queue.offer(packet)) {
+                if (this.dropped++ == 0) {
+                    LOG.warn("Lane of {} is full - dropping packets", this.target);
+                }
+                this.metrics.dropped();
+                FanoutSender.this.release(packet, 1);
+            }
+        }
+
+        private void drop() {
+            this.dropped++;
+            this.metrics.dropped();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Packet packet = this.queue.poll();
+                    if (packet == null) {
+                        // Write out everything held back before waiting for more
+                        this.sender.flush();
+                        packet = this.queue.take();
+                    }
+
+                    if (packet == END) {
+                        break;
+                    }
+
+                    final ByteBuffer view = packet.views[this.index];
+                    view.limit(packet.buffer.limit()).position(0);
+                    try {
+                        this.sender.send(view, packet.source);
+                    } catch (final RuntimeException e) {
+                        this.metrics.failed();
+                        LOG.error("Failed to send packet to {}", this.target, e);
+                    }
+
+                    FanoutSender.this.release(packet, 1);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                this.sender.close();
+            }
+        }
+    }
+
+    private final Inet4SockAddr source;
+    private final Encoder encoder;
+    private final int packetSize;
+    private final Overflow overflow;
+
+    private volatile boolean warned = false;
+
+    private final Lane[] lanes;
+
+    private final ConcurrentLinkedQueue<Packet> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param source the source used for flows sent without one
+     * @param targets the targets to send to
+     * @param encoder the encoder used once per packet
+     * @param packetSize the maximum size of a packet
+     * @param lanes creates the sender for the lane of each target
+     * @param capacity the number of packets queued per target
+     * @param overflow what to do if the queue of a target is full
+     * @param metrics the metrics to count the dropped packets per target in
+     */
+    public FanoutSender(final Inet4SockAddr source,
+                        final List<Inet4SockAddr> targets,
+                        final Encoder encoder,
+                        final int packetSize,
+                        final LaneFactory lanes,
+                        final int capacity,
+                        final Overflow overflow,
+                        final Metrics metrics) throws IOException {
+        Preconditions.checkArgument(capacity > 0);
+        Preconditions.checkArgument(packetSize > 0 && packetSize <= Encoder.MAX_PACKET_SIZE);
+
+        this.source = Preconditions.checkNotNull(source);
+        this.encoder = Preconditions.checkNotNull(encoder);
+        this.packetSize = packetSize;
+        this.overflow = Preconditions.checkNotNull(overflow);
+
+        this.lanes = new Lane[targets.size()];
+        try {
+            for (int i = 0; i < this.lanes.length; i++) {
+                final Inet4SockAddr target = targets.get(i);
+                this.lanes[i] = new Lane(i, target, lanes.create(target), metrics.target(target), capacity);
+            }
+        } catch (final IOException e) {
+            for (final Lane lane : this.lanes) {
+                if (lane != null) {
+                    lane.sender.close();
+                }
+            }
+            throw e;
+        }
+
+        for (final Lane lane : this.lanes) {
+            lane.thread.start();
+        }
+    }
+
+    private Packet acquire() {
+        final Packet packet = this.pool.poll();
+        if (packet != null) {
+            return packet;
+        }
+        return new Packet(this.lanes.length, this.packetSize);
+    }
+
+    private void release(final Packet packet, final int references) {
+        if (packet.references.addAndGet(-references) == 0) {
+            packet.buffer.clear();
+            this.pool.offer(packet);
+        }
+    }
+
+    @Override
+    public void send(final Flow flow) {
+        this.send(flow, this.source);
+    }
+
+    @Override
+    public void send(final Flow flow, final Inet4SockAddr source) {
+        if (this.oversized(this.encoder.size(flow))) {
+            return;
+        }
+
+        final Packet packet = this.acquire();
+        this.encoder.encode(flow, packet.buffer);
+        packet.buffer.flip();
+
+        this.publish(packet, source);
+    }
+
+    @Override
+    public void send(final ByteBuffer data, final Inet4SockAddr source) {
+        if (this.oversized(data.remaining())) {
+            return;
+        }
+
+        final Packet packet = this.acquire();
+        packet.buffer.put(data);
+        packet.buffer.flip();
+
+        this.publish(packet, source);
+    }
+
+    private void publish(final Packet packet, final Inet4SockAddr source) {
+        packet.source = source != null ? source : this.source;
+        packet.references.set(this.lanes.length);
+
+        int offered = 0;
+        try {
+            for (final Lane lane : this.lanes) {
+                lane.offer(packet);
+                offered++;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            // The lanes not reached never see the packet, so their references are given back here
+            this.release(packet, this.lanes.length - offered);
+        }
+    }
+
+    private boolean oversized(final int size) {
+        if (size <= this.packetSize) {
+            return false;
+        }
+
+        if (!this.warned) {
+            LOG.warn("Dropping packets exceeding the packet size of {} bytes", this.packetSize);
+            this.warned = true;
+        }
+
+        for (final Lane lane : this.lanes) {
+            lane.drop();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of packets dropped for the given target.
+     */
+    public long dropped(final int target) {
+        return this.lanes[target].dropped;
+    }
+
+    /**
+     * Returns the number of packets waiting in the lane of the given target.
+     */
+    public int backlog(final int target) {
+        return this.lanes[target].queue.size();
+    }
+
+    /**
+     * Returns the number of packets ready for re-use.
+     */
+    int pooled() {
+        return this.pool.size();
+    }
+
+    /**
+     * Sends out all queued packets and stops the lanes.
+     */
+    @Override
+    public void close() {
+        for (final Lane lane : this.lanes) {
+            try {
+                lane.queue.put(END);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.thread.interrupt();
+            }
+        }
+
+        for (final Lane lane : this.lanes) {
+            try {
+                lane.thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.thread.interrupt();
+            }
+
+            if (lane.dropped > 0) {
+                LOG.info("Dropped {} packets to {}", lane.dropped, lane.target);
+            }
+        }
+    }
+}
@@ -28,26 +28,25 @@
 
 package org.opennms.riptide;
 
-import static org.opennms.riptide.BufferUtils.bytes;
-import static org.opennms.riptide.BufferUtils.uint16;
-import static org.opennms.riptide.BufferUtils.uint32;
-import static org.opennms.riptide.BufferUtils.uint8;
-
 import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 public class Flow {
 
     public final static int VERSION = 5;
 
+    private final static Encoder ENCODER = new NetflowV5Encoder();
+
     public enum SamplingMode {
         Unassigned(0),
         SystematicCountBased(1),
@@ -60,56 +59,123 @@ public class Flow {
         }
     }
 
-    public final Duration uptime;
-    public final Instant time;
-
-    public final long flowSequence;
-
-    public final short engineType;
-    public final short engineId;
+    // Read directly by the encoders - only an aggregator owning the header of its flow ever changes it
+    final FlowHeader header;
 
-    public final SamplingMode samplingMode;
-    public final int samplingInterval;
+    public final FlowRecordBatch records;
 
-    public final List<FlowRecord> records;
+    /**
+     * Creates a flow around the given header and batch which are both re-filled by the caller before each use.
+     */
+    Flow(final FlowHeader header, final FlowRecordBatch records) {
+        this.header = Preconditions.checkNotNull(header);
+        this.records = Preconditions.checkNotNull(records);
+    }
 
     private Flow(final Builder builder) {
-        this.uptime = Preconditions.checkNotNull(builder.uptime);
-        this.time = Preconditions.checkNotNull(builder.time);
-        this.flowSequence = builder.flowSequence;
-        this.engineType = builder.engineType;
-        this.engineId = builder.engineId;
-        this.samplingMode = Preconditions.checkNotNull(builder.samplingMode);
-        this.samplingInterval = builder.samplingInterval;
+        // Defaults are only resolved for values not given explicitly
+        final Duration uptime = builder.uptime != null
+                ? builder.uptime
+                : Duration.ofMillis(ManagementFactory.getRuntimeMXBean().getUptime()); // TODO fooker: Better default value?
+        final Instant time = builder.time != null
+                ? builder.time
+                : Instant.now();
+        this.header = new FlowHeader();
+        this.header.uptimeMillis = uptime.toMillis();
+        this.header.timeSeconds = time.getEpochSecond();
+        this.header.timeNanos = time.getNano();
+        this.header.flowSequence = builder.flowSequenceSet
+                ? builder.flowSequence
+                : Builder.AUTO_SEQUENCE.getAndIncrement();
+        this.header.packetSequence = builder.packetSequence;
+        this.header.engineType = builder.engineType;
+        this.header.engineId = builder.engineId;
+        this.header.samplingMode = Preconditions.checkNotNull(builder.samplingMode);
+        this.header.samplingInterval = builder.samplingInterval;
 
         // TODO fooker: Check not empty
-        this.records = Preconditions.checkNotNull(builder.records).stream()
-                .map(FlowRecord.Builder::build)
-                .collect(Collectors.toList());
+        if (builder.batch != null) {
+            Preconditions.checkArgument(builder.records == null, "Records must be given either as batch or one by one");
+            this.records = builder.batch;
+        } else {
+            final List<FlowRecord> records = builder.records != null ? builder.records : Collections.emptyList();
+            this.records = new FlowRecordBatch(Math.max(1, records.size()));
+            for (final FlowRecord record : records) {
+                this.records.add(record);
+            }
+        }
+    }
+
+    /**
+     * Returns the uptime of the exporter in milliseconds.
+     */
+    public long uptimeMillis() {
+        return this.header.uptimeMillis;
+    }
+
+    /**
+     * Returns the export time in epoch milliseconds.
+     */
+    public long timeMillis() {
+        return this.header.timeMillis();
+    }
+
+    public Duration uptime() {
+        return Duration.ofMillis(this.header.uptimeMillis);
+    }
 
+    public Instant time() {
+        return Instant.ofEpochSecond(this.header.timeSeconds, this.header.timeNanos);
+    }
+
+    public long flowSequence() {
+        return this.header.flowSequence;
+    }
+
+    public long packetSequence() {
+        return this.header.packetSequence;
+    }
+
+    public short engineType() {
+        return this.header.engineType;
+    }
+
+    public short engineId() {
+        return this.header.engineId;
+    }
+
+    public SamplingMode samplingMode() {
+        return this.header.samplingMode;
+    }
+
+    public int samplingInterval() {
+        return this.header.samplingInterval;
     }
 
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
-                .add("uptime", uptime)
-                .add("time", time)
-                .add("flowSequence", flowSequence)
-                .add("engineType", engineType)
-                .add("engineId", engineId)
-                .add("samplingMode", samplingMode)
-                .add("samplingInterval", samplingInterval)
+                .add("uptime", this.uptime())
+                .add("time", this.time())
+                .add("flowSequence", this.header.flowSequence)
+                .add("packetSequence", this.header.packetSequence)
+                .add("engineType", this.header.engineType)
+                .add("engineId", this.header.engineId)
+                .add("samplingMode", this.header.samplingMode)
+                .add("samplingInterval", this.header.samplingInterval)
                 .add("records", records)
                 .toString();
     }
 
     public static class Builder {
-        private static long AUTO_SEQUENCE = 1;
+        private final static AtomicLong AUTO_SEQUENCE = new AtomicLong(1);
 
         private Duration uptime;
         private Instant time;
 
         private long flowSequence;
+        private boolean flowSequenceSet;
+        private long packetSequence;
 
         private short engineType;
         private short engineId;
@@ -117,14 +183,18 @@ public class Flow {
         private Flow.SamplingMode samplingMode;
         private int samplingInterval;
 
-        private List<FlowRecord.Builder> records;
+        private List<FlowRecord> records;
+        private FlowRecordBatch batch;
 
         private Builder() {
-            this.uptime = Duration.ofMillis(ManagementFactory.getRuntimeMXBean().getUptime()); // TODO fooker: Better default value?
-            this.time = Instant.now();
-            this.flowSequence = AUTO_SEQUENCE++;
             this.samplingMode = Flow.SamplingMode.Unassigned;
-            this.records = Lists.newLinkedList();
+        }
+
+        private List<FlowRecord> records() {
+            if (this.records == null) {
+                this.records = Lists.newArrayList();
+            }
+            return this.records;
         }
 
         public Builder withUptime(final Duration uptime) {
@@ -139,6 +209,15 @@ public class Flow {
 
         public Builder withFlowSequence(final long flowSequence) {
             this.flowSequence = flowSequence;
+            this.flowSequenceSet = true;
+            return this;
+        }
+
+        /**
+         * Sets the number of packets sent before by the exporter, used by protocols counting packets instead of records.
+         */
+        public Builder withPacketSequence(final long packetSequence) {
+            this.packetSequence = packetSequence;
             return this;
         }
 
@@ -163,7 +242,25 @@ public class Flow {
         }
 
         public Builder withRecord(final FlowRecord.Builder builder) {
-            this.records.add(builder);
+            this.records().add(builder.build());
+            return this;
+        }
+
+        public Builder withRecord(final FlowRecord record) {
+            this.records().add(record);
+            return this;
+        }
+
+        public Builder withRecords(final Iterable<FlowRecord> records) {
+            Iterables.addAll(this.records(), records);
+            return this;
+        }
+
+        /**
+         * Uses the given batch as records of the flow without copying.
+         */
+        public Builder withRecords(final FlowRecordBatch batch) {
+            this.batch = batch;
             return this;
         }
 
@@ -177,51 +274,8 @@ public class Flow {
     }
 
     public ByteBuffer write() {
-        final ByteBuffer buffer = ByteBuffer.allocate(24 + 48 * this.records.size());
-
-        uint16(buffer, VERSION);
-        uint16(buffer, this.records.size());
-        uint32(buffer, this.uptime.toMillis());
-        uint32(buffer, this.time.getEpochSecond());
-        uint32(buffer, this.time.getNano());
-        uint32(buffer, this.flowSequence);
-        uint8(buffer, this.engineType);
-        uint8(buffer, this.engineId);
-        uint16(buffer, this.samplingMode.value << 14 | this.samplingInterval);
-
-        for (final FlowRecord record : this.records) {
-            bytes(buffer, record.srcAddr.getAddress());
-            bytes(buffer, record.dstAddr.getAddress());
-            bytes(buffer, record.nextHop.getAddress());
-
-            uint16(buffer, record.snmpInputIface);
-            uint16(buffer, record.snmpOutputIface);
-
-            uint32(buffer, record.packets);
-            uint32(buffer, record.octets);
-
-            uint32(buffer, record.firstUptime.toMillis());
-            uint32(buffer, record.lastUptime.toMillis());
-
-            uint16(buffer, record.srcPort);
-            uint16(buffer, record.dstPort);
-
-            uint8(buffer, 0); // Padding 1
-
-            uint8(buffer, record.tcpFlags);
-            uint8(buffer, record.protocol);
-            uint8(buffer, record.tos);
-
-            uint16(buffer, record.srcAS);
-            uint16(buffer, record.dstAS);
-
-            uint8(buffer, record.srcMask);
-            uint8(buffer, record.dstMask);
-
-            uint8(buffer, 0); // Padding 2
-            uint8(buffer, record.egress ? 0x80 : 0x00);
-        }
-
+        final ByteBuffer buffer = ByteBuffer.allocate(ENCODER.size(this));
+        ENCODER.encode(this, buffer);
         return buffer;
     }
 }
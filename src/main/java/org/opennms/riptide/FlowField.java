@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The fields of a flow record which can be exported by template based protocols.
+ *
+ * The type ids are the ones of Netflow v9 which are shared by the IPFIX information elements of the same meaning.
+ * Absolute timestamps are calculated from the export time and uptime of the flow and are meant for IPFIX, which has no
+ * uptime in its message header.
+ */
+public enum FlowField {
+    OCTETS(1, 8) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putLong(flow.records.octets[i]);
+        }
+    },
+    PACKETS(2, 8) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putLong(flow.records.packets[i]);
+        }
+    },
+    PROTOCOL(4, 1) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.put(flow.records.protocol[i]);
+        }
+    },
+    TOS(5, 1) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.put(flow.records.tos[i]);
+        }
+    },
+    TCP_FLAGS(6, 1) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.put(flow.records.tcpFlags[i]);
+        }
+    },
+    SRC_PORT(7, 2) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putShort((short) flow.records.srcPort[i]);
+        }
+    },
+    SRC_ADDR(8, 4) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putInt(flow.records.srcAddr[i]);
+        }
+    },
+    SRC_MASK(9, 1) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.put(flow.records.srcMask[i]);
+        }
+    },
+    INPUT_SNMP(10, 2) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putShort((short) flow.records.snmpInputIface[i]);
+        }
+    },
+    DST_PORT(11, 2) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putShort((short) flow.records.dstPort[i]);
+        }
+    },
+    DST_ADDR(12, 4) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putInt(flow.records.dstAddr[i]);
+        }
+    },
+    DST_MASK(13, 1) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.put(flow.records.dstMask[i]);
+        }
+    },
+    OUTPUT_SNMP(14, 2) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putShort((short) flow.records.snmpOutputIface[i]);
+        }
+    },
+    NEXT_HOP(15, 4) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putInt(flow.records.nextHop[i]);
+        }
+    },
+    SRC_AS(16, 2) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putShort((short) flow.records.srcAS[i]);
+        }
+    },
+    DST_AS(17, 2) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putShort((short) flow.records.dstAS[i]);
+        }
+    },
+    LAST_SWITCHED(21, 4) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putInt((int) flow.records.lastUptime[i]);
+        }
+    },
+    FIRST_SWITCHED(22, 4) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putInt((int) flow.records.firstUptime[i]);
+        }
+    },
+    DIRECTION(61, 1) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.put((byte) (flow.records.egress[i] ? 1 : 0));
+        }
+    },
+    FLOW_START_MILLISECONDS(152, 8) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putLong(bootMillis(flow) + flow.records.firstUptime[i]);
+        }
+    },
+    FLOW_END_MILLISECONDS(153, 8) {
+        @Override
+        void write(final ByteBuffer buffer, final Flow flow, final int i) {
+            buffer.putLong(bootMillis(flow) + flow.records.lastUptime[i]);
+        }
+    };
+
+    public final int type;
+    public final int length;
+
+    FlowField(final int type, final int length) {
+        this.type = type;
+        this.length = length;
+    }
+
+    private static long bootMillis(final Flow flow) {
+        return flow.timeMillis() - flow.header.uptimeMillis;
+    }
+
+    /**
+     * Writes the value of the field for the i-th record of the flow.
+     */
+    abstract void write(final ByteBuffer buffer, final Flow flow, final int i);
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+/**
+ * The header of a flow kept in primitives.
+ *
+ * A header is owned either by a single immutable flow built by {@link Flow.Builder} or by an {@link Aggregator} which
+ * re-fills it in place for every packet it emits. Encoders read the fields directly to avoid any conversion per packet.
+ *
+ * Not thread-safe.
+ */
+final class FlowHeader {
+
+    long uptimeMillis;
+    long timeSeconds;
+    int timeNanos;
+
+    long flowSequence;
+    long packetSequence;
+
+    short engineType;
+    short engineId;
+
+    Flow.SamplingMode samplingMode = Flow.SamplingMode.Unassigned;
+    int samplingInterval;
+
+    /**
+     * Re-fills the header.
+     *
+     * @param uptimeMillis the uptime of the exporter in milliseconds
+     * @param timeMillis the export time in epoch milliseconds
+     */
+    void set(final long uptimeMillis, final long timeMillis,
+             final long flowSequence, final long packetSequence,
+             final short engineType, final short engineId) {
+        this.uptimeMillis = uptimeMillis;
+        this.timeSeconds = Math.floorDiv(timeMillis, 1000L);
+        this.timeNanos = (int) Math.floorMod(timeMillis, 1000L) * 1_000_000;
+        this.flowSequence = flowSequence;
+        this.packetSequence = packetSequence;
+        this.engineType = engineType;
+        this.engineId = engineId;
+    }
+
+    /**
+     * Returns the export time in epoch milliseconds.
+     */
+    long timeMillis() {
+        return this.timeSeconds * 1000L + this.timeNanos / 1_000_000;
+    }
+}
@@ -67,6 +67,10 @@ public class FlowRecord {
 
     public final boolean egress;
 
+    final int srcAddrBits;
+    final int dstAddrBits;
+    final int nextHopBits;
+
     private FlowRecord(final Builder builder) {
         this.srcAddr = Preconditions.checkNotNull(builder.srcAddr);
         this.dstAddr = Preconditions.checkNotNull(builder.dstAddr);
@@ -87,6 +91,11 @@ public class FlowRecord {
         this.srcMask = Preconditions.checkNotNull(builder.srcMask);
         this.dstMask = Preconditions.checkNotNull(builder.dstMask);
         this.egress = Preconditions.checkNotNull(builder.egress);
+
+        // Resolved once as Inet4Address.getAddress() copies the address on each call
+        this.srcAddrBits = InetAddresses.coerceToInteger(this.srcAddr);
+        this.dstAddrBits = InetAddresses.coerceToInteger(this.dstAddr);
+        this.nextHopBits = InetAddresses.coerceToInteger(this.nextHop);
     }
 
     @Override
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.riptide;
+
+import java.time.Duration;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.net.InetAddresses;
+
+/**
+ * A fixed size batch of flow records stored as struct-of-arrays.
+ *
+ * Addresses are kept as plain ints, uptimes as milliseconds and all counters in primitive arrays. Records are appended
+ * by calling {@link #append()} and filling the returned slot in all arrays. Batches are meant to be cleared and
+ * re-used.
+ */
+public class FlowRecordBatch {
+    public final int[] srcAddr;
+    public final int[] dstAddr;
+    public final int[] nextHop;
+
+    public final int[] snmpInputIface;
+    public final int[] snmpOutputIface;
+
+    public final long[] packets;
+    public final long[] octets;
+
+    public final long[] firstUptime;
+    public final long[] lastUptime;
+
+    public final int[] srcPort;
+    public final int[] dstPort;
+
+    public final byte[] tcpFlags;
+    public final byte[] protocol;
+
+    public final int[] srcAS;
+    public final int[] dstAS;
+
+    public final byte[] tos;
+
+    public final byte[] srcMask;
+    public final byte[] dstMask;
+
+    public final boolean[] egress;
+
+    private int size = 0;
+
+    public FlowRecordBatch(final int capacity) {
+        Preconditions.checkArgument(capacity > 0);
+
+        this.srcAddr = new int[capacity];
+        this.dstAddr = new int[capacity];
+        this.nextHop = new int[capacity];
+        this.snmpInputIface = new int[capacity];
+        this.snmpOutputIface = new int[capacity];
+        this.packets = new long[capacity];
+        this.octets = new long[capacity];
+        this.firstUptime = new long[capacity];
+        this.lastUptime = new long[capacity];
+        this.srcPort = new int[capacity];
+        this.dstPort = new int[capacity];
+        this.tcpFlags = new byte[capacity];
+        this.protocol = new byte[capacity];
+        this.srcAS = new int[capacity];
+        this.dstAS = new int[capacity];
+        this.tos = new byte[capacity];
+        this.srcMask = new byte[capacity];
+        this.dstMask = new byte[capacity];
+        this.egress = new boolean[capacity];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.srcAddr.length;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean isFull() {
+        return this.size == this.srcAddr.length;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Reserves the next slot and returns its index.
+     */
+    public int append() {
+        Preconditions.checkState(this.size < this.srcAddr.length, "Batch is full");
+        return this.size++;
+    }
+
+    public int add(final FlowRecord record) {
+        final int i = this.append();
+        this.srcAddr[i] = record.srcAddrBits;
+        this.dstAddr[i] = record.dstAddrBits;
+        this.nextHop[i] = record.nextHopBits;
+        this.snmpInputIface[i] = record.snmpInputIface;
+        this.snmpOutputIface[i] = record.snmpOutputIface;
+        this.packets[i] = record.packets;
+        this.octets[i] = record.octets;
+        this.firstUptime[i] = record.firstUptime.toMillis();
+        this.lastUptime[i] = record.lastUptime.toMillis();
+        this.srcPort[i] = record.srcPort;
+        this.dstPort[i] = record.dstPort;
+        this.tcpFlags[i] = (byte) record.tcpFlags;
+        this.protocol[i] = (byte) record.protocol;
+        this.srcAS[i] = record.srcAS;
+        this.dstAS[i] = record.dstAS;
+        this.tos[i] = (byte) record.tos;
+        this.srcMask[i] = (byte) record.srcMask;
+        this.dstMask[i] = (byte) record.dstMask;
+        this.egress[i] = record.egress;
+        return i;
+    }
+
+    /**
+     * Appends the record at the given index of another batch.
+     */
+    public int add(final FlowRecordBatch batch, final int j) {
+        final int i = this.append();
+        this.srcAddr[i] = batch.srcAddr[j];
+        this.dstAddr[i] = batch.dstAddr[j];
+        this.nextHop[i] = batch.nextHop[j];
+        this.snmpInputIface[i] = batch.snmpInputIface[j];
+        this.snmpOutputIface[i] = batch.snmpOutputIface[j];
+        this.packets[i] = batch.packets[j];
+        this.octets[i] = batch.octets[j];
+        this.firstUptime[i] = batch.firstUptime[j];
+        this.lastUptime[i] = batch.lastUptime[j];
+        this.srcPort[i] = batch.srcPort[j];
+        this.dstPort[i] = batch.dstPort[j];
+        this.tcpFlags[i] = batch.tcpFlags[j];
+        this.protocol[i] = batch.protocol[j];
+        this.srcAS[i] = batch.srcAS[j];
+        this.dstAS[i] = batch.dstAS[j];
+        this.tos[i] = batch.tos[j];
+        this.srcMask[i] = batch.srcMask[j];
+        this.dstMask[i] = batch.dstMask[j];
+        this.egress[i] = batch.egress[j];
+        return i;
+    }
+
+    /**
+     * Materializes the record at the given index.
+     */
+    public FlowRecord get(final int i) {
+        Preconditions.checkElementIndex(i, this.size);
+
+        return FlowRecord.builder()
+                .withSrcAddr(InetAddresses.fromInteger(this.srcAddr[i]))
+                .withDstAddr(InetAddresses.fromInteger(this.dstAddr[i]))
+                .withNextHop(InetAddresses.fromInteger(this.nextHop[i]))
+                .withSnmpInputIface(this.snmpInputIface[i])
+                .withSnmpOutputIface(this.snmpOutputIface[i])
+                .withPackets(this.packets[i])
+                .withOctets(this.octets[i])
+                .withFirstUptime(Duration.ofMillis(this.firstUptime[i]))
+                .withLastUptime(Duration.ofMillis(this.lastUptime[i]))
+                .withSrcPort(this.srcPort[i])
+                .withDstPort(this.dstPort[i])
+                .withTcpFlags((short) (this.tcpFlags[i] & 0xFF))
+                .withProtocol((short) (this.protocol[i] & 0xFF))
+                .withSrcAS(this.srcAS[i])
+                .withDstAS(this.dstAS[i])
+                .withTos((short) (this.tos[i] & 0xFF))
+                .withSrcMask((short) (this.srcMask[i] & 0xFF))
+                .withDstMask((short) (this.dstMask[i] & 0xFF))
+                .withEgress(this.egress[i])
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        final MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this);
+        for (int i = 0; i < this.size; i++) {
+            helper.addValue(this.get(i));
+        }
+        return helper.toString();
+    }
+}
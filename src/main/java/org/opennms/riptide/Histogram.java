@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A histogram of non-negative values with a bounded relative error.
+ *
+ * Like HdrHistogram, the values are counted in log-linear buckets: values below 128 are counted exactly, all larger
+ * values are counted in 64 linear sub-buckets per power of two. This keeps the error below 1.6% over the whole range of
+ * {@code long} with a fixed memory footprint.
+ *
+ * Recording is lock-free and can happen from any number of threads.
+ */
+public class Histogram {
+
+    private final static int SUB_BITS = 7;
+    private final static int SUB_COUNT = 1 << SUB_BITS;
+    private final static int HALF_COUNT = SUB_COUNT / 2;
+
+    private final static int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0);
+
+    static int index(final long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BITS - 1);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) ((value >>> shift) - HALF_COUNT);
+    }
+
+    /**
+     * Returns the highest value counted in the bucket with the given index.
+     */
+    static long highest(final int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+
+        final int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+        final long sub = (index - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(final long value) {
+        final long v = Math.max(0, value);
+
+        this.counts.incrementAndGet(index(v));
+        this.count.increment();
+        this.sum.add(v);
+
+        long max;
+        while (v > (max = this.max.get())) {
+            if (this.max.compareAndSet(max, v)) {
+                break;
+            }
+        }
+    }
+
+    public long count() {
+        return this.count.sum();
+    }
+
+    public long sum() {
+        return this.sum.sum();
+    }
+
+    public long max() {
+        return this.max.get();
+    }
+
+    public long mean() {
+        final long count = this.count();
+        return count != 0 ? this.sum() / count : 0;
+    }
+
+    /**
+     * Returns the number of values recorded below or at the given value.
+     *
+     * Values in the bucket of the given value are counted completely.
+     */
+    public long countAtMost(final long value) {
+        final int last = index(Math.max(0, value));
+
+        long count = 0;
+        for (int i = 0; i <= last; i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of all recorded values lie.
+     *
+     * The result is the highest value of the bucket containing the percentile but never more than the maximum.
+     */
+    public long percentile(final double percentile) {
+        Preconditions.checkArgument(percentile >= 0.0 && percentile <= 100.0);
+
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += this.counts.get(i);
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), this.max());
+            }
+        }
+
+        return this.max();
+    }
+}
@@ -32,15 +32,20 @@ import java.net.Inet4Address;
 import java.net.InetSocketAddress;
 
 import com.google.common.base.Preconditions;
+import com.google.common.net.InetAddresses;
 
 public class Inet4SockAddr {
     public final Inet4Address addr;
     public final int port;
 
+    final int addrBits;
+
     public Inet4SockAddr(final Inet4Address addr,
                          final int port) {
         this.addr = Preconditions.checkNotNull(addr);
         this.port = port;
+
+        this.addrBits = InetAddresses.coerceToInteger(this.addr);
     }
 
     public InetSocketAddress toSocketAddress() {
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.util.Objects;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * A hash map from primitive {@code long} keys to values.
+ *
+ * Keys are neither boxed nor wrapped in entries, so looking up a known key does not allocate. The map uses open
+ * addressing with linear probing in parallel arrays and is kept at most half full. Entries can't be removed and
+ * {@code null} values are not allowed.
+ *
+ * Not thread-safe.
+ */
+class LongMap<V> {
+
+    private final static int INITIAL_CAPACITY = 16;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Returns the value of the given key or {@code null} if the key is unknown.
+     */
+    @SuppressWarnings("unchecked")
+    V get(final long key) {
+        return (V) this.values[find(this.keys, this.values, key)];
+    }
+
+    /**
+     * Sets the value of the given key.
+     */
+    void put(final long key, final V value) {
+        Objects.requireNonNull(value);
+
+        int slot = find(this.keys, this.values, key);
+        if (this.values[slot] == null) {
+            // Keep the table at most half full so probe sequences stay short
+            if (2 * (this.size + 1) > this.keys.length) {
+                this.grow();
+                slot = find(this.keys, this.values, key);
+            }
+
+            this.keys[slot] = key;
+            this.size++;
+        }
+
+        this.values[slot] = value;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the values in no particular order.
+     */
+    Iterable<V> values() {
+        return () -> new AbstractIterator<V>() {
+            private int slot = 0;
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected V computeNext() {
+                while (this.slot < LongMap.this.values.length) {
+                    final Object value = LongMap.this.values[this.slot++];
+                    if (value != null) {
+                        return (V) value;
+                    }
+                }
+                return this.endOfData();
+            }
+        };
+    }
+
+    private void grow() {
+        final long[] keys = new long[2 * this.keys.length];
+        final Object[] values = new Object[keys.length];
+
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.values[i] != null) {
+                final int slot = find(keys, values, this.keys[i]);
+                keys[slot] = this.keys[i];
+                values[slot] = this.values[i];
+            }
+        }
+
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Returns the slot holding the given key or the free slot to put it in.
+     */
+    private static int find(final long[] keys, final Object[] values, final long key) {
+        final int mask = keys.length - 1;
+
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+
+        int slot = (int) hash & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
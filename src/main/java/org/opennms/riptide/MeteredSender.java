@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Counts the flows handed to a sender and measures the time spent sending them.
+ */
+public class MeteredSender implements Simulation.Sender {
+
+    private final Simulation.Sender delegate;
+    private final Metrics metrics;
+
+    public MeteredSender(final Simulation.Sender delegate, final Metrics metrics) {
+        this.delegate = Preconditions.checkNotNull(delegate);
+        this.metrics = Preconditions.checkNotNull(metrics);
+    }
+
+    @Override
+    public void send(final Flow flow) {
+        final long start = System.nanoTime();
+        this.delegate.send(flow);
+        this.metrics.sendLatency().record(System.nanoTime() - start);
+
+        this.metrics.flow(flow.records.size());
+    }
+
+    @Override
+    public void send(final Flow flow, final Inet4SockAddr source) {
+        final long start = System.nanoTime();
+        this.delegate.send(flow, source);
+        this.metrics.sendLatency().record(System.nanoTime() - start);
+
+        this.metrics.flow(flow.records.size());
+    }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        final long start = System.nanoTime();
+        this.delegate.send(packet, source);
+        this.metrics.sendLatency().record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void flush() {
+        this.delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        this.delegate.close();
+    }
+}
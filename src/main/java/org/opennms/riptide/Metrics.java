@@ -0,0 +1,413 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Runtime metrics of the generator.
+ *
+ * All metrics can be updated concurrently. They are exposed via JMX, in the Prometheus text format and as a summary at
+ * the end of a run.
+ */
+public class Metrics {
+    private final static Logger LOG = LoggerFactory.getLogger(Metrics.class);
+
+    private final static String DOMAIN = "org.opennms.riptide";
+
+    private final static double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    public interface TargetMBean {
+        long getDatagrams();
+
+        long getBytes();
+
+        long getErrors();
+
+        long getDropped();
+    }
+
+    /**
+     * The counters of a single target.
+     */
+    public static class Target implements TargetMBean {
+        public final Inet4SockAddr addr;
+
+        private final LongAdder datagrams = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        private Target(final Inet4SockAddr addr) {
+            this.addr = Preconditions.checkNotNull(addr);
+        }
+
+        public void sent(final int bytes) {
+            this.datagrams.increment();
+            this.bytes.add(bytes);
+        }
+
+        public void failed() {
+            this.errors.increment();
+        }
+
+        public void dropped() {
+            this.dropped.increment();
+        }
+
+        @Override
+        public long getDatagrams() {
+            return this.datagrams.sum();
+        }
+
+        @Override
+        public long getBytes() {
+            return this.bytes.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return this.errors.sum();
+        }
+
+        @Override
+        public long getDropped() {
+            return this.dropped.sum();
+        }
+    }
+
+    public interface GeneratorMBean {
+        long getFlows();
+
+        long getRecords();
+
+        long getSendCount();
+
+        long getSendLatencyMeanMicros();
+
+        long getSendLatency99Micros();
+
+        long getSendLatencyMaxMicros();
+
+        long getTickCount();
+
+        long getTickLatenessMeanMicros();
+
+        long getTickLateness99Micros();
+
+        long getTickLatenessMaxMicros();
+    }
+
+    private final LongAdder flows = new LongAdder();
+    private final LongAdder records = new LongAdder();
+
+    private final Histogram sendLatency = new Histogram();
+    private final Histogram tickLateness = new Histogram();
+
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    private volatile boolean registered = false;
+
+    private volatile PacketRing ring;
+
+    public void flow(final int records) {
+        this.flows.increment();
+        this.records.add(records);
+    }
+
+    /**
+     * Returns the counters of the given target which are shared by all senders.
+     */
+    public Target target(final Inet4SockAddr addr) {
+        return this.targets.computeIfAbsent(addr.toString(), key -> {
+            final Target target = new Target(addr);
+            if (this.registered) {
+                register(target);
+            }
+            return target;
+        });
+    }
+
+    /**
+     * Includes the counters of the given ring between generators and senders.
+     */
+    public void ring(final PacketRing ring) {
+        this.ring = Preconditions.checkNotNull(ring);
+    }
+
+    /**
+     * The time spent in {@link Simulation.Sender#send(Flow)} in nanoseconds.
+     */
+    public Histogram sendLatency() {
+        return this.sendLatency;
+    }
+
+    /**
+     * The time ticks have been fired after their deadline in nanoseconds.
+     */
+    public Histogram tickLateness() {
+        return this.tickLateness;
+    }
+
+    public long flows() {
+        return this.flows.sum();
+    }
+
+    public long records() {
+        return this.records.sum();
+    }
+
+    /**
+     * Returns the failed sends of all targets.
+     */
+    public long errors() {
+        long errors = 0;
+        for (final Target target : this.targets.values()) {
+            errors += target.getErrors();
+        }
+        return errors;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     */
+    public void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        final Metrics metrics = this;
+        final GeneratorMBean generator = new GeneratorMBean() {
+            @Override
+            public long getFlows() {
+                return metrics.flows();
+            }
+
+            @Override
+            public long getRecords() {
+                return metrics.records();
+            }
+
+            @Override
+            public long getSendCount() {
+                return metrics.sendLatency.count();
+            }
+
+            @Override
+            public long getSendLatencyMeanMicros() {
+                return TimeUnit.NANOSECONDS.toMicros(metrics.sendLatency.mean());
+            }
+
+            @Override
+            public long getSendLatency99Micros() {
+                return TimeUnit.NANOSECONDS.toMicros(metrics.sendLatency.percentile(99.0));
+            }
+
+            @Override
+            public long getSendLatencyMaxMicros() {
+                return TimeUnit.NANOSECONDS.toMicros(metrics.sendLatency.max());
+            }
+
+            @Override
+            public long getTickCount() {
+                return metrics.tickLateness.count();
+            }
+
+            @Override
+            public long getTickLatenessMeanMicros() {
+                return TimeUnit.NANOSECONDS.toMicros(metrics.tickLateness.mean());
+            }
+
+            @Override
+            public long getTickLateness99Micros() {
+                return TimeUnit.NANOSECONDS.toMicros(metrics.tickLateness.percentile(99.0));
+            }
+
+            @Override
+            public long getTickLatenessMaxMicros() {
+                return TimeUnit.NANOSECONDS.toMicros(metrics.tickLateness.max());
+            }
+        };
+
+        try {
+            server.registerMBean(new StandardMBean(generator, GeneratorMBean.class),
+                    new ObjectName(DOMAIN, "type", "Generator"));
+        } catch (final JMException e) {
+            LOG.warn("Failed to register metrics with JMX", e);
+            return;
+        }
+
+        this.registered = true;
+        for (final Target target : this.targets.values()) {
+            register(target);
+        }
+    }
+
+    private static void register(final Target target) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(target, TargetMBean.class),
+                    new ObjectName(DOMAIN + ":type=Target,name=" + ObjectName.quote(target.addr.toString())));
+        } catch (final JMException e) {
+            LOG.warn("Failed to register metrics of target {} with JMX", target.addr, e);
+        }
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     */
+    public void prometheus(final StringBuilder out) {
+        counter(out, "riptide_flows_total", "Flows handed to the senders", this.flows());
+        counter(out, "riptide_records_total", "Flow records handed to the senders", this.records());
+
+        out.append("# HELP riptide_datagrams_total Datagrams sent per target\n");
+        out.append("# TYPE riptide_datagrams_total counter\n");
+        for (final Target target : this.targets.values()) {
+            sample(out, "riptide_datagrams_total", target, target.getDatagrams());
+        }
+
+        out.append("# HELP riptide_bytes_total Payload bytes sent per target\n");
+        out.append("# TYPE riptide_bytes_total counter\n");
+        for (final Target target : this.targets.values()) {
+            sample(out, "riptide_bytes_total", target, target.getBytes());
+        }
+
+        out.append("# HELP riptide_send_errors_total Failed sends per target\n");
+        out.append("# TYPE riptide_send_errors_total counter\n");
+        for (final Target target : this.targets.values()) {
+            sample(out, "riptide_send_errors_total", target, target.getErrors());
+        }
+
+        out.append("# HELP riptide_dropped_total Datagrams dropped per target because its lane was full\n");
+        out.append("# TYPE riptide_dropped_total counter\n");
+        for (final Target target : this.targets.values()) {
+            sample(out, "riptide_dropped_total", target, target.getDropped());
+        }
+
+        final PacketRing ring = this.ring;
+        if (ring != null) {
+            counter(out, "riptide_ring_published_total", "Packets published to the ring", ring.published());
+            counter(out, "riptide_ring_dropped_newest_total", "Packets dropped because the ring was full", ring.droppedNewest());
+            counter(out, "riptide_ring_dropped_oldest_total", "Queued packets dropped to make room in the ring", ring.droppedOldest());
+            counter(out, "riptide_ring_oversized_total", "Packets dropped because they exceeded the slot size", ring.oversized());
+            counter(out, "riptide_ring_full_waits_total", "Packets waiting for room in the ring", ring.fullWaits());
+            counter(out, "riptide_ring_empty_waits_total", "Waits of the senders on an empty ring", ring.emptyWaits());
+        }
+
+        summary(out, "riptide_send_latency_seconds", "Time spent sending a flow", this.sendLatency);
+        summary(out, "riptide_tick_lateness_seconds", "Time ticks have been fired after their deadline", this.tickLateness);
+    }
+
+    static void counter(final StringBuilder out, final String name, final String help, final long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(final StringBuilder out, final String name, final Target target, final long value) {
+        out.append(name).append("{target=\"").append(target.addr.addr.getHostAddress()).append(':').append(target.addr.port).append("\"} ")
+                .append(value).append('\n');
+    }
+
+    private static void summary(final StringBuilder out, final String name, final String help, final Histogram histogram) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" summary\n");
+        for (final double quantile : QUANTILES) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.percentile(quantile * 100.0) / 1e9).append('\n');
+        }
+        out.append(name).append("_sum ").append(histogram.sum() / 1e9).append('\n');
+        out.append(name).append("_count ").append(histogram.count()).append('\n');
+    }
+
+    /**
+     * Writes a histogram with the given bucket bounds in seconds where the recorded values are in the given unit.
+     */
+    static void histogram(final StringBuilder out, final String name, final String help,
+                          final Histogram histogram, final double[] bounds, final TimeUnit unit) {
+        final double perSecond = unit.convert(1, TimeUnit.SECONDS);
+
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        for (final double bound : bounds) {
+            out.append(name).append("_bucket{le=\"").append(bound).append("\"} ")
+                    .append(histogram.countAtMost((long) (bound * perSecond))).append('\n');
+        }
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(histogram.count()).append('\n');
+        out.append(name).append("_sum ").append(histogram.sum() / perSecond).append('\n');
+        out.append(name).append("_count ").append(histogram.count()).append('\n');
+    }
+
+    /**
+     * Logs a summary of all metrics.
+     */
+    public void summary() {
+        LOG.info("Sent {} flows with {} records", this.flows(), this.records());
+
+        for (final Target target : this.targets.values()) {
+            LOG.info("Target {}: {} datagrams, {} bytes, {} errors, {} dropped",
+                    target.addr, target.getDatagrams(), target.getBytes(), target.getErrors(), target.getDropped());
+        }
+
+        final PacketRing ring = this.ring;
+        if (ring != null) {
+            LOG.info("Ring: {} published, {} dropped newest, {} dropped oldest, {} oversized, {} full waits, {} empty waits",
+                    ring.published(), ring.droppedNewest(), ring.droppedOldest(), ring.oversized(), ring.fullWaits(), ring.emptyWaits());
+        }
+
+        if (this.sendLatency.count() > 0) {
+            LOG.info("Send latency: mean {} us, p50 {} us, p99 {} us, p99.9 {} us, max {} us",
+                    TimeUnit.NANOSECONDS.toMicros(this.sendLatency.mean()),
+                    TimeUnit.NANOSECONDS.toMicros(this.sendLatency.percentile(50.0)),
+                    TimeUnit.NANOSECONDS.toMicros(this.sendLatency.percentile(99.0)),
+                    TimeUnit.NANOSECONDS.toMicros(this.sendLatency.percentile(99.9)),
+                    TimeUnit.NANOSECONDS.toMicros(this.sendLatency.max()));
+        }
+
+        if (this.tickLateness.count() > 0) {
+            LOG.info("Tick lateness: mean {} us, p50 {} us, p99 {} us, p99.9 {} us, max {} us",
+                    TimeUnit.NANOSECONDS.toMicros(this.tickLateness.mean()),
+                    TimeUnit.NANOSECONDS.toMicros(this.tickLateness.percentile(50.0)),
+                    TimeUnit.NANOSECONDS.toMicros(this.tickLateness.percentile(99.0)),
+                    TimeUnit.NANOSECONDS.toMicros(this.tickLateness.percentile(99.9)),
+                    TimeUnit.NANOSECONDS.toMicros(this.tickLateness.max()));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves metrics in the Prometheus text format on {@code /metrics}.
+ */
+public class MetricsServer implements AutoCloseable {
+    private final static Logger LOG = LoggerFactory.getLogger(MetricsServer.class);
+
+    private final Consumer<StringBuilder> writer;
+    private final HttpServer server;
+
+    public MetricsServer(final Metrics metrics, final int port) throws IOException {
+        this(metrics::prometheus, port);
+    }
+
+    /**
+     * @param writer writes the metrics in the Prometheus text format
+     */
+    public MetricsServer(final Consumer<StringBuilder> writer, final int port) throws IOException {
+        this.writer = Preconditions.checkNotNull(writer);
+
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/metrics", this::handle);
+        this.server.start();
+
+        LOG.info("Serving metrics on {}", this.server.getAddress());
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final StringBuilder out = new StringBuilder();
+        this.writer.accept(out);
+
+        final byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (final OutputStream stream = exchange.getResponseBody()) {
+            stream.write(body);
+        }
+    }
+
+    public int port() {
+        return this.server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+}
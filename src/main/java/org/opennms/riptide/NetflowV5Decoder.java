@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Netflow v5 packet decoder.
+ *
+ * Mirrors {@link NetflowV5Encoder}: the header fields are kept in this decoder and the records are decoded into a
+ * reused batch, so decoding does not allocate. The decoded values are valid until the next packet is decoded.
+ *
+ * This class is not thread-safe.
+ */
+public class NetflowV5Decoder {
+
+    public final static int MAX_RECORDS = (Encoder.MAX_PACKET_SIZE - NetflowV5Encoder.HEADER_SIZE) / NetflowV5Encoder.RECORD_SIZE;
+
+    private final FlowRecordBatch records = new FlowRecordBatch(MAX_RECORDS);
+
+    private long uptime;
+    private long seconds;
+    private long nanos;
+    private long flowSequence;
+    private short engineType;
+    private short engineId;
+    private int samplingMode;
+    private int samplingInterval;
+
+    /**
+     * Checks if the packet starting at the position of the buffer is a Netflow v5 packet.
+     */
+    public static boolean isV5(final ByteBuffer packet) {
+        return packet.remaining() >= NetflowV5Encoder.HEADER_SIZE
+                && packet.getShort(packet.position()) == Flow.VERSION;
+    }
+
+    /**
+     * Decodes the packet starting at the position of the buffer. The position is not changed.
+     *
+     * @return {@code false} if the packet is not a Netflow v5 packet or is truncated
+     */
+    public boolean decode(final ByteBuffer packet) {
+        this.records.clear();
+
+        if (!isV5(packet)) {
+            return false;
+        }
+
+        final int p = packet.position();
+
+        final int count = packet.getShort(p + 2) & 0xFFFF;
+        if (count > MAX_RECORDS || packet.remaining() < NetflowV5Encoder.HEADER_SIZE + count * NetflowV5Encoder.RECORD_SIZE) {
+            return false;
+        }
+
+        this.uptime = packet.getInt(p + 4) & 0xFFFFFFFFL;
+        this.seconds = packet.getInt(p + 8) & 0xFFFFFFFFL;
+        this.nanos = packet.getInt(p + 12) & 0xFFFFFFFFL;
+        this.flowSequence = packet.getInt(p + 16) & 0xFFFFFFFFL;
+        this.engineType = (short) (packet.get(p + 20) & 0xFF);
+        this.engineId = (short) (packet.get(p + 21) & 0xFF);
+
+        final int sampling = packet.getShort(p + 22) & 0xFFFF;
+        this.samplingMode = sampling >>> 14;
+        this.samplingInterval = sampling & 0x3FFF;
+
+        final FlowRecordBatch records = this.records;
+        for (int r = p + NetflowV5Encoder.HEADER_SIZE, n = 0; n < count; r += NetflowV5Encoder.RECORD_SIZE, n++) {
+            final int i = records.append();
+
+            records.srcAddr[i] = packet.getInt(r);
+            records.dstAddr[i] = packet.getInt(r + 4);
+            records.nextHop[i] = packet.getInt(r + 8);
+
+            records.snmpInputIface[i] = packet.getShort(r + 12) & 0xFFFF;
+            records.snmpOutputIface[i] = packet.getShort(r + 14) & 0xFFFF;
+
+            records.packets[i] = packet.getInt(r + 16) & 0xFFFFFFFFL;
+            records.octets[i] = packet.getInt(r + 20) & 0xFFFFFFFFL;
+
+            records.firstUptime[i] = packet.getInt(r + 24) & 0xFFFFFFFFL;
+            records.lastUptime[i] = packet.getInt(r + 28) & 0xFFFFFFFFL;
+
+            records.srcPort[i] = packet.getShort(r + 32) & 0xFFFF;
+            records.dstPort[i] = packet.getShort(r + 34) & 0xFFFF;
+
+            // Padding 1, TCP flags, protocol and TOS
+            records.tcpFlags[i] = packet.get(r + 37);
+            records.protocol[i] = packet.get(r + 38);
+            records.tos[i] = packet.get(r + 39);
+
+            records.srcAS[i] = packet.getShort(r + 40) & 0xFFFF;
+            records.dstAS[i] = packet.getShort(r + 42) & 0xFFFF;
+
+            // Masks, padding 2 and egress
+            records.srcMask[i] = packet.get(r + 44);
+            records.dstMask[i] = packet.get(r + 45);
+            records.egress[i] = (packet.get(r + 47) & 0x80) != 0;
+        }
+
+        return true;
+    }
+
+    public FlowRecordBatch records() {
+        return this.records;
+    }
+
+    public int count() {
+        return this.records.size();
+    }
+
+    /**
+     * Returns the uptime of the exporter in milliseconds.
+     */
+    public long uptime() {
+        return this.uptime;
+    }
+
+    /**
+     * Returns the export time in epoch microseconds.
+     */
+    public long timeMicros() {
+        return this.seconds * 1_000_000L + this.nanos / 1000L;
+    }
+
+    public long flowSequence() {
+        return this.flowSequence;
+    }
+
+    public short engineType() {
+        return this.engineType;
+    }
+
+    public short engineId() {
+        return this.engineId;
+    }
+
+    public int samplingMode() {
+        return this.samplingMode;
+    }
+
+    public int samplingInterval() {
+        return this.samplingInterval;
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Netflow v5 packet encoder.
+ *
+ * All fields are written using bulk big-endian puts. Encoding does not allocate.
+ */
+public class NetflowV5Encoder implements Encoder {
+
+    public final static int HEADER_SIZE = 24;
+    public final static int RECORD_SIZE = 48;
+
+    /**
+     * The count field of the header allows more but collectors reject packets exceeding this limit.
+     */
+    public final static int MAX_RECORDS = 30;
+
+    @Override
+    public void encode(final Flow flow, final ByteBuffer buffer) {
+        final FlowRecordBatch records = flow.records;
+        final int count = records.size();
+
+        buffer.putShort((short) Flow.VERSION);
+        buffer.putShort((short) count);
+        buffer.putInt((int) flow.header.uptimeMillis);
+        buffer.putInt((int) flow.header.timeSeconds);
+        buffer.putInt(flow.header.timeNanos);
+        buffer.putInt((int) flow.header.flowSequence);
+        buffer.put((byte) flow.header.engineType);
+        buffer.put((byte) flow.header.engineId);
+        buffer.putShort((short) (flow.header.samplingMode.value << 14 | flow.header.samplingInterval));
+
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(records.srcAddr[i]);
+            buffer.putInt(records.dstAddr[i]);
+            buffer.putInt(records.nextHop[i]);
+
+            buffer.putShort((short) records.snmpInputIface[i]);
+            buffer.putShort((short) records.snmpOutputIface[i]);
+
+            buffer.putInt((int) records.packets[i]);
+            buffer.putInt((int) records.octets[i]);
+
+            buffer.putInt((int) records.firstUptime[i]);
+            buffer.putInt((int) records.lastUptime[i]);
+
+            buffer.putShort((short) records.srcPort[i]);
+            buffer.putShort((short) records.dstPort[i]);
+
+            // Padding 1, TCP flags, protocol and TOS
+            buffer.putInt((records.tcpFlags[i] & 0xFF) << 16 | (records.protocol[i] & 0xFF) << 8 | (records.tos[i] & 0xFF));
+
+            buffer.putShort((short) records.srcAS[i]);
+            buffer.putShort((short) records.dstAS[i]);
+
+            // Masks, padding 2 and egress
+            buffer.putInt((records.srcMask[i] & 0xFF) << 24 | (records.dstMask[i] & 0xFF) << 16 | (records.egress[i] ? 0x80 : 0x00));
+        }
+    }
+
+    @Override
+    public int size(final Flow flow) {
+        return HEADER_SIZE + RECORD_SIZE * flow.records.size();
+    }
+
+    @Override
+    public int maxRecords(final int packetSize) {
+        return Math.min(MAX_RECORDS, (packetSize - HEADER_SIZE) / RECORD_SIZE);
+    }
+}
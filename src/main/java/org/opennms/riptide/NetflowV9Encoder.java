@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Netflow v9 packet encoder.
+ *
+ * Each packet consists of the header, an optional template FlowSet and a data FlowSet holding all records of the flow.
+ * The template FlowSet is serialized once on construction and copied into the packet whenever it is due.
+ *
+ * The template is refreshed per source id, which is derived from engine type and id, so each exporter gets its own
+ * refresh cycle (see {@link TemplateRefresh}).
+ *
+ * The header sequence counts packets instead of records and is taken from {@link Flow#packetSequence}.
+ *
+ * The encoder keeps per-source state and must not be shared between threads.
+ */
+public class NetflowV9Encoder implements Encoder {
+
+    public final static int VERSION = 9;
+
+    public final static int HEADER_SIZE = 20;
+    public final static int FLOWSET_HEADER_SIZE = 4;
+
+    public final static int TEMPLATE_FLOWSET_ID = 0;
+
+    public final static RecordTemplate DEFAULT_TEMPLATE = new RecordTemplate(RecordTemplate.MIN_ID,
+            FlowField.SRC_ADDR,
+            FlowField.DST_ADDR,
+            FlowField.NEXT_HOP,
+            FlowField.INPUT_SNMP,
+            FlowField.OUTPUT_SNMP,
+            FlowField.PACKETS,
+            FlowField.OCTETS,
+            FlowField.FIRST_SWITCHED,
+            FlowField.LAST_SWITCHED,
+            FlowField.SRC_PORT,
+            FlowField.DST_PORT,
+            FlowField.TCP_FLAGS,
+            FlowField.PROTOCOL,
+            FlowField.TOS,
+            FlowField.SRC_AS,
+            FlowField.DST_AS,
+            FlowField.SRC_MASK,
+            FlowField.DST_MASK,
+            FlowField.DIRECTION);
+
+    private final RecordTemplate template;
+
+    private final byte[] templateFlowSet;
+
+    private final TemplateRefresh refresh;
+
+    public NetflowV9Encoder() {
+        this(DEFAULT_TEMPLATE, TemplateRefresh.DEFAULT_PACKETS, TemplateRefresh.DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param refreshPackets the number of packets after which the template is sent again
+     * @param refreshInterval the time after which the template is sent again
+     */
+    public NetflowV9Encoder(final RecordTemplate template, final int refreshPackets, final Duration refreshInterval) {
+        this.template = Preconditions.checkNotNull(template);
+        this.refresh = new TemplateRefresh(refreshPackets, refreshInterval);
+        this.templateFlowSet = template.templateSet(TEMPLATE_FLOWSET_ID);
+    }
+
+    @Override
+    public void encode(final Flow flow, final ByteBuffer buffer) {
+        final int count = flow.records.size();
+        final int sourceId = flow.header.engineType << 8 | flow.header.engineId;
+
+        final boolean withTemplate = this.refresh.due(sourceId, flow.timeMillis());
+
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) (count + (withTemplate ? 1 : 0)));
+        buffer.putInt((int) flow.header.uptimeMillis);
+        buffer.putInt((int) flow.header.timeSeconds);
+        buffer.putInt((int) flow.header.packetSequence);
+        buffer.putInt(sourceId);
+
+        if (withTemplate) {
+            buffer.put(this.templateFlowSet);
+        }
+
+        final int start = buffer.position();
+        buffer.putShort((short) this.template.id);
+        buffer.putShort((short) 0);
+
+        for (int i = 0; i < count; i++) {
+            this.template.writeRecord(buffer, flow, i);
+        }
+
+        // FlowSets are padded to a 32 bit boundary
+        while ((buffer.position() - start) % 4 != 0) {
+            buffer.put((byte) 0);
+        }
+
+        buffer.putShort(start + 2, (short) (buffer.position() - start));
+    }
+
+    /**
+     * Returns the size of the packet assuming the template is included.
+     */
+    @Override
+    public int size(final Flow flow) {
+        return HEADER_SIZE + this.templateFlowSet.length + FLOWSET_HEADER_SIZE + this.template.recordLength() * flow.records.size() + 3;
+    }
+
+    @Override
+    public int maxRecords(final int packetSize) {
+        return (packetSize - HEADER_SIZE - this.templateFlowSet.length - FLOWSET_HEADER_SIZE - 3) / this.template.recordLength();
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Waits for absolute deadlines on the {@link System#nanoTime()} time line.
+ *
+ * The thread is parked for the bulk of the remaining time and spins for the last part to compensate for the coarse
+ * resolution of parking. As deadlines are absolute, oversleeping does not accumulate over consecutive waits.
+ *
+ * The pacer records how late each deadline has actually been met, optionally into a shared {@link Histogram}. It also
+ * carries the policy which should be applied by its users whenever they fall behind their schedule.
+ *
+ * This class is not thread-safe.
+ */
+public class Pacer {
+
+    public enum CatchUp {
+        /**
+         * Fire all missed deadlines back to back.
+         */
+        BURST,
+
+        /**
+         * Skip all missed deadlines but the last one.
+         */
+        SKIP,
+    }
+
+    public final static long DEFAULT_SPIN_NANOS = 100_000L;
+
+    private final long spinNanos;
+    private final CatchUp catchUp;
+    private final Histogram lateness;
+
+    private long count = 0;
+    private long total = 0;
+    private long max = 0;
+
+    public Pacer() {
+        this(DEFAULT_SPIN_NANOS, CatchUp.BURST);
+    }
+
+    /**
+     * @param spinNanos the time before the deadline the thread starts spinning instead of parking
+     * @param catchUp the policy to apply if the schedule can not be met
+     */
+    public Pacer(final long spinNanos, final CatchUp catchUp) {
+        this(spinNanos, catchUp, null);
+    }
+
+    /**
+     * @param lateness the histogram to record the lateness of each deadline in or {@code null}
+     */
+    public Pacer(final long spinNanos, final CatchUp catchUp, final Histogram lateness) {
+        Preconditions.checkArgument(spinNanos >= 0);
+
+        this.spinNanos = spinNanos;
+        this.catchUp = Preconditions.checkNotNull(catchUp);
+        this.lateness = lateness;
+    }
+
+    /**
+     * Waits until the given deadline has been reached.
+     *
+     * If the thread is interrupted while waiting, this returns early with the interrupt status still set. Callers are
+     * expected to check the status and stop.
+     *
+     * @return the number of nanoseconds the deadline has been missed or a negative value if interrupted early
+     */
+    public long awaitNanos(final long deadline) {
+        long now = System.nanoTime();
+
+        long remaining;
+        while ((remaining = deadline - now) > 0) {
+            if (remaining > this.spinNanos) {
+                LockSupport.parkNanos(remaining - this.spinNanos);
+
+                if (Thread.currentThread().isInterrupted()) {
+                    return System.nanoTime() - deadline;
+                }
+            }
+
+            now = System.nanoTime();
+        }
+
+        final long lateness = now - deadline;
+
+        this.count++;
+        this.total += lateness;
+        this.max = Math.max(this.max, lateness);
+
+        if (this.lateness != null) {
+            this.lateness.record(lateness);
+        }
+
+        return lateness;
+    }
+
+    public CatchUp catchUp() {
+        return this.catchUp;
+    }
+
+    /**
+     * Returns the number of deadlines waited for.
+     */
+    public long count() {
+        return this.count;
+    }
+
+    /**
+     * Returns the mean lateness in nanoseconds.
+     */
+    public long meanLateness() {
+        return this.count != 0 ? this.total / this.count : 0;
+    }
+
+    /**
+     * Returns the maximum lateness in nanoseconds.
+     */
+    public long maxLateness() {
+        return this.max;
+    }
+}
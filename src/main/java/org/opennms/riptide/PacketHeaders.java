@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import static org.opennms.riptide.BufferUtils.bytes;
+import static org.opennms.riptide.BufferUtils.uint16;
+import static org.opennms.riptide.BufferUtils.uint32;
+import static org.opennms.riptide.BufferUtils.uint8;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the link, network and transport headers in front of an exported packet.
+ */
+public class PacketHeaders {
+
+    public final static int ETHERNET_HEADER_SIZE = 14;
+    public final static int IP_HEADER_SIZE = 20;
+    public final static int UDP_HEADER_SIZE = 8;
+    public final static int TCP_HEADER_SIZE = 20;
+
+    public final static int PROTOCOL_TCP = 6;
+    public final static int PROTOCOL_UDP = 17;
+
+    private final static byte[] ETHERNET_SOURCE = new byte[] { 0x02, 0x00, 0x00, 0x00, 0x00, 0x01 };
+    private final static byte[] ETHERNET_TARGET = new byte[] { 0x02, 0x00, 0x00, 0x00, 0x00, 0x02 };
+
+    private PacketHeaders() {
+    }
+
+    /**
+     * Writes an Ethernet header using locally administered addresses.
+     */
+    public static void ethernet(final ByteBuffer buffer) {
+        bytes(buffer, ETHERNET_TARGET); // Target address
+        bytes(buffer, ETHERNET_SOURCE); // Source address
+        uint16(buffer, 0x0800); // Type = IPv4
+    }
+
+    /**
+     * Writes an IPv4 header for a packet of the given total length.
+     *
+     * The checksum is left empty - see {@link #ipv4Checksum(ByteBuffer, int)}.
+     */
+    public static void ipv4(final ByteBuffer buffer,
+                            final int tos, final int totalLength, final int protocol,
+                            final int sourceAddress, final int targetAddress) {
+        uint8(buffer, (0x04 << 4) | 5); // IPv4 version and header size
+        uint8(buffer, tos); // DSCP and ECN
+        uint16(buffer, totalLength); // Length
+        uint16(buffer, 0); // Identification
+        uint16(buffer, 0); // Flags and fragment offset
+        uint8(buffer, 64); // TTL
+        uint8(buffer, protocol); // Protocol
+        uint16(buffer, 0); // Checksum - see ipv4Checksum()
+        uint32(buffer, sourceAddress & 0xFFFFFFFFL); // Source address
+        uint32(buffer, targetAddress & 0xFFFFFFFFL); // Target address
+    }
+
+    /**
+     * Writes an IPv4 and UDP header for a payload of the given length.
+     *
+     * Both checksums are left empty - see {@link #ipv4Checksum(ByteBuffer, int)} and
+     * {@link #udpChecksum(ByteBuffer, int, int)}.
+     */
+    public static void ipv4Udp(final ByteBuffer buffer,
+                               final int sourceAddress, final int sourcePort,
+                               final int targetAddress, final int targetPort,
+                               final int payloadLength) {
+        ipv4(buffer, 0, IP_HEADER_SIZE + UDP_HEADER_SIZE + payloadLength, PROTOCOL_UDP, sourceAddress, targetAddress);
+        udp(buffer, sourcePort, targetPort, payloadLength);
+    }
+
+    /**
+     * Writes an UDP header for a payload of the given length. The checksum is left empty.
+     */
+    public static void udp(final ByteBuffer buffer, final int sourcePort, final int targetPort, final int payloadLength) {
+        uint16(buffer, sourcePort); // Source port
+        uint16(buffer, targetPort); // Target port
+        uint16(buffer, UDP_HEADER_SIZE + payloadLength); // Length
+        uint16(buffer, 0); // Checksum - see udpChecksum()
+    }
+
+    /**
+     * Writes a TCP header without options. The checksum is left empty.
+     */
+    public static void tcp(final ByteBuffer buffer,
+                           final int sourcePort, final int targetPort,
+                           final long sequence, final int flags) {
+        uint16(buffer, sourcePort); // Source port
+        uint16(buffer, targetPort); // Target port
+        uint32(buffer, sequence & 0xFFFFFFFFL); // Sequence number
+        uint32(buffer, 0); // Acknowledgment number
+        uint16(buffer, (5 << 12) | (flags & 0xFF)); // Header size and flags
+        uint16(buffer, 0xFFFF); // Window size
+        uint16(buffer, 0); // Checksum
+        uint16(buffer, 0); // Urgent pointer
+    }
+
+    /**
+     * Calculates the ones' complement sum of the 16 bit words in the given range folded to 16 bits.
+     *
+     * A trailing odd byte is padded with zero. Sums of different ranges can be combined by adding and folding them,
+     * which allows to update checksums incrementally.
+     */
+    public static int sum(final byte[] data, final int offset, final int length) {
+        long sum = 0;
+
+        final int end = offset + (length & ~1);
+        for (int i = offset; i < end; i += 2) {
+            sum += ((data[i] & 0xFF) << 8) | (data[i + 1] & 0xFF);
+        }
+
+        if ((length & 1) != 0) {
+            sum += (data[end] & 0xFF) << 8;
+        }
+
+        return fold(sum);
+    }
+
+    /**
+     * Calculates the ones' complement sum of the 16 bit words in the given range of the buffer folded to 16 bits.
+     *
+     * Works like {@link #sum(byte[], int, int)} using absolute positions, so the position of the buffer is untouched.
+     */
+    public static int sum(final ByteBuffer buffer, final int offset, final int length) {
+        long sum = 0;
+
+        final int end = offset + (length & ~1);
+        for (int i = offset; i < end; i += 2) {
+            sum += buffer.getShort(i) & 0xFFFF;
+        }
+
+        if ((length & 1) != 0) {
+            sum += (buffer.get(end) & 0xFF) << 8;
+        }
+
+        return fold(sum);
+    }
+
+    /**
+     * Folds the carries of a ones' complement sum into 16 bits.
+     */
+    public static int fold(long sum) {
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return (int) sum;
+    }
+
+    /**
+     * Calculates and sets the checksum of the IPv4 header starting at the given offset.
+     */
+    public static void ipv4Checksum(final ByteBuffer buffer, final int offset) {
+        int sum = 0;
+        for (int i = 0; i < IP_HEADER_SIZE; i += 2) {
+            sum += buffer.getShort(offset + i) & 0xFFFF;
+        }
+
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+
+        buffer.putShort(offset + 10, (short) ~sum);
+    }
+
+    /**
+     * Calculates and sets the checksum of the UDP header following the IPv4 header starting at the given offset.
+     *
+     * The checksum covers the pseudo header made of the addresses, the protocol and the UDP length, the UDP header and
+     * the payload, whose sum is passed in as calculated by {@link #sum(ByteBuffer, int, int)}. This results in the
+     * same checksum as {@link UdpHeaderTemplate} puts on the wire.
+     */
+    public static void udpChecksum(final ByteBuffer buffer, final int offset, final int payloadSum) {
+        final int udp = offset + IP_HEADER_SIZE;
+        final int udpLength = buffer.getShort(udp + 4) & 0xFFFF;
+
+        final int checksum = ~fold((long) sum(buffer, offset + 12, 8)
+                + PROTOCOL_UDP
+                + udpLength
+                + sum(buffer, udp, UDP_HEADER_SIZE)
+                + payloadSum) & 0xFFFF;
+
+        buffer.putShort(udp + 6, (short) (checksum != 0 ? checksum : 0xFFFF)); // Zero means no checksum
+    }
+}
@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded ring of pre-allocated packet buffers passing encoded packets from generator threads to sender threads.
+ *
+ * Producers claim a slot, encode the packet right into its buffer and publish it. Consumers take published slots in
+ * order, send the packet and release the slot for re-use. Each slot carries a sequence number which tells producers and
+ * consumers whether it is free, published or in use, so neither side needs a lock. With a single producer, the slot is
+ * claimed without a compare-and-set.
+ *
+ * If all slots are in use, the full policy decides whether the producer waits, drops the new packet or drops the oldest
+ * published one. Waiting on either side follows the wait strategy.
+ */
+public class PacketRing {
+    private final static Logger LOG = LoggerFactory.getLogger(PacketRing.class);
+
+    public final static int DEFAULT_SIZE = 8192;
+
+    private final static long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    public enum Producers {
+        SINGLE,
+        MULTI,
+    }
+
+    public enum WaitStrategy {
+        /**
+         * Burns a core for the lowest latency.
+         */
+        SPIN {
+            @Override
+            void idle() {
+            }
+        },
+
+        /**
+         * Yields to other threads between checks.
+         */
+        YIELD {
+            @Override
+            void idle() {
+                Thread.yield();
+            }
+        },
+
+        /**
+         * Sleeps for a short time between checks.
+         */
+        PARK {
+            @Override
+            void idle() {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        };
+
+        abstract void idle();
+    }
+
+    public enum FullPolicy {
+        /**
+         * Waits for a slot to be released.
+         */
+        BLOCK,
+
+        /**
+         * Drops the packet to publish.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Drops the oldest packet not yet taken by a consumer.
+         */
+        DROP_OLDEST,
+    }
+
+    private final int mask;
+    private final int slotSize;
+
+    private final Producers producers;
+    private final WaitStrategy waitStrategy;
+    private final FullPolicy fullPolicy;
+
+    private final ByteBuffer[] buffers;
+    private final Inet4SockAddr[] sources;
+
+    // The slot at index i is free for the producer of position p if its sequence is p, published for the consumer of
+    // position p if its sequence is p + 1 and in use otherwise
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile boolean closed = false;
+    private volatile boolean warned = false;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder droppedNewest = new LongAdder();
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+    private final LongAdder fullWaits = new LongAdder();
+    private final LongAdder emptyWaits = new LongAdder();
+
+    /**
+     * @param size the number of slots which must be a power of two
+     * @param slotSize the maximum size of a packet
+     */
+    public PacketRing(final int size,
+                      final int slotSize,
+                      final Producers producers,
+                      final WaitStrategy waitStrategy,
+                      final FullPolicy fullPolicy) {
+        Preconditions.checkArgument(size > 0 && Integer.bitCount(size) == 1, "size must be a power of two");
+        Preconditions.checkArgument(slotSize > 0 && slotSize <= Encoder.MAX_PACKET_SIZE);
+        Preconditions.checkArgument((long) size * slotSize <= Integer.MAX_VALUE,
+                "%s slots of %s bytes exceed the maximum buffer size", size, slotSize);
+
+        this.mask = size - 1;
+        this.slotSize = slotSize;
+        this.producers = Preconditions.checkNotNull(producers);
+        this.waitStrategy = Preconditions.checkNotNull(waitStrategy);
+        this.fullPolicy = Preconditions.checkNotNull(fullPolicy);
+
+        this.buffers = new ByteBuffer[size];
+        this.sources = new Inet4SockAddr[size];
+        this.sequences = new AtomicLongArray(size);
+
+        // All slots are allocated up-front from one region
+        final ByteBuffer region = ByteBuffer.allocateDirect(size * slotSize);
+        for (int i = 0; i < size; i++) {
+            region.limit((i + 1) * slotSize).position(i * slotSize);
+            this.buffers[i] = region.slice();
+            this.sequences.set(i, i);
+        }
+    }
+
+    public int size() {
+        return this.mask + 1;
+    }
+
+    public int slotSize() {
+        return this.slotSize;
+    }
+
+    /**
+     * Claims a slot to publish a packet of the given size.
+     *
+     * @return the position of the claimed slot or {@code -1} if the packet has been dropped
+     */
+    public long claim(final int size) {
+        if (size > this.slotSize) {
+            if (!this.warned) {
+                LOG.warn("Dropping packets exceeding the slot size of {} bytes", this.slotSize);
+                this.warned = true;
+            }
+            this.oversized.increment();
+            return -1;
+        }
+
+        boolean waited = false;
+        while (true) {
+            final long position = this.tryClaim();
+            if (position >= 0) {
+                this.buffers[(int) position & this.mask].clear();
+                return position;
+            }
+
+            switch (this.fullPolicy) {
+                case DROP_NEWEST:
+                    this.droppedNewest.increment();
+                    return -1;
+
+                case DROP_OLDEST:
+                    final long oldest = this.poll();
+                    if (oldest >= 0) {
+                        this.release(oldest);
+                        this.droppedOldest.increment();
+                        continue;
+                    }
+                    // The oldest slot is still being written or sent
+                    break;
+
+                case BLOCK:
+                    if (this.closed) {
+                        return -1;
+                    }
+                    break;
+            }
+
+            if (!waited) {
+                this.fullWaits.increment();
+                waited = true;
+            }
+            this.waitStrategy.idle();
+        }
+    }
+
+    private long tryClaim() {
+        while (true) {
+            final long position = this.tail.get();
+            final long sequence = this.sequences.get((int) position & this.mask);
+
+            if (sequence < position) {
+                // The slot has not been released since the last round
+                return -1;
+            }
+
+            if (sequence == position) {
+                if (this.producers == Producers.SINGLE) {
+                    this.tail.lazySet(position + 1);
+                    return position;
+                }
+
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            }
+
+            // Another producer has been faster
+        }
+    }
+
+    /**
+     * Returns the buffer of a claimed or taken slot.
+     */
+    public ByteBuffer buffer(final long position) {
+        return this.buffers[(int) position & this.mask];
+    }
+
+    /**
+     * Returns the source address of a taken slot.
+     */
+    public Inet4SockAddr source(final long position) {
+        return this.sources[(int) position & this.mask];
+    }
+
+    /**
+     * Hands a claimed slot over to the consumers. The packet is read from the start of the buffer up to its position.
+     */
+    public void publish(final long position, final Inet4SockAddr source) {
+        final int index = (int) position & this.mask;
+        this.buffers[index].flip();
+        this.sources[index] = source;
+
+        this.sequences.lazySet(index, position + 1);
+        this.published.increment();
+    }
+
+    /**
+     * Takes the oldest published slot.
+     *
+     * @return the position of the taken slot or {@code -1} if no slot has been published
+     */
+    public long poll() {
+        while (true) {
+            final long position = this.head.get();
+            final long sequence = this.sequences.get((int) position & this.mask);
+
+            if (sequence < position + 1) {
+                return -1;
+            }
+
+            if (sequence == position + 1 && this.head.compareAndSet(position, position + 1)) {
+                return position;
+            }
+
+            // Another consumer has been faster
+        }
+    }
+
+    /**
+     * Hands a taken slot back to the producers.
+     */
+    public void release(final long position) {
+        final int index = (int) position & this.mask;
+        this.sources[index] = null;
+        this.sequences.lazySet(index, position + this.mask + 1);
+    }
+
+    /**
+     * Sends the published packets using the given sender until the ring is closed and drained.
+     *
+     * The sender is flushed whenever the ring runs empty. Multiple threads may drain the same ring, each with its own
+     * sender.
+     */
+    public void drain(final Simulation.Sender sender) {
+        boolean flushed = true;
+        while (true) {
+            final long position = this.poll();
+            if (position >= 0) {
+                try {
+                    sender.send(this.buffer(position), this.source(position));
+                } catch (final RuntimeException e) {
+                    LOG.error("Failed to send packet", e);
+                } finally {
+                    this.release(position);
+                }
+                flushed = false;
+                continue;
+            }
+
+            if (!flushed) {
+                sender.flush();
+                flushed = true;
+            }
+
+            // Closing waits for all producers, so nothing is published after the ring has been closed
+            if (this.closed && this.head.get() == this.tail.get()) {
+                return;
+            }
+
+            this.emptyWaits.increment();
+            this.waitStrategy.idle();
+        }
+    }
+
+    /**
+     * Lets the consumers return as soon as the ring is drained. Must not be called before all producers are done.
+     */
+    public void close() {
+        this.closed = true;
+    }
+
+    public long published() {
+        return this.published.sum();
+    }
+
+    public long droppedNewest() {
+        return this.droppedNewest.sum();
+    }
+
+    public long droppedOldest() {
+        return this.droppedOldest.sum();
+    }
+
+    public long oversized() {
+        return this.oversized.sum();
+    }
+
+    /**
+     * The number of packets for which a producer had to wait for a free slot.
+     */
+    public long fullWaits() {
+        return this.fullWaits.sum();
+    }
+
+    /**
+     * The number of times a consumer found the ring empty.
+     */
+    public long emptyWaits() {
+        return this.emptyWaits.sum();
+    }
+}
@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Streams the UDP packets contained in a pcap file.
+ *
+ * The file is mapped region by region instead of being read into the heap.
+ *
+ * Captures with Ethernet (including VLAN tags), raw IP, Linux cooked and BSD loopback link types are supported. All
+ * frames which are not unfragmented IPv4 / UDP packets are skipped.
+ *
+ * This class is not thread-safe.
+ */
+public class PcapReader implements Closeable {
+
+    private final static int MAGIC_MICROS = 0xA1B2C3D4;
+    private final static int MAGIC_NANOS = 0xA1B23C4D;
+
+    private final static int LINKTYPE_NULL = 0;
+    private final static int LINKTYPE_ETHERNET = 1;
+    private final static int LINKTYPE_RAW = 101;
+    private final static int LINKTYPE_LINUX_SLL = 113;
+    private final static int LINKTYPE_IPV4 = 228;
+
+    private final static int FILE_HEADER_SIZE = 24;
+    private final static int RECORD_HEADER_SIZE = 16;
+
+    private final static long MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+
+    private final ByteOrder order;
+    private final long tsFraction;
+    private final int linkType;
+
+    private MappedByteBuffer region;
+    private ByteBuffer network;
+    private long regionOffset;
+
+    private long timestamp;
+    private int sourceAddress;
+    private int sourcePort;
+    private int targetAddress;
+    private int targetPort;
+
+    private long packets = 0;
+    private long skipped = 0;
+
+    public PcapReader(final Path path) throws IOException {
+        this.path = Preconditions.checkNotNull(path);
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = this.channel.size();
+
+        try {
+            if (this.size < FILE_HEADER_SIZE) {
+                throw new IOException("Not a pcap file: " + path);
+            }
+
+            this.map(0);
+
+            final int magic = this.region.getInt(0);
+            if (magic == MAGIC_MICROS || magic == MAGIC_NANOS) {
+                this.order = ByteOrder.BIG_ENDIAN;
+            } else if (Integer.reverseBytes(magic) == MAGIC_MICROS || Integer.reverseBytes(magic) == MAGIC_NANOS) {
+                this.order = ByteOrder.LITTLE_ENDIAN;
+            } else {
+                throw new IOException("Not a pcap file (pcapng is not supported): " + path);
+            }
+
+            this.tsFraction = (magic == MAGIC_NANOS || Integer.reverseBytes(magic) == MAGIC_NANOS) ? 1L : 1000L;
+
+            this.region.order(this.order);
+            this.linkType = this.region.getInt(20) & 0x0FFFFFFF;
+
+            if (this.linkType != LINKTYPE_NULL
+                    && this.linkType != LINKTYPE_ETHERNET
+                    && this.linkType != LINKTYPE_RAW
+                    && this.linkType != LINKTYPE_LINUX_SLL
+                    && this.linkType != LINKTYPE_IPV4) {
+                throw new IOException("Unsupported link type " + this.linkType + ": " + path);
+            }
+
+            this.region.position(FILE_HEADER_SIZE);
+
+        } catch (final IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    private void map(final long offset) throws IOException {
+        this.region = this.channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(this.size - offset, MAX_REGION_SIZE));
+        this.region.order(this.order != null ? this.order : ByteOrder.BIG_ENDIAN);
+        this.network = this.region.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.regionOffset = offset;
+    }
+
+    /**
+     * Advances to the next UDP packet.
+     *
+     * @return {@code false} if the end of the file has been reached
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (this.region.remaining() < RECORD_HEADER_SIZE) {
+                if (!this.remap()) {
+                    return false;
+                }
+                continue;
+            }
+
+            final int start = this.region.position();
+
+            final long seconds = this.region.getInt(start) & 0xFFFFFFFFL;
+            final long fraction = this.region.getInt(start + 4) & 0xFFFFFFFFL;
+            final int capturedLength = this.region.getInt(start + 8);
+
+            if (capturedLength < 0 || capturedLength > this.size) {
+                throw new IOException("Corrupted pcap record at " + (this.regionOffset + start) + ": " + this.path);
+            }
+
+            if (this.region.remaining() < RECORD_HEADER_SIZE + capturedLength) {
+                if (!this.remap()) {
+                    // Truncated last record
+                    return false;
+                }
+                continue;
+            }
+
+            final int frame = start + RECORD_HEADER_SIZE;
+            final int end = frame + capturedLength;
+
+            this.region.position(end);
+
+            this.timestamp = seconds * 1_000_000_000L + fraction * this.tsFraction;
+
+            if (this.udp(frame, end)) {
+                this.packets++;
+                return true;
+            }
+
+            this.skipped++;
+        }
+    }
+
+    /**
+     * Maps the next region starting at the current record if there is anything left in the file.
+     */
+    private boolean remap() throws IOException {
+        final long offset = this.regionOffset + this.region.position();
+        if (offset >= this.size || this.region.position() == 0) {
+            return false;
+        }
+
+        this.map(offset);
+        return true;
+    }
+
+    /**
+     * Locates the UDP payload in the frame and points the network view at it.
+     */
+    private boolean udp(final int frame, final int end) {
+        final ByteBuffer buffer = this.network;
+        buffer.clear();
+
+        int ip;
+        switch (this.linkType) {
+            case LINKTYPE_ETHERNET: {
+                int type = frame + 12;
+                while (type + 2 <= end && ((buffer.getShort(type) & 0xFFFF) == 0x8100 || (buffer.getShort(type) & 0xFFFF) == 0x88A8)) {
+                    type += 4; // VLAN tag
+                }
+                if (type + 2 > end || (buffer.getShort(type) & 0xFFFF) != 0x0800) {
+                    return false;
+                }
+                ip = type + 2;
+                break;
+            }
+
+            case LINKTYPE_LINUX_SLL:
+                if (frame + 16 > end || (buffer.getShort(frame + 14) & 0xFFFF) != 0x0800) {
+                    return false;
+                }
+                ip = frame + 16;
+                break;
+
+            case LINKTYPE_NULL: {
+                // Address family in the byte order of the capturing host
+                if (frame + 4 > end) {
+                    return false;
+                }
+                final int family = buffer.getInt(frame);
+                if (family != 2 && Integer.reverseBytes(family) != 2) {
+                    return false;
+                }
+                ip = frame + 4;
+                break;
+            }
+
+            default:
+                ip = frame;
+                break;
+        }
+
+        if (ip + PacketHeaders.IP_HEADER_SIZE > end) {
+            return false;
+        }
+
+        final int versionAndLength = buffer.get(ip) & 0xFF;
+        if ((versionAndLength >> 4) != 4) {
+            return false;
+        }
+
+        // Fragmented packets are ignored
+        if ((buffer.getShort(ip + 6) & 0x3FFF) != 0) {
+            return false;
+        }
+
+        if ((buffer.get(ip + 9) & 0xFF) != 17) {
+            return false;
+        }
+
+        final int udp = ip + (versionAndLength & 0x0F) * 4;
+        if (udp + PacketHeaders.UDP_HEADER_SIZE > end) {
+            return false;
+        }
+
+        final int payload = udp + PacketHeaders.UDP_HEADER_SIZE;
+        final int payloadEnd = udp + (buffer.getShort(udp + 4) & 0xFFFF);
+        if (payloadEnd < payload || payloadEnd > end) {
+            // Snapped packet
+            return false;
+        }
+
+        this.sourceAddress = buffer.getInt(ip + 12);
+        this.targetAddress = buffer.getInt(ip + 16);
+        this.sourcePort = buffer.getShort(udp) & 0xFFFF;
+        this.targetPort = buffer.getShort(udp + 2) & 0xFFFF;
+
+        buffer.position(payload);
+        buffer.limit(payloadEnd);
+
+        return true;
+    }
+
+    /**
+     * Returns the capture timestamp of the current packet in nanoseconds since the epoch.
+     */
+    public long timestamp() {
+        return this.timestamp;
+    }
+
+    public int sourceAddress() {
+        return this.sourceAddress;
+    }
+
+    public int sourcePort() {
+        return this.sourcePort;
+    }
+
+    public int targetAddress() {
+        return this.targetAddress;
+    }
+
+    public int targetPort() {
+        return this.targetPort;
+    }
+
+    /**
+     * Returns the UDP payload of the current packet.
+     *
+     * The buffer is a read-only view into the mapped file which is only valid until the next call to {@link #next()}.
+     */
+    public ByteBuffer payload() {
+        return this.network;
+    }
+
+    /**
+     * Returns the number of UDP packets read so far.
+     */
+    public long packets() {
+        return this.packets;
+    }
+
+    /**
+     * Returns the number of frames skipped as they do not contain a complete IPv4 / UDP packet.
+     */
+    public long skipped() {
+        return this.skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.region = null;
+        this.network = null;
+        this.channel.close();
+    }
+}
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes packets to a pcap file instead of sending them.
+ *
+ * Each flow is written as a full Ethernet / IPv4 / UDP frame per target using the same headers and checksums as the
+ * {@link SpoofingSender} would put on the wire, except for the IP identification which is always zero. The file is written through memory-mapped regions which are mapped
+ * one after the other as the file grows. The payload is encoded once per flow and copied behind the headers of each
+ * target, so stateful encoders see every packet exactly once. On close, the file is truncated to the written size.
+ */
+public class PcapSender implements Simulation.Sender {
+    private final static Logger LOG = LoggerFactory.getLogger(PcapSender.class);
+
+    public final static int MAGIC = 0xA1B2C3D4;
+    public final static int LINKTYPE_ETHERNET = 1;
+
+    public final static int FILE_HEADER_SIZE = 24;
+    public final static int RECORD_HEADER_SIZE = 16;
+
+    public final static int FRAME_HEADER_SIZE = PacketHeaders.ETHERNET_HEADER_SIZE
+            + PacketHeaders.IP_HEADER_SIZE
+            + PacketHeaders.UDP_HEADER_SIZE;
+
+    public final static int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    private final Path path;
+    private final Inet4SockAddr source;
+    private final List<Inet4SockAddr> targets;
+
+    private final Encoder encoder;
+
+    // The payload of a flow encoded once for all targets
+    private final ByteBuffer scratch = ByteBuffer.allocate(Encoder.MAX_PACKET_SIZE);
+
+    private final FileChannel channel;
+    private final int regionSize;
+
+    private final int[] targetAddresses;
+
+    private final Metrics.Target[] metrics;
+
+    private MappedByteBuffer region;
+    private long regionOffset;
+
+    private long records = 0;
+
+    public PcapSender(final Path path,
+                      final Inet4SockAddr source,
+                      final List<Inet4SockAddr> targets) throws IOException {
+        this(path, source, targets, new NetflowV5Encoder(), DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * @param regionSize the size of the memory-mapped regions the file is grown by
+     */
+    public PcapSender(final Path path,
+                      final Inet4SockAddr source,
+                      final List<Inet4SockAddr> targets,
+                      final Encoder encoder,
+                      final int regionSize) throws IOException {
+        this(path, source, targets, encoder, regionSize, new Metrics());
+    }
+
+    /**
+     * @param regionSize the size of the memory-mapped regions the file is grown by
+     * @param metrics the metrics to count the written packets per target in
+     */
+    public PcapSender(final Path path,
+                      final Inet4SockAddr source,
+                      final List<Inet4SockAddr> targets,
+                      final Encoder encoder,
+                      final int regionSize,
+                      final Metrics metrics) throws IOException {
+        Preconditions.checkArgument(regionSize >= FILE_HEADER_SIZE + RECORD_HEADER_SIZE + FRAME_HEADER_SIZE + Encoder.MAX_PACKET_SIZE,
+                "Region too small: %s", regionSize);
+
+        this.path = Preconditions.checkNotNull(path);
+        this.source = Preconditions.checkNotNull(source);
+        this.targets = Preconditions.checkNotNull(targets);
+        this.encoder = Preconditions.checkNotNull(encoder);
+        this.regionSize = regionSize;
+
+        this.targetAddresses = new int[this.targets.size()];
+        for (int i = 0; i < this.targetAddresses.length; i++) {
+            this.targetAddresses[i] = this.targets.get(i).addrBits;
+        }
+
+        this.metrics = new Metrics.Target[this.targets.size()];
+        for (int i = 0; i < this.metrics.length; i++) {
+            this.metrics[i] = metrics.target(this.targets.get(i));
+        }
+
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        this.map(0);
+
+        // Global header
+        this.region.putInt(MAGIC);
+        this.region.putShort((short) 2); // Major version
+        this.region.putShort((short) 4); // Minor version
+        this.region.putInt(0); // Timezone offset
+        this.region.putInt(0); // Timestamp accuracy
+        this.region.putInt(0xFFFF); // Snapshot length
+        this.region.putInt(LINKTYPE_ETHERNET); // Link type
+    }
+
+    private void map(final long offset) throws IOException {
+        this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, offset, this.regionSize);
+        this.region.order(ByteOrder.BIG_ENDIAN);
+        this.regionOffset = offset;
+    }
+
+    @Override
+    public void send(final Flow flow) {
+        this.send(flow, this.source);
+    }
+
+    @Override
+    public void send(final Flow flow, final Inet4SockAddr source) {
+        this.scratch.clear();
+        this.encoder.encode(flow, this.scratch);
+        this.scratch.flip();
+
+        this.write(this.scratch, flow.header.timeSeconds, flow.header.timeNanos / 1000, source);
+    }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        final long now = System.currentTimeMillis();
+        this.write(packet, now / 1000L, (int) (now % 1000L) * 1000, source);
+    }
+
+    /**
+     * Writes the packet as a frame for each target.
+     */
+    private void write(final ByteBuffer packet,
+                       final long seconds, final int micros,
+                       final Inet4SockAddr source) {
+        final int position = packet.position();
+
+        // The payload is the same for all targets, so is its part of the UDP checksum
+        final int payloadSum = PacketHeaders.sum(packet, position, packet.remaining());
+
+        for (int i = 0; i < this.targetAddresses.length; i++) {
+            final int start = this.begin();
+
+            packet.position(position);
+            this.region.put(packet);
+
+            this.finish(start, seconds, micros, source, i, payloadSum);
+        }
+    }
+
+    /**
+     * Makes room for the next record and positions the region at the start of its payload.
+     *
+     * @return the start of the record in the region
+     */
+    private int begin() {
+        if (this.region.remaining() < RECORD_HEADER_SIZE + FRAME_HEADER_SIZE + Encoder.MAX_PACKET_SIZE) {
+            try {
+                this.map(this.regionOffset + this.region.position());
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Failed to grow pcap file: " + this.path, e);
+            }
+        }
+
+        final int start = this.region.position();
+        this.region.position(start + RECORD_HEADER_SIZE + FRAME_HEADER_SIZE);
+
+        return start;
+    }
+
+    /**
+     * Fills in the headers in front of the payload written since {@link #begin()}.
+     */
+    private void finish(final int start,
+                        final long seconds, final int micros,
+                        final Inet4SockAddr source, final int target,
+                        final int payloadSum) {
+        final ByteBuffer buffer = this.region;
+
+        final int end = buffer.position();
+        final int payloadLength = end - start - RECORD_HEADER_SIZE - FRAME_HEADER_SIZE;
+        final int frameLength = FRAME_HEADER_SIZE + payloadLength;
+
+        buffer.position(start);
+
+        // Record header
+        buffer.putInt((int) seconds);
+        buffer.putInt(micros);
+        buffer.putInt(frameLength); // Captured length
+        buffer.putInt(frameLength); // Original length
+
+        PacketHeaders.ethernet(buffer);
+
+        final int ipHeader = buffer.position();
+        PacketHeaders.ipv4Udp(buffer,
+                source.addrBits, source.port,
+                this.targetAddresses[target], this.targets.get(target).port,
+                payloadLength);
+        PacketHeaders.ipv4Checksum(buffer, ipHeader);
+        PacketHeaders.udpChecksum(buffer, ipHeader, payloadSum);
+
+        buffer.position(end);
+
+        this.records++;
+        this.metrics[target].sent(payloadLength);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Wrote packet from {} to {} ({} bytes)", source, this.targets.get(target), payloadLength);
+        }
+    }
+
+    @Override
+    public void close() {
+        final long size = this.regionOffset + this.region.position();
+
+        // Write back the mapped data before cutting off the unused tail of the last region - the mapping itself is
+        // only released once the buffer is garbage collected, so nothing must touch the region after this point
+        this.region.force();
+        this.region = null;
+
+        try {
+            this.channel.truncate(size);
+            this.channel.close();
+        } catch (final IOException e) {
+            LOG.error("Failed to close pcap file: " + this.path, e);
+        }
+
+        LOG.info("Wrote {} packets to {} ({} bytes)", this.records, this.path, size);
+    }
+}
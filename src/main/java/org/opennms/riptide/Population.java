@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.InetAddresses;
+
+/**
+ * Describes a population of sessions by the distributions of their attributes.
+ *
+ * Client and server addresses are drawn with Zipf distributed popularity from the hosts of a network, server ports by
+ * weight, packet counts and sizes and durations from the configured distributions. Sessions arrive as a Poisson
+ * process with the given rate or all at once.
+ */
+@JsonDeserialize(builder = Population.Builder.class)
+public class Population {
+
+    private final static int MIN_PACKET_SIZE = 40;
+    private final static int MAX_PACKET_SIZE = 65535;
+
+    private final static int MIN_EPHEMERAL_PORT = 32768;
+    private final static int MAX_EPHEMERAL_PORT = 60999;
+
+    public final Long seed;
+    public final long sessions;
+    public final double arrivalRate;
+
+    public final Hosts clients;
+    public final Hosts servers;
+
+    public final Map<Integer, Double> ports;
+
+    public final Distribution sendPackets;
+    public final Distribution recvPackets;
+    public final Distribution packetSize;
+    public final Distribution duration;
+
+    private final int[] portValues;
+    private final double[] portWeights;
+
+    public Population(final Builder builder) {
+        this.seed = builder.seed;
+        this.sessions = builder.sessions;
+        this.arrivalRate = builder.arrivalRate;
+        this.clients = Preconditions.checkNotNull(builder.clients, "clients are required");
+        this.servers = Preconditions.checkNotNull(builder.servers, "servers are required");
+        this.ports = Preconditions.checkNotNull(builder.ports);
+        this.sendPackets = Preconditions.checkNotNull(builder.sendPackets);
+        this.recvPackets = Preconditions.checkNotNull(builder.recvPackets);
+        this.packetSize = Preconditions.checkNotNull(builder.packetSize);
+        this.duration = Preconditions.checkNotNull(builder.duration);
+
+        Preconditions.checkArgument(this.sessions >= 0, "sessions must not be negative");
+        Preconditions.checkArgument(this.arrivalRate >= 0.0, "arrivalRate must not be negative");
+        Preconditions.checkArgument(!this.ports.isEmpty(), "at least one port is required");
+
+        // Cumulative weights for drawing ports by binary search
+        this.portValues = new int[this.ports.size()];
+        this.portWeights = new double[this.ports.size()];
+
+        double total = 0.0;
+        int i = 0;
+        for (final Map.Entry<Integer, Double> e : this.ports.entrySet()) {
+            Preconditions.checkArgument(e.getKey() > 0 && e.getKey() <= 0xFFFF, "invalid port: %s", e.getKey());
+            Preconditions.checkArgument(e.getValue() > 0.0, "weight of port %s must be positive", e.getKey());
+
+            total += e.getValue();
+            this.portValues[i] = e.getKey();
+            this.portWeights[i] = total;
+            i++;
+        }
+    }
+
+    /**
+     * Reads a population definition from a YAML or JSON file.
+     */
+    public static Population read(final Path path) throws IOException {
+        return new ObjectMapper(new YAMLFactory()).readValue(path.toFile(), Population.class);
+    }
+
+    /**
+     * Creates a generator for this population using the seed of the definition or a random one.
+     *
+     * @param anchor the time the first session arrives
+     */
+    public PopulationGenerator generator(final Instant anchor) {
+        return new PopulationGenerator(this, this.seed != null ? this.seed : new SplittableRandom().nextLong(), anchor);
+    }
+
+    int port(final SplittableRandom random) {
+        final double[] weights = this.portWeights;
+        final int i = Arrays.binarySearch(weights, random.nextDouble() * weights[weights.length - 1]);
+        return this.portValues[Math.min(weights.length - 1, i >= 0 ? i + 1 : -i - 1)];
+    }
+
+    static int ephemeralPort(final SplittableRandom random) {
+        return random.nextInt(MIN_EPHEMERAL_PORT, MAX_EPHEMERAL_PORT + 1);
+    }
+
+    long packets(final Distribution distribution, final SplittableRandom random) {
+        return Math.max(1L, Math.round(distribution.sample(random)));
+    }
+
+    long size(final long packets, final SplittableRandom random) {
+        final long packetSize = Math.max(MIN_PACKET_SIZE, Math.min(MAX_PACKET_SIZE, Math.round(this.packetSize.sample(random))));
+        return packets * packetSize;
+    }
+
+    /**
+     * The hosts of a network with Zipf distributed popularity.
+     *
+     * The hosts are ranked by a fixed permutation, so popular hosts are scattered across the network. Autonomous
+     * systems and SNMP interfaces are assigned to consecutive blocks of hosts.
+     */
+    @JsonDeserialize(builder = Hosts.Builder.class)
+    public static class Hosts {
+        private final static int PERMUTATION_MULTIPLIER = 0x9E3779B1;
+        private final static int PERMUTATION_INCREMENT = 0x7F4A7C15;
+
+        public final String network;
+        public final int count;
+        public final double skew;
+        public final int firstAS;
+        public final int autonomousSystems;
+        public final int firstInterface;
+        public final int interfaces;
+        public final short mask;
+
+        private final int first;
+        private final int permutationMask;
+        private final int permutationShift;
+        private final Zipf zipf;
+
+        public Hosts(final Builder builder) {
+            this.network = Preconditions.checkNotNull(builder.network, "network is required");
+
+            final int slash = this.network.indexOf('/');
+            Preconditions.checkArgument(slash > 0, "network must be given as ADDRESS/PREFIX: %s", this.network);
+
+            final int prefix = Integer.parseInt(this.network.substring(slash + 1));
+            Preconditions.checkArgument(prefix >= 0 && prefix <= 32, "invalid prefix length: %s", this.network);
+
+            final int address = InetAddresses.coerceToInteger(InetAddresses.forString(this.network.substring(0, slash)));
+            final long size = 1L << (32 - prefix);
+
+            // Network and broadcast addresses are skipped if there are any
+            final long capacity = prefix >= 31 ? size : size - 2;
+            this.first = (prefix == 0 ? 0 : address & (int) (-1L << (32 - prefix))) + (prefix >= 31 ? 0 : 1);
+
+            this.count = builder.count > 0 ? builder.count : (int) Math.min(capacity, Integer.MAX_VALUE);
+            Preconditions.checkArgument(this.count <= capacity, "network %s has less than %s hosts", this.network, builder.count);
+
+            this.skew = builder.skew;
+            this.firstAS = builder.firstAS;
+            this.autonomousSystems = builder.autonomousSystems;
+            this.firstInterface = builder.firstInterface;
+            this.interfaces = builder.interfaces;
+            this.mask = builder.mask >= 0 ? builder.mask : (short) prefix;
+
+            Preconditions.checkArgument(this.autonomousSystems > 0, "autonomousSystems must be positive");
+            Preconditions.checkArgument(this.interfaces > 0, "interfaces must be positive");
+
+            final int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, this.count - 1));
+            this.permutationMask = (int) ((1L << bits) - 1);
+            this.permutationShift = Math.max(1, bits / 2);
+
+            this.zipf = new Zipf(this.count, this.skew);
+        }
+
+        /**
+         * Draws the index of a host.
+         */
+        int sample(final SplittableRandom random) {
+            return this.permute(this.zipf.sample(random) - 1);
+        }
+
+        /**
+         * Maps a rank to a host index using a bijection on the next power of two and cycle walking.
+         */
+        int permute(final int rank) {
+            int x = rank;
+            do {
+                x = (x * PERMUTATION_MULTIPLIER + PERMUTATION_INCREMENT) & this.permutationMask;
+                x ^= x >>> this.permutationShift;
+            } while (x >= this.count);
+            return x;
+        }
+
+        Endpoint.Builder endpoint(final int index) {
+            return Endpoint.builder()
+                    .withResolvedAddress(InetAddresses.fromInteger(this.first + index))
+                    .withAS(this.firstAS + (int) ((long) index * this.autonomousSystems / this.count))
+                    .withSnmpInterface(this.firstInterface + (int) ((long) index * this.interfaces / this.count))
+                    .withMask(this.mask);
+        }
+
+        @JsonPOJOBuilder(buildMethodName = "build", withPrefix = "with")
+        public static class Builder {
+            private String network;
+            private int count = 0;
+            private double skew = 1.0;
+            private int firstAS = 64512;
+            private int autonomousSystems = 1;
+            private int firstInterface = 1;
+            private int interfaces = 1;
+            private short mask = -1;
+
+            public Builder withNetwork(final String network) {
+                this.network = network;
+                return this;
+            }
+
+            public Builder withCount(final int count) {
+                this.count = count;
+                return this;
+            }
+
+            public Builder withSkew(final double skew) {
+                this.skew = skew;
+                return this;
+            }
+
+            public Builder withFirstAS(final int firstAS) {
+                this.firstAS = firstAS;
+                return this;
+            }
+
+            public Builder withAutonomousSystems(final int autonomousSystems) {
+                this.autonomousSystems = autonomousSystems;
+                return this;
+            }
+
+            public Builder withFirstInterface(final int firstInterface) {
+                this.firstInterface = firstInterface;
+                return this;
+            }
+
+            public Builder withInterfaces(final int interfaces) {
+                this.interfaces = interfaces;
+                return this;
+            }
+
+            public Builder withMask(final short mask) {
+                this.mask = mask;
+                return this;
+            }
+
+            public Hosts build() {
+                return new Hosts(this);
+            }
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+    }
+
+    @JsonPOJOBuilder(buildMethodName = "build", withPrefix = "with")
+    public static class Builder {
+        private Long seed = null;
+        private long sessions = 0;
+        private double arrivalRate = 0.0;
+
+        private Hosts clients;
+        private Hosts servers;
+
+        private Map<Integer, Double> ports = ImmutableMap.of(443, 60.0, 80, 25.0, 53, 5.0, 22, 5.0, 25, 5.0);
+
+        private Distribution sendPackets = new Distribution.Pareto(2.0, 1.2, 1e7);
+        private Distribution recvPackets = new Distribution.Pareto(2.0, 1.1, 1e7);
+        private Distribution packetSize = new Distribution.Uniform(64.0, 1500.0);
+        private Distribution duration = new Distribution.Exponential(30.0);
+
+        public Builder withSeed(final Long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder withSessions(final long sessions) {
+            this.sessions = sessions;
+            return this;
+        }
+
+        public Builder withArrivalRate(final double arrivalRate) {
+            this.arrivalRate = arrivalRate;
+            return this;
+        }
+
+        public Builder withClients(final Hosts clients) {
+            this.clients = clients;
+            return this;
+        }
+
+        public Builder withServers(final Hosts servers) {
+            this.servers = servers;
+            return this;
+        }
+
+        public Builder withPorts(final Map<Integer, Double> ports) {
+            this.ports = ports;
+            return this;
+        }
+
+        public Builder withSendPackets(final Distribution sendPackets) {
+            this.sendPackets = sendPackets;
+            return this;
+        }
+
+        public Builder withRecvPackets(final Distribution recvPackets) {
+            this.recvPackets = recvPackets;
+            return this;
+        }
+
+        public Builder withPacketSize(final Distribution packetSize) {
+            this.packetSize = packetSize;
+            return this;
+        }
+
+        public Builder withDuration(final Distribution duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        public Population build() {
+            return new Population(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Lazily generates the sessions of a {@link Population}.
+ *
+ * Generators are deterministic for a given seed. To generate in parallel, a generator is split into independent
+ * generators which share the number of sessions and the arrival rate.
+ *
+ * This class is not thread-safe.
+ */
+public class PopulationGenerator implements SessionSource {
+
+    private final Population population;
+    private final long seed;
+    private final SplittableRandom random;
+    private final long sessions;
+    private final double arrivalRate;
+    private final Instant anchor;
+
+    private double arrival = 0.0;
+
+    private long count = 0;
+
+    /**
+     * @param anchor the time the first session arrives
+     */
+    public PopulationGenerator(final Population population,
+                               final long seed,
+                               final Instant anchor) {
+        this(population, seed, new SplittableRandom(seed), population.sessions, population.arrivalRate, anchor);
+    }
+
+    private PopulationGenerator(final Population population,
+                                final long seed,
+                                final SplittableRandom random,
+                                final long sessions,
+                                final double arrivalRate,
+                                final Instant anchor) {
+        this.population = Preconditions.checkNotNull(population);
+        this.seed = seed;
+        this.random = Preconditions.checkNotNull(random);
+        this.sessions = sessions;
+        this.arrivalRate = arrivalRate;
+        this.anchor = Preconditions.checkNotNull(anchor);
+    }
+
+    /**
+     * Returns the seed this generator (or the one it has been split from) has been created with.
+     */
+    public long seed() {
+        return this.seed;
+    }
+
+    /**
+     * Checks if this generator stops after a number of sessions.
+     */
+    public boolean limited() {
+        return this.sessions > 0;
+    }
+
+    /**
+     * Splits this generator into the given number of independent generators.
+     */
+    public List<PopulationGenerator> split(final int parts) {
+        Preconditions.checkArgument(parts > 0);
+
+        final long remaining = this.sessions - this.count;
+
+        final List<PopulationGenerator> generators = Lists.newArrayListWithCapacity(parts);
+        for (int i = 0; i < parts; i++) {
+            // Without a limit, each part generates forever, too
+            final long sessions = this.sessions > 0
+                    ? remaining / parts + (i < remaining % parts ? 1 : 0)
+                    : 0;
+            if (this.sessions > 0 && sessions == 0) {
+                break;
+            }
+
+            generators.add(new PopulationGenerator(this.population, this.seed, this.random.split(), sessions, this.arrivalRate / parts, this.anchor));
+        }
+        return generators;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.sessions == 0 || this.count < this.sessions;
+    }
+
+    @Override
+    public TcpSession next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        this.count++;
+
+        final SplittableRandom random = this.random;
+        final Population population = this.population;
+
+        if (this.arrivalRate > 0.0) {
+            this.arrival -= Math.log(1.0 - random.nextDouble()) / this.arrivalRate;
+        }
+
+        final Instant s = this.anchor.plusNanos((long) (this.arrival * 1e9));
+        final long duration = Math.max(1L, (long) (population.duration.sample(random) * 1000.0));
+
+        final long sendPackets = population.packets(population.sendPackets, random);
+        final long recvPackets = population.packets(population.recvPackets, random);
+
+        return TcpSession.builder()
+                .withClient(population.clients.endpoint(population.clients.sample(random))
+                        .withPort(Population.ephemeralPort(random))
+                        .build())
+                .withServer(population.servers.endpoint(population.servers.sample(random))
+                        .withPort(population.port(random))
+                        .build())
+                .withTimespan(new Timespan(s, s.plusMillis(duration)))
+                .withSendPackets(sendPackets)
+                .withSendSize(population.size(sendPackets, random))
+                .withRecvPackets(recvPackets)
+                .withRecvSize(population.size(recvPackets, random))
+                .build();
+    }
+
+    @Override
+    public long count() {
+        return this.count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.riptide;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Generates flows at a constant rate regardless of the session definitions.
+ *
+ * The sessions are used as templates which are cycled round-robin. Each template walks through the ticks of its
+ * session as if it would be simulated, but the ticks are synthesized on demand whenever the rate allows to emit the
+ * next records. Each emit covers the time since the template was emitted the last time, so the records of a template
+ * never overlap and their volumes follow the rates of the session regardless of the requested flow rate.
+ *
+ * If multiple aggregators are given, the templates are spread across them, so each exporter gets its share of the
+ * rate. There are at least as many templates as exporters.
+ */
+public class RateGenerator {
+    private final static Logger LOG = LoggerFactory.getLogger(RateGenerator.class);
+
+    private final static Duration REPORT_INTERVAL = Duration.ofSeconds(10);
+
+    private static class Template {
+        private final Simulation simulation;
+        private final Aggregator aggregator;
+        private final long bootMillis;
+        private final long ticks;
+
+        private long position = 0;
+
+        private long lastMillis;
+
+        private Template(final Simulation simulation, final Aggregator aggregator, final Duration flushInterval) {
+            this.simulation = Preconditions.checkNotNull(simulation);
+            this.aggregator = Preconditions.checkNotNull(aggregator);
+            this.bootMillis = aggregator.exporter().bootTime.toEpochMilli();
+
+            final long duration = simulation.session().timespan.duration().toMillis();
+            final long interval = flushInterval.toMillis();
+            this.ticks = Math.max(1, (duration + interval - 1) / interval);
+        }
+
+        private void records(final long s, final long e, final FlowRecordBatch records) {
+            final boolean first = this.position == 0;
+            final boolean last = this.position == this.ticks - 1;
+
+            this.simulation.records(s, e, first, last, records);
+
+            this.position = last ? 0 : this.position + 1;
+        }
+    }
+
+    private final List<Aggregator> aggregators;
+    private final Duration maxDelay;
+
+    private final Template[] templates;
+
+    private final FlowRecordBatch records = new FlowRecordBatch(Simulation.RECORDS_PER_TICK);
+
+    public RateGenerator(final Aggregator aggregator,
+                         final List<TcpSession> sessions,
+                         final Duration flushInterval,
+                         final Duration maxDelay) {
+        this(Collections.singletonList(aggregator), sessions, flushInterval, maxDelay);
+    }
+
+    public RateGenerator(final List<Aggregator> aggregators,
+                         final List<TcpSession> sessions,
+                         final Duration flushInterval,
+                         final Duration maxDelay) {
+        Preconditions.checkArgument(!sessions.isEmpty(), "At least one session is required as template");
+        Preconditions.checkArgument(!aggregators.isEmpty(), "At least one aggregator is required");
+
+        this.aggregators = Preconditions.checkNotNull(aggregators);
+        Preconditions.checkNotNull(flushInterval);
+        this.maxDelay = Preconditions.checkNotNull(maxDelay);
+
+        this.templates = new Template[Math.max(sessions.size(), aggregators.size())];
+        for (int i = 0; i < this.templates.length; i++) {
+            final Aggregator aggregator = aggregators.get(i % aggregators.size());
+            this.templates[i] = new Template(new Simulation(sessions.get(i % sessions.size()), flushInterval, aggregator.exporter().bootTime),
+                    aggregator,
+                    flushInterval);
+        }
+    }
+
+    /**
+     * Generates flows at the given rate.
+     *
+     * @param rate the number of flow records per second
+     * @param duration the time to run or {@link Duration#ZERO} to run forever
+     */
+    public void run(final double rate, final Duration duration) {
+        Preconditions.checkArgument(rate > 0.0);
+
+        LOG.info("Generating {} flows/s using {} session templates", rate, this.templates.length);
+
+        final TokenBucket bucket = new TokenBucket(rate, Math.max(2 * Simulation.RECORDS_PER_TICK, rate / 100.0));
+
+        final long start = System.nanoTime();
+        final long startMillis = System.currentTimeMillis();
+        final boolean forever = duration.isZero();
+
+        // Let the first emit of each template cover the time a full round over all templates takes
+        final long period = (long) (this.templates.length * Simulation.RECORDS_PER_TICK * 1e3 / rate);
+        for (final Template template : this.templates) {
+            template.lastMillis = startMillis - period;
+        }
+
+        long nextFlush = start + this.maxDelay.toNanos();
+        long nextReport = start + REPORT_INTERVAL.toNanos();
+
+        long count = 0;
+        long reportedCount = 0;
+        long reportedTime = start;
+
+        int next = 0;
+        while (true) {
+            if (!bucket.acquire(Simulation.RECORDS_PER_TICK) || Thread.currentThread().isInterrupted()) {
+                LOG.info("Interrupted - stopping generation");
+                break;
+            }
+
+            final long now = System.nanoTime();
+            if (!forever && now - start >= duration.toNanos()) {
+                break;
+            }
+
+            // Derived from the monotonic clock so the windows of a template follow each other without gaps or overlaps
+            final long time = startMillis + (now - start) / 1_000_000L;
+
+            final Template template = this.templates[next];
+
+            this.records.clear();
+            template.records(template.lastMillis, time, this.records);
+            template.lastMillis = time;
+            template.aggregator.add(this.records, time, time - template.bootMillis);
+
+            next = (next + 1) % this.templates.length;
+            count += this.records.size();
+
+            if (now - nextFlush >= 0) {
+                this.flush();
+                nextFlush += this.maxDelay.toNanos();
+            }
+
+            if (now - nextReport >= 0) {
+                LOG.info("Achieved {} flows/s (requested {} flows/s)",
+                        String.format("%.1f", (count - reportedCount) * 1e9 / (now - reportedTime)),
+                        rate);
+
+                reportedCount = count;
+                reportedTime = now;
+                nextReport += REPORT_INTERVAL.toNanos();
+            }
+        }
+
+        this.flush();
+
+        final long elapsed = System.nanoTime() - start;
+        LOG.info("Generated {} flows in {} ms: achieved {} flows/s (requested {} flows/s)",
+                count,
+                elapsed / 1_000_000L,
+                String.format("%.1f", count * 1e9 / elapsed),
+                rate);
+    }
+
+    private void flush() {
+        for (final Aggregator aggregator : this.aggregators) {
+            aggregator.flush();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+/**
+ * A fixed list of fields describing the layout of the data records of template based protocols.
+ */
+public class RecordTemplate {
+
+    /**
+     * The smallest template id allowed for data sets.
+     */
+    public final static int MIN_ID = 256;
+
+    public final int id;
+
+    private final FlowField[] fields;
+
+    private final int recordLength;
+
+    public RecordTemplate(final int id, final FlowField... fields) {
+        Preconditions.checkArgument(id >= MIN_ID && id <= 0xFFFF, "Template id must be between %s and 65535", MIN_ID);
+        Preconditions.checkArgument(fields.length > 0, "Template must have fields");
+
+        this.id = id;
+        this.fields = fields.clone();
+
+        int recordLength = 0;
+        for (final FlowField field : fields) {
+            recordLength += field.length;
+        }
+        this.recordLength = recordLength;
+    }
+
+    public List<FlowField> fields() {
+        return Arrays.asList(this.fields);
+    }
+
+    /**
+     * Returns the size of a single data record in bytes.
+     */
+    public int recordLength() {
+        return this.recordLength;
+    }
+
+    /**
+     * Returns the size of the template record describing this template in bytes.
+     */
+    public int templateLength() {
+        return 4 + 4 * this.fields.length;
+    }
+
+    /**
+     * Writes the template record consisting of id, field count and type and length of each field.
+     */
+    public void writeTemplate(final ByteBuffer buffer) {
+        buffer.putShort((short) this.id);
+        buffer.putShort((short) this.fields.length);
+        for (final FlowField field : this.fields) {
+            buffer.putShort((short) field.type);
+            buffer.putShort((short) field.length);
+        }
+    }
+
+    /**
+     * Serializes a set holding only the template record of this template.
+     *
+     * @param setId the id of the set marking it as template set
+     */
+    public byte[] templateSet(final int setId) {
+        final ByteBuffer set = ByteBuffer.allocate(4 + this.templateLength());
+        set.putShort((short) setId);
+        set.putShort((short) set.capacity());
+        this.writeTemplate(set);
+        return set.array();
+    }
+
+    /**
+     * Writes the data record for the i-th record of the flow.
+     */
+    public void writeRecord(final ByteBuffer buffer, final Flow flow, final int i) {
+        for (final FlowField field : this.fields) {
+            field.write(buffer, flow, i);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("fields", Arrays.toString(fields))
+                .toString();
+    }
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.net.InetAddresses;
+
+/**
+ * Re-sends the packets of a captured pcap file.
+ *
+ * Packets are sent at their original pace, faster by a factor or as fast as possible. Missed deadlines are always
+ * caught up by bursting as replays must not drop packets.
+ *
+ * Each packet is sent from the exporter it has been captured from unless a fixed source is given. Optionally, the
+ * header of Netflow v5 packets is rewritten to make the replay look live: the export time is set to the current
+ * time, uptime and the record timestamps are shifted by the same amount and the sequence numbers are continued per
+ * exporter. Packets of other versions are replayed unchanged.
+ */
+public class Replayer {
+    private final static Logger LOG = LoggerFactory.getLogger(Replayer.class);
+
+    private static class Exporter {
+        private final Inet4SockAddr source;
+
+        private long sequence = 0;
+
+        private Exporter(final Inet4SockAddr source) {
+            this.source = Preconditions.checkNotNull(source);
+        }
+    }
+
+    private final Simulation.Sender sender;
+    private final Pacer pacer;
+    private final double speed;
+    private final boolean rewrite;
+    private final Inet4SockAddr source;
+
+    private final LongMap<Exporter> exporters = new LongMap<>();
+
+    // The mapped file is read-only - packets are copied here to be rewritten
+    private final ByteBuffer scratch = ByteBuffer.allocate(Encoder.MAX_PACKET_SIZE);
+
+    private long rewritten = 0;
+
+    /**
+     * @param speed the factor to speed up the replay by or {@code 0} to replay as fast as possible
+     * @param rewrite whether to rewrite the time, uptime and sequence fields
+     * @param source the source to send all packets from or {@code null} to use the original exporters
+     */
+    public Replayer(final Simulation.Sender sender,
+                    final Pacer pacer,
+                    final double speed,
+                    final boolean rewrite,
+                    final Inet4SockAddr source) {
+        Preconditions.checkArgument(speed >= 0.0);
+
+        this.sender = Preconditions.checkNotNull(sender);
+        this.pacer = Preconditions.checkNotNull(pacer);
+        this.speed = speed;
+        this.rewrite = rewrite;
+        this.source = source;
+    }
+
+    public void run(final PcapReader reader) throws IOException {
+        long first = 0;
+        long start = 0;
+
+        while (reader.next()) {
+            if (reader.packets() == 1) {
+                first = reader.timestamp();
+                start = System.nanoTime();
+            }
+
+            if (this.speed > 0.0) {
+                this.pacer.awaitNanos(start + (long) ((reader.timestamp() - first) / this.speed));
+                if (Thread.currentThread().isInterrupted()) {
+                    LOG.info("Interrupted - stopping replay");
+                    break;
+                }
+            }
+
+            ByteBuffer payload = reader.payload();
+            final Exporter exporter = this.exporter(reader, payload);
+
+            if (this.rewrite && NetflowV5Decoder.isV5(payload)) {
+                this.scratch.clear();
+                this.scratch.put(payload).flip();
+
+                payload = this.scratch;
+                this.rewrite(payload, exporter);
+            }
+
+            this.sender.send(payload, this.source != null ? this.source : exporter.source);
+        }
+
+        this.sender.flush();
+
+        LOG.info("Replayed {} packets from {} exporters ({} rewritten, {} frames skipped)",
+                reader.packets(), this.exporters.size(), this.rewritten, reader.skipped());
+    }
+
+    private Exporter exporter(final PcapReader reader, final ByteBuffer payload) {
+        // Netflow v5 sequence numbers are kept per engine
+        final int engine = NetflowV5Decoder.isV5(payload) ? payload.getShort(payload.position() + 20) & 0xFFFF : 0;
+
+        final long key = ((long) reader.sourceAddress() << 32)
+                | ((long) reader.sourcePort() << 16)
+                | engine;
+
+        Exporter exporter = this.exporters.get(key);
+        if (exporter == null) {
+            exporter = new Exporter(new Inet4SockAddr(InetAddresses.fromInteger(reader.sourceAddress()), reader.sourcePort()));
+            this.exporters.put(key, exporter);
+
+            LOG.debug("Found exporter {}", exporter.source);
+        }
+
+        return exporter;
+    }
+
+    private void rewrite(final ByteBuffer payload, final Exporter exporter) {
+        final int p = payload.position();
+
+        final int count = payload.getShort(p + 2) & 0xFFFF;
+        if (payload.remaining() < NetflowV5Encoder.HEADER_SIZE + count * NetflowV5Encoder.RECORD_SIZE) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final long time = (payload.getInt(p + 8) & 0xFFFFFFFFL) * 1000L + (payload.getInt(p + 12) & 0xFFFFFFFFL) / 1_000_000L;
+
+        // Shift all relative timestamps by the time passed since the export - uptime wraps around like on a real device
+        final int delta = (int) (now - time);
+
+        payload.putInt(p + 4, payload.getInt(p + 4) + delta);
+        payload.putInt(p + 8, (int) (now / 1000L));
+        payload.putInt(p + 12, (int) (now % 1000L) * 1_000_000);
+        payload.putInt(p + 16, (int) exporter.sequence);
+
+        for (int i = 0; i < count; i++) {
+            final int record = p + NetflowV5Encoder.HEADER_SIZE + i * NetflowV5Encoder.RECORD_SIZE;
+            payload.putInt(record + 24, payload.getInt(record + 24) + delta);
+            payload.putInt(record + 28, payload.getInt(record + 28) + delta);
+        }
+
+        exporter.sequence += count;
+        this.rewritten++;
+    }
+}
@@ -1,26 +1,60 @@
 package org.opennms.riptide;
 
 import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.URL;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.opennms.riptide.args.Inet4SockAddrOptionHandler;
+import org.opennms.riptide.args.InstantOptionHandler;
+import org.opennms.riptide.args.RecordTemplateOptionHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class Riptide {
     private final static Logger LOG = LoggerFactory.getLogger(Riptide.class);
 
+    private final static int DEFAULT_SOURCE_PORT = 9995;
+
+    private final static int DEFAULT_MAX_ACTIVE = 100_000;
+
+    // The time to wait after each step of a saturation search for packets in flight
+    private final static Duration SATURATION_SETTLE = Duration.ofSeconds(1);
+
+    private final static String COMPILE = "compile";
+    private final static String SINK = "sink";
+
+    public enum Protocol {
+        NETFLOW5,
+        NETFLOW9,
+        IPFIX,
+        SFLOW,
+    }
+
     public static class CmdLine {
         @Argument(index = 0, metaVar = "FILE", required = true)
         private Path file;
@@ -36,6 +70,163 @@ public class Riptide {
 
         @Option(name = "-dry-run", required = false)
         private boolean dryRun = false;
+
+        @Option(name = "-pcap", metaVar = "FILE", required = false)
+        private Path pcap = null;
+
+        @Option(name = "-nio", required = false)
+        private boolean nio = false;
+
+        @Option(name = "-send-buffer", metaVar = "BYTES", required = false)
+        private int sendBuffer = 0;
+
+        @Option(name = "-async", required = false)
+        private boolean async = false;
+
+        @Option(name = "-ring-size", metaVar = "COUNT", required = false)
+        private int ringSize = PacketRing.DEFAULT_SIZE;
+
+        @Option(name = "-wait-strategy", metaVar = "STRATEGY", required = false)
+        private PacketRing.WaitStrategy waitStrategy = PacketRing.WaitStrategy.PARK;
+
+        @Option(name = "-ring-full", metaVar = "POLICY", required = false)
+        private PacketRing.FullPolicy ringFull = PacketRing.FullPolicy.BLOCK;
+
+        @Option(name = "-io-threads", metaVar = "COUNT", required = false)
+        private int ioThreads = 1;
+
+        @Option(name = "-fanout", required = false)
+        private boolean fanout = false;
+
+        @Option(name = "-lane-capacity", metaVar = "COUNT", required = false)
+        private int laneCapacity = FanoutSender.DEFAULT_CAPACITY;
+
+        @Option(name = "-overflow", metaVar = "POLICY", required = false)
+        private FanoutSender.Overflow overflow = FanoutSender.Overflow.DROP;
+
+        @Option(name = "-batch", metaVar = "COUNT", required = false)
+        private int batch = ChannelSender.DEFAULT_BATCH_SIZE;
+
+        @Option(name = "-rate", metaVar = "FLOWS", required = false)
+        private double rate = 0.0;
+
+        @Option(name = "-duration", metaVar = "SECS", required = false)
+        private long duration = 0;
+
+        @Option(name = "-speed", metaVar = "FACTOR", required = false)
+        private double speed = 1.0;
+
+        @Option(name = "-start", metaVar = "TIME", handler = InstantOptionHandler.class, required = false)
+        private Instant start = null;
+
+        @Option(name = "-catch-up", metaVar = "POLICY", required = false)
+        private Pacer.CatchUp catchUp = Pacer.CatchUp.BURST;
+
+        @Option(name = "-spin", metaVar = "MICROS", required = false)
+        private long spin = Pacer.DEFAULT_SPIN_NANOS / 1000L;
+
+        @Option(name = "-protocol", metaVar = "PROTOCOL", required = false)
+        private Protocol protocol = Protocol.NETFLOW5;
+
+        @Option(name = "-fields", handler = RecordTemplateOptionHandler.class, required = false)
+        private RecordTemplate template = null;
+
+        @Option(name = "-template-packets", metaVar = "COUNT", required = false)
+        private int templatePackets = TemplateRefresh.DEFAULT_PACKETS;
+
+        @Option(name = "-template-interval", metaVar = "SECS", required = false)
+        private long templateInterval = TemplateRefresh.DEFAULT_INTERVAL.getSeconds();
+
+        @Option(name = "-sampling-rate", metaVar = "N", required = false)
+        private int samplingRate = SflowSender.DEFAULT_SAMPLING_RATE;
+
+        @Option(name = "-counter-interval", metaVar = "SECS", required = false)
+        private long counterInterval = SflowSender.DEFAULT_COUNTER_INTERVAL.getSeconds();
+
+        @Option(name = "-max-records", metaVar = "COUNT", required = false)
+        private int maxRecords = 0;
+
+        @Option(name = "-mtu", metaVar = "BYTES", required = false)
+        private int mtu = 1500;
+
+        @Option(name = "-max-delay", metaVar = "MILLIS", required = false)
+        private long maxDelay = 1000;
+
+        @Option(name = "-workers", metaVar = "COUNT", required = false)
+        private int workers = 1;
+
+        @Option(name = "-exporters", metaVar = "COUNT", required = false)
+        private int exporters = 1;
+
+        @Option(name = "-max-active", metaVar = "COUNT", required = false)
+        private int maxActive = DEFAULT_MAX_ACTIVE;
+
+        @Option(name = "-metrics-port", metaVar = "PORT", required = false)
+        private int metricsPort = 0;
+
+        @Option(name = "-population", required = false)
+        private boolean population = false;
+
+        @Option(name = "-replay", required = false)
+        private boolean replay = false;
+
+        @Option(name = "-rewrite", required = false)
+        private boolean rewrite = false;
+
+        @Option(name = "-preserve-source", required = false)
+        private boolean preserveSource = false;
+
+        @Option(name = "-saturate", metaVar = "URL", required = false)
+        private URL saturate;
+
+        @Option(name = "-search", metaVar = "SEARCH", required = false)
+        private Saturation.Search search = Saturation.Search.STEP;
+
+        @Option(name = "-step", metaVar = "FLOWS", required = false)
+        private double step = 0.0;
+
+        @Option(name = "-max-rate", metaVar = "FLOWS", required = false)
+        private double maxRate = 0.0;
+
+        @Option(name = "-step-duration", metaVar = "SECS", required = false)
+        private int stepDuration = 10;
+
+        @Option(name = "-warmup", metaVar = "SECS", required = false)
+        private int warmup = 10;
+
+        @Option(name = "-max-loss", metaVar = "PERCENT", required = false)
+        private double maxLoss = 0.1;
+    }
+
+    public static class CompileCmdLine {
+        @Argument(index = 0, metaVar = "FILE", required = true)
+        private Path file;
+
+        @Argument(index = 1, metaVar = "OUTPUT", required = true)
+        private Path output;
+
+        @Option(name = "-population", required = false)
+        private boolean population = false;
+    }
+
+    public static class SinkCmdLine {
+        @Argument(index = 0, metaVar = "HOST:PORT", handler = Inet4SockAddrOptionHandler.class, required = true)
+        private Inet4SockAddr address;
+
+        @Option(name = "-duration", metaVar = "SECS", required = false)
+        private long duration = 0;
+
+        @Option(name = "-idle", metaVar = "SECS", required = false)
+        private long idle = 0;
+
+        @Option(name = "-report-interval", metaVar = "SECS", required = false)
+        private long reportInterval = Sink.DEFAULT_REPORT_INTERVAL.getSeconds();
+
+        @Option(name = "-receive-buffer", metaVar = "BYTES", required = false)
+        private int receiveBuffer = 0;
+
+        @Option(name = "-metrics-port", metaVar = "PORT", required = false)
+        private int metricsPort = 0;
     }
 
     private final Path file;
@@ -43,6 +234,53 @@ public class Riptide {
     private final List<Inet4SockAddr> targets;
     private final Duration flushInterval;
     private final boolean dryRun;
+    private final Path pcap;
+    private final boolean nio;
+    private final int sendBuffer;
+    private final int batch;
+    private final boolean async;
+    private final int ringSize;
+    private final PacketRing.WaitStrategy waitStrategy;
+    private final PacketRing.FullPolicy ringFull;
+    private final int ioThreads;
+    private final boolean fanout;
+    private final int laneCapacity;
+    private final FanoutSender.Overflow overflow;
+    private final double rate;
+    private final Duration duration;
+    private final double speed;
+    private final Instant start;
+    private final long spinNanos;
+    private final Pacer.CatchUp catchUp;
+    private final Protocol protocol;
+    private final RecordTemplate template;
+    private final int templatePackets;
+    private final Duration templateInterval;
+    private final int samplingRate;
+    private final Duration counterInterval;
+    private final int mtu;
+    private final int maxRecords;
+    private final Duration maxDelay;
+    private final int workers;
+    private final int exporters;
+    private final int maxActive;
+    private final int metricsPort;
+    private final boolean population;
+    private final boolean replay;
+    private final boolean rewrite;
+    private final boolean preserveSource;
+    private final URL saturate;
+    private final Saturation.Search search;
+    private final double step;
+    private final double maxRate;
+    private final Duration stepDuration;
+    private final Duration warmup;
+    private final double maxLoss;
+
+    private final Metrics metrics = new Metrics();
+
+    // The ring between generators and sender threads if running asynchronously
+    private PacketRing ring;
 
     public Riptide(final CmdLine cmdLine) {
         this.file = cmdLine.file;
@@ -50,46 +288,647 @@ public class Riptide {
         this.targets = cmdLine.targets;
         this.flushInterval = Duration.ofSeconds(cmdLine.flushInterval);
         this.dryRun = cmdLine.dryRun;
+        this.pcap = cmdLine.pcap;
+        this.nio = cmdLine.nio;
+        this.sendBuffer = cmdLine.sendBuffer;
+        this.batch = cmdLine.batch;
+        this.async = cmdLine.async;
+        this.ringSize = cmdLine.ringSize;
+        this.waitStrategy = cmdLine.waitStrategy;
+        this.ringFull = cmdLine.ringFull;
+        this.ioThreads = Math.max(1, cmdLine.ioThreads);
+        this.fanout = cmdLine.fanout;
+        this.laneCapacity = cmdLine.laneCapacity;
+        this.overflow = cmdLine.overflow;
+        this.rate = cmdLine.rate;
+        this.duration = Duration.ofSeconds(cmdLine.duration);
+        this.speed = cmdLine.speed;
+        this.start = cmdLine.start;
+        this.spinNanos = cmdLine.spin * 1000L;
+        this.catchUp = cmdLine.catchUp;
+        this.protocol = cmdLine.protocol;
+        this.template = cmdLine.template;
+        this.templatePackets = cmdLine.templatePackets;
+        this.templateInterval = Duration.ofSeconds(cmdLine.templateInterval);
+        this.samplingRate = cmdLine.samplingRate;
+        this.counterInterval = Duration.ofSeconds(cmdLine.counterInterval);
+        this.mtu = cmdLine.mtu;
+
+        // Without a limit, packets are filled up to the MTU
+        final int recordsPerPacket = Aggregator.recordsPerPacket(this.encoder(), cmdLine.mtu);
+        if (recordsPerPacket <= 0) {
+            LOG.error("The MTU of {} bytes is too small to hold a single {} record", cmdLine.mtu, this.protocol);
+            System.exit(1);
+        }
+
+        this.maxRecords = cmdLine.maxRecords > 0
+                ? Math.min(cmdLine.maxRecords, recordsPerPacket)
+                : recordsPerPacket;
+        this.maxDelay = Duration.ofMillis(cmdLine.maxDelay);
+        this.workers = cmdLine.workers > 0 ? cmdLine.workers : Runtime.getRuntime().availableProcessors();
+        this.exporters = Math.max(1, cmdLine.exporters);
+        this.maxActive = cmdLine.maxActive > 0 ? cmdLine.maxActive : Integer.MAX_VALUE;
+        this.metricsPort = cmdLine.metricsPort;
+        this.population = cmdLine.population;
+        this.replay = cmdLine.replay;
+        this.rewrite = cmdLine.rewrite;
+        this.preserveSource = cmdLine.preserveSource;
+        this.saturate = cmdLine.saturate;
+        this.search = cmdLine.search;
+        this.step = cmdLine.step > 0.0 ? cmdLine.step : cmdLine.rate;
+        this.maxRate = cmdLine.maxRate;
+        this.stepDuration = Duration.ofSeconds(Math.max(1, cmdLine.stepDuration));
+        this.warmup = Duration.ofSeconds(Math.max(0, cmdLine.warmup));
+        this.maxLoss = cmdLine.maxLoss / 100.0;
     }
 
-    private void run() {
-        // TODO: Exception-Handling
-        final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-        mapper.registerModule(new JavaTimeModule());
+    /**
+     * Returns the source address to use if the sender controls the IP header.
+     */
+    private Inet4SockAddr source() {
+        return this.source != null
+                ? this.source
+                : new Inet4SockAddr((Inet4Address) InetAddress.getLoopbackAddress(), DEFAULT_SOURCE_PORT);
+    }
+
+    /**
+     * Creates a new encoder for the selected protocol. Encoders may keep state and each sender needs its own.
+     */
+    private Encoder encoder() {
+        switch (this.protocol) {
+            case NETFLOW5:
+                return new NetflowV5Encoder();
+            case NETFLOW9:
+                return new NetflowV9Encoder(MoreObjects.firstNonNull(this.template, NetflowV9Encoder.DEFAULT_TEMPLATE), this.templatePackets, this.templateInterval);
+            case IPFIX:
+                return new IpfixEncoder(MoreObjects.firstNonNull(this.template, IpfixEncoder.DEFAULT_TEMPLATE), this.templatePackets, this.templateInterval);
+            case SFLOW:
+                // The datagrams are encoded by the sFlow sender - this one only limits the size of aggregated flows
+                return new NetflowV5Encoder();
+            default:
+                throw new IllegalStateException("Unknown protocol: " + this.protocol);
+        }
+    }
+
+    /**
+     * @param index the index of the sender distinguishing the senders of multiple workers
+     */
+    private Simulation.Sender sender(final int index) {
+        final Inet4SockAddr source = this.source();
+
+        // Running asynchronously, the generators only publish packets to the ring drained by the sender threads
+        final Simulation.Sender sender = this.ring != null
+                ? new AsyncSender(this.ring, this.encoder(), source)
+                : this.terminal();
+
+        if (this.protocol == Protocol.SFLOW) {
+            return new MeteredSender(new SflowSender(sender, source, index, this.samplingRate, this.counterInterval,
+                    Math.min(Encoder.MAX_PACKET_SIZE, this.mtu - PacketHeaders.IP_HEADER_SIZE - PacketHeaders.UDP_HEADER_SIZE)), this.metrics);
+        }
+
+        return new MeteredSender(sender, this.metrics);
+    }
+
+    /**
+     * Returns the maximum size of a packet to send, which is limited by the MTU unless packets are replayed as captured.
+     */
+    private int packetSize() {
+        return this.replay
+                ? Encoder.MAX_PACKET_SIZE
+                : Math.min(Encoder.MAX_PACKET_SIZE, this.mtu - PacketHeaders.IP_HEADER_SIZE - PacketHeaders.UDP_HEADER_SIZE);
+    }
+
+    /**
+     * Creates the sender finally writing the packets out.
+     */
+    private Simulation.Sender terminal() {
+        // Replays are spoofed from the original exporters unless a fixed source is given
+        final boolean spoof = this.source != null || (this.replay && this.preserveSource);
+        final Inet4SockAddr source = this.source();
+
+        if (dryRun) {
+            return new DummySender();
+        }
 
-        final TcpSession tcpSession;
+        if (this.pcap != null) {
+            try {
+                return new PcapSender(this.pcap, source, this.targets, this.encoder(), PcapSender.DEFAULT_REGION_SIZE, this.metrics);
+            } catch (final IOException e) {
+                LOG.error("Failed to open pcap file: " + this.pcap, e);
+                System.exit(1);
+                return null;
+            }
+        }
 
         try {
-            tcpSession = mapper.readValue(this.file.toFile(), TcpSession.class);
+            if (this.fanout) {
+                // Each packet is encoded once and sent by an independent lane per target
+                return new FanoutSender(source, this.targets, this.encoder(), this.packetSize(),
+                        target -> this.sender(Collections.singletonList(target), spoof, source),
+                        this.laneCapacity, this.overflow, this.metrics);
+            }
+
+            return this.sender(this.targets, spoof, source);
+        } catch (IOException e) {
+            LOG.error("Failed to initialize datagram socket", e);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the sender writing to the network.
+     */
+    private Simulation.Sender sender(final List<Inet4SockAddr> targets,
+                                     final boolean spoof,
+                                     final Inet4SockAddr source) throws IOException {
+        if (spoof) {
+            return new SpoofingSender(source, targets, this.encoder(), this.metrics);
+        }
+
+        if (this.nio) {
+            return new ChannelSender(targets, this.encoder(), this.sendBuffer, this.batch, this.metrics);
+        }
+
+        return new SimpleSender(targets, this.encoder(), this.sendBuffer, this.metrics);
+    }
+
+    /**
+     * Generates flows at the given rate using all sessions as templates.
+     */
+    private void generate(final List<TcpSession> sessions,
+                          final List<Exporter> exporters,
+                          final Simulation.Sender sender,
+                          final double rate,
+                          final Duration duration) {
+        final List<Aggregator> aggregators = Lists.newArrayListWithCapacity(exporters.size());
+        for (final Exporter exporter : exporters) {
+            aggregators.add(new Aggregator(sender, this.maxRecords, exporter));
+        }
+
+        new RateGenerator(aggregators, sessions, this.flushInterval, this.maxDelay).run(rate, duration);
+    }
+
+    /**
+     * Searches the highest rate the receiver behind the saturation URL sustains using all sessions as templates.
+     */
+    private void saturate(final List<TcpSession> templates,
+                          final List<Exporter> exporters) throws InterruptedException {
+        final List<Simulation.Sender> senders = Lists.newArrayListWithCapacity(this.workers);
+        for (int i = 0; i < this.workers; i++) {
+            senders.add(this.sender(i));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(this.workers);
+        try {
+            // Every step is offered by all workers, each generating its share of the rate
+            final Saturation.Load load = (rate, duration) -> {
+                final List<Future<?>> futures = Lists.newArrayListWithCapacity(this.workers);
+                for (final Simulation.Sender sender : senders) {
+                    futures.add(executor.submit(() -> this.generate(templates, exporters, sender, rate / this.workers, duration)));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            };
+
+            final Saturation saturation = new Saturation(load, new SinkProbe(this.saturate), this.metrics,
+                    this.stepDuration, SATURATION_SETTLE, this.maxLoss);
+            saturation.run(this.search, this.rate, this.step, this.maxRate, this.warmup);
+
         } catch (final IOException e) {
+            LOG.error("Failed to query receiver: " + this.saturate, e);
+        } catch (final ExecutionException e) {
+            LOG.error("Worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+
+            for (final Simulation.Sender sender : senders) {
+                sender.close();
+            }
+        }
+    }
+
+    /**
+     * Simulates the sessions pulled from the feed.
+     */
+    private void simulate(final SessionFeed feed,
+                          final Simulation.Sender sender,
+                          final Instant origin,
+                          final int maxActive) {
+        // Aggregators are only created for the exporters used by this worker
+        final Map<Exporter, Aggregator> aggregators = Maps.newLinkedHashMap();
+
+        final Pacer pacer = new Pacer(this.spinNanos, this.catchUp, this.metrics.tickLateness());
+
+        final SimulationClock clock;
+        if (this.speed <= 0.0) {
+            clock = SimulationClock.virtual(origin);
+        } else if (this.start == null && this.speed == 1.0) {
+            clock = SimulationClock.wall(pacer);
+        } else {
+            clock = SimulationClock.scaled(origin, this.speed, pacer);
+        }
+
+        // Every session from the feed is exported through the aggregator of its exporter
+        final Engine engine = new Engine(this.flushInterval, clock);
+        engine.every(this.maxDelay, () -> aggregators.values().forEach(Aggregator::flush));
+        engine.feed(feed, exporter -> aggregators.computeIfAbsent(exporter, e -> new Aggregator(sender, this.maxRecords, e)), maxActive);
+
+        engine.run();
+
+        if (pacer.count() > 0) {
+            LOG.debug("Waited for {} deadlines: mean lateness {} us, max lateness {} us",
+                    pacer.count(),
+                    pacer.meanLateness() / 1000L,
+                    pacer.maxLateness() / 1000L);
+        }
+    }
+
+    /**
+     * Reads the sessions and hands them round-robin to the workers, mapping them round-robin onto the exporters.
+     *
+     * @return the number of sessions read
+     */
+    private long read(final SessionSource reader,
+                      final List<SessionFeed> feeds,
+                      final List<Exporter> exporters,
+                      final Duration offset) throws InterruptedException {
+        try {
+            while (reader.hasNext()) {
+                final long i = reader.count();
+                feeds.get((int) (i % feeds.size())).put(reader.next().shift(offset), exporters.get((int) (i % exporters.size())));
+            }
+        } catch (final CancellationException e) {
+            LOG.error("A worker stopped early - no more sessions are read");
+        } finally {
+            for (final SessionFeed feed : feeds) {
+                feed.finish();
+            }
+        }
+
+        return reader.count();
+    }
+
+    /**
+     * Opens the file as compiled scenario or as session definitions.
+     */
+    private SessionSource reader(final Instant now) throws IOException {
+        return CompiledScenario.detect(this.file)
+                ? CompiledScenario.open(this.file, now)
+                : SessionReader.open(this.file);
+    }
+
+    /**
+     * Reads the file as population definition and creates a generator for it.
+     */
+    private static PopulationGenerator generator(final Path file, final Instant now) throws IOException {
+        final Population population = Population.read(file);
+        final PopulationGenerator generator = population.generator(now);
+        LOG.info("Generating {} sessions with seed {}",
+                population.sessions > 0 ? population.sessions : "unlimited",
+                generator.seed());
+        return generator;
+    }
+
+    private void simulate() {
+        final Instant now = Instant.now();
+        final Instant origin = this.start != null ? this.start : now;
+
+        // Exporters get consecutive source addresses if the sender controls the IP header
+        final List<Exporter> exporters = Exporter.range(this.exporters,
+                this.source != null || this.pcap != null ? this.source() : null,
+                origin);
+
+        if ((this.async ? this.ioThreads : this.workers) > 1 && this.pcap != null) {
+            LOG.error("Writing to a pcap file is not supported with multiple workers");
+            System.exit(1);
+            return;
+        }
+
+        if (this.saturate != null && this.rate <= 0.0) {
+            LOG.error("A saturation search requires a rate to start with");
+            System.exit(1);
+            return;
+        }
+
+        // A population is generated by one independent generator per worker, everything else is read by this thread
+        final List<? extends SessionSource> sources;
+        try {
+            if (this.population) {
+                final PopulationGenerator generator = generator(this.file, now);
+                if (this.rate > 0.0 && !generator.limited()) {
+                    LOG.error("Populations used as templates require a limited number of sessions");
+                    System.exit(1);
+                    return;
+                }
+
+                sources = generator.split(this.workers);
+            } else {
+                sources = Collections.singletonList(this.reader(now));
+            }
+        } catch (final IOException | RuntimeException e) {
             LOG.error("Failed to read file: " + this.file, e);
             System.exit(1);
             return;
         }
 
-        final Simulation.Sender sender;
-        if (dryRun) {
-            sender = new DummySender();
+        // With a rate, every worker generates its share using all sessions as templates. Otherwise, the sessions are
+        // streamed to the workers - each worker owns its sender and all buffers while exporters are shared.
+        final List<TcpSession> templates;
+        if (this.rate > 0.0) {
+            templates = Lists.newArrayList();
+            for (final SessionSource source : sources) {
+                Iterators.addAll(templates, source);
+            }
         } else {
+            templates = null;
+        }
+
+        if (this.saturate != null) {
             try {
-                if (this.source == null) {
-                    sender = new SimpleSender(this.targets);
+                this.saturate(templates, exporters);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                for (final SessionSource source : sources) {
+                    try {
+                        source.close();
+                    } catch (final IOException e) {
+                        LOG.warn("Failed to close file: " + this.file, e);
+                    }
+                }
+            }
+            return;
+        }
+
+        final List<SessionFeed> feeds = Lists.newArrayListWithCapacity(this.workers);
+        for (int i = 0; i < this.workers; i++) {
+            feeds.add(new SessionFeed());
+        }
+
+        LOG.info("Running on {} workers", this.workers);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(this.workers + (sources.size() > 1 ? sources.size() : 0));
+        try {
+            final List<Future<?>> futures = Lists.newArrayListWithCapacity(this.workers);
+            for (int i = 0; i < this.workers; i++) {
+                final SessionFeed feed = feeds.get(i);
+                final Simulation.Sender sender = this.sender(i);
+                futures.add(executor.submit(() -> {
+                    try {
+                        if (templates != null) {
+                            this.generate(templates, exporters, sender, this.rate / this.workers, this.duration);
+                        } else {
+                            this.simulate(feed, sender, origin, Math.max(1, this.maxActive / this.workers));
+                        }
+                    } finally {
+                        // Never leave the reader waiting for a worker which is gone
+                        feed.cancel();
+                        sender.close();
+                    }
+                }));
+            }
+
+            if (templates == null) {
+                // Sessions are anchored at the time they have been read - move them to the start of the clock
+                final Duration offset = Duration.between(now, origin);
+
+                long sessions = 0;
+                if (sources.size() == 1) {
+                    sessions = this.read(sources.get(0), feeds, exporters, offset);
                 } else {
-                    sender = new SpoofingSender(this.source, this.targets);
+                    final List<Future<Long>> producers = Lists.newArrayListWithCapacity(sources.size());
+                    for (int i = 0; i < sources.size(); i++) {
+                        final SessionSource source = sources.get(i);
+                        final List<SessionFeed> feed = Collections.singletonList(feeds.get(i));
+                        producers.add(executor.submit(() -> this.read(source, feed, exporters, offset)));
+                    }
+
+                    // Workers without a share of the sessions have nothing to do
+                    for (final SessionFeed feed : feeds.subList(sources.size(), feeds.size())) {
+                        feed.finish();
+                    }
+
+                    for (final Future<Long> producer : producers) {
+                        try {
+                            sessions += producer.get();
+                        } catch (final ExecutionException e) {
+                            LOG.error("Failed to generate sessions", e.getCause());
+                        }
+                    }
+                }
+
+                LOG.info("Read {} sessions", sessions);
+            }
+
+            for (final Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    LOG.error("Worker failed", e.getCause());
                 }
-            } catch (IOException e) {
-                LOG.error("Failed to initialize datagram socket", e);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final RuntimeException e) {
+            LOG.error("Failed to read file: " + this.file, e);
+        } finally {
+            executor.shutdownNow();
+
+            for (final SessionSource source : sources) {
+                try {
+                    source.close();
+                } catch (final IOException e) {
+                    LOG.warn("Failed to close file: " + this.file, e);
+                }
+            }
+        }
+
+        long records = 0;
+        for (final Exporter exporter : exporters) {
+            records += exporter.sequence();
+        }
+        LOG.info("Exported {} records from {} exporters", records, exporters.size());
+    }
+
+    private void replay(final Simulation.Sender sender) {
+        final Replayer replayer = new Replayer(sender, new Pacer(this.spinNanos, this.catchUp, this.metrics.tickLateness()), Math.max(0.0, this.speed), this.rewrite,
+                this.preserveSource ? null : this.source);
+
+        try (final PcapReader reader = new PcapReader(this.file)) {
+            replayer.run(reader);
+        } catch (final IOException e) {
+            LOG.error("Failed to replay file: " + this.file, e);
+        }
+    }
+
+    private void run() {
+        this.metrics.register();
+
+        MetricsServer server = null;
+        if (this.metricsPort > 0) {
+            try {
+                server = new MetricsServer(this.metrics, this.metricsPort);
+            } catch (final IOException e) {
+                LOG.error("Failed to start metrics server on port " + this.metricsPort, e);
+                System.exit(1);
+                return;
+            }
+        }
+
+        final List<Thread> drains = Lists.newArrayListWithCapacity(this.ioThreads);
+        if (this.async) {
+            if (this.ringSize <= 0 || Integer.bitCount(this.ringSize) != 1) {
+                LOG.error("The ring size must be a power of two: {}", this.ringSize);
+                System.exit(1);
+                return;
+            }
+
+            // All slots are allocated from a single direct buffer
+            if ((long) this.ringSize * this.packetSize() > Integer.MAX_VALUE) {
+                LOG.error("The ring size {} is too large for packets of {} bytes", this.ringSize, this.packetSize());
                 System.exit(1);
                 return;
             }
+
+            // A single worker is the only producer of the ring, unless packets are replayed
+            this.ring = new PacketRing(this.ringSize,
+                    this.packetSize(),
+                    this.workers > 1 && !this.replay ? PacketRing.Producers.MULTI : PacketRing.Producers.SINGLE,
+                    this.waitStrategy,
+                    this.ringFull);
+            this.metrics.ring(this.ring);
+
+            for (int i = 0; i < this.ioThreads; i++) {
+                final Simulation.Sender sender = this.terminal();
+                final Thread drain = new Thread(() -> {
+                    try {
+                        this.ring.drain(sender);
+                    } finally {
+                        sender.close();
+                    }
+                }, "sender-" + i);
+                drain.start();
+                drains.add(drain);
+            }
         }
 
-        new Simulation(tcpSession, this.flushInterval).simulate(sender);
+        try {
+            if (this.replay) {
+                final Simulation.Sender sender = this.sender(0);
+                try {
+                    this.replay(sender);
+                } finally {
+                    sender.close();
+                }
+
+            } else {
+                this.simulate();
+            }
+        } finally {
+            if (this.ring != null) {
+                this.ring.close();
+                for (final Thread drain : drains) {
+                    Uninterruptibles.joinUninterruptibly(drain);
+                }
+            }
+
+            this.metrics.summary();
+
+            if (server != null) {
+                server.close();
+            }
+        }
     }
 
-    public static void main(final String... args) {
-        final CmdLine cmdLine = new CmdLine();
-        final CmdLineParser parser = new CmdLineParser(cmdLine);
+    /**
+     * Compiles the sessions read from the file into a compiled scenario.
+     */
+    private static void compile(final CompileCmdLine cmdLine) {
+        final Instant now = Instant.now();
+        final long started = System.nanoTime();
+
+        final SessionSource source;
+        try {
+            if (cmdLine.population) {
+                final PopulationGenerator generator = generator(cmdLine.file, now);
+                if (!generator.limited()) {
+                    LOG.error("Only populations with a limited number of sessions can be compiled");
+                    System.exit(1);
+                    return;
+                }
+
+                source = generator;
+            } else {
+                source = SessionReader.open(cmdLine.file);
+            }
+        } catch (final IOException | RuntimeException e) {
+            LOG.error("Failed to read file: " + cmdLine.file, e);
+            System.exit(1);
+            return;
+        }
+
+        try (final SessionSource reader = source) {
+            final long sessions = CompiledScenario.compile(reader, cmdLine.output, now);
+            LOG.info("Compiled {} sessions in {} ms", sessions, (System.nanoTime() - started) / 1_000_000L);
+        } catch (final IOException | RuntimeException e) {
+            LOG.error("Failed to compile file: " + cmdLine.file, e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Receives and checks packets until interrupted.
+     */
+    private static void sink(final SinkCmdLine cmdLine) {
+        try (final Sink sink = new Sink(cmdLine.address, cmdLine.receiveBuffer)) {
+            // Report the summary when interrupted
+            final CountDownLatch done = new CountDownLatch(1);
+            final AtomicBoolean interrupted = new AtomicBoolean(false);
+            final Thread hook = new Thread(() -> {
+                interrupted.set(true);
+                sink.stop();
+                Uninterruptibles.awaitUninterruptibly(done);
+            });
+            Runtime.getRuntime().addShutdownHook(hook);
+
+            final MetricsServer server = cmdLine.metricsPort > 0
+                    ? new MetricsServer(sink::prometheus, cmdLine.metricsPort)
+                    : null;
+            try {
+                sink.run(Duration.ofSeconds(cmdLine.duration),
+                        Duration.ofSeconds(cmdLine.idle),
+                        Duration.ofSeconds(Math.max(1, cmdLine.reportInterval)));
+            } finally {
+                if (server != null) {
+                    server.close();
+                }
+                done.countDown();
+            }
+
+            // The hook can only be removed if the run ended on its own - not while shutting down
+            if (!interrupted.get()) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(hook);
+                } catch (final IllegalStateException e) {
+                    // Interrupted right after the run ended
+                }
+            }
+        } catch (final IOException e) {
+            LOG.error("Failed to receive on " + cmdLine.address, e);
+            System.exit(1);
+        }
+    }
+
+    private static void parse(final Object cmdLine, final String... args) {
+        final CmdLineParser parser = new CmdLineParser(cmdLine) {
+            @Override
+            protected boolean isOption(final String arg) {
+                // A single dash reads the sessions from standard input
+                return !SessionReader.STDIN.equals(arg) && super.isOption(arg);
+            }
+        };
         try {
             parser.parseArgument(args);
         } catch (final CmdLineException e) {
@@ -98,6 +937,25 @@ public class Riptide {
             System.err.println();
             System.exit(1);
         }
+    }
+
+    public static void main(final String... args) {
+        if (args.length > 0 && COMPILE.equals(args[0])) {
+            final CompileCmdLine cmdLine = new CompileCmdLine();
+            parse(cmdLine, Arrays.copyOfRange(args, 1, args.length));
+            compile(cmdLine);
+            return;
+        }
+
+        if (args.length > 0 && SINK.equals(args[0])) {
+            final SinkCmdLine cmdLine = new SinkCmdLine();
+            parse(cmdLine, Arrays.copyOfRange(args, 1, args.length));
+            sink(cmdLine);
+            return;
+        }
+
+        final CmdLine cmdLine = new CmdLine();
+        parse(cmdLine, args);
 
         final Riptide app = new Riptide(cmdLine);
         app.run();
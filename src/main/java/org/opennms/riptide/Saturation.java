@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Searches the highest flow rate a receiver sustains without loss.
+ *
+ * After a warm-up, the load is offered in steps of a fixed duration. The records sent and the send errors are taken
+ * from the metrics of the generator while the records received, the sequence gaps and the latency are queried from a
+ * sink before and after each step. A step is sustained if the loss does not exceed the threshold, no sends failed and
+ * the generator achieved the offered rate.
+ *
+ * The rate is either increased by a fixed step until a step is not sustained or searched by doubling it until a step
+ * is not sustained and bisecting the interval between the highest sustained and the lowest failed rate until it is
+ * smaller than the step.
+ */
+public class Saturation {
+    private final static Logger LOG = LoggerFactory.getLogger(Saturation.class);
+
+    // The fraction of the offered rate the generator has to achieve for the result to count
+    private final static double GENERATOR_TOLERANCE = 0.95;
+
+    public enum Search {
+        STEP,
+        BINARY,
+    }
+
+    /**
+     * Offers flows at the given rate for the given time.
+     */
+    @FunctionalInterface
+    public interface Load {
+        void run(final double rate, final Duration duration) throws InterruptedException, ExecutionException;
+    }
+
+    /**
+     * Queries the counters of the receiver.
+     */
+    @FunctionalInterface
+    public interface Feedback {
+        SinkProbe.Snapshot snapshot() throws IOException;
+    }
+
+    /**
+     * The result of a single step.
+     */
+    public static class Step {
+        public final double rate;
+        public final double achieved;
+        public final double received;
+        public final double loss;
+        public final long missing;
+        public final long errors;
+        public final double p50;
+        public final double p99;
+        public final double p999;
+        public final boolean sustained;
+
+        private Step(final double rate, final double achieved, final double received, final double loss,
+                     final long missing, final long errors,
+                     final double p50, final double p99, final double p999,
+                     final boolean sustained) {
+            this.rate = rate;
+            this.achieved = achieved;
+            this.received = received;
+            this.loss = loss;
+            this.missing = missing;
+            this.errors = errors;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.sustained = sustained;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("rate", this.rate)
+                    .add("achieved", this.achieved)
+                    .add("received", this.received)
+                    .add("loss", this.loss)
+                    .add("missing", this.missing)
+                    .add("errors", this.errors)
+                    .add("p50", this.p50)
+                    .add("p99", this.p99)
+                    .add("p999", this.p999)
+                    .add("sustained", this.sustained)
+                    .toString();
+        }
+    }
+
+    private final Load load;
+    private final Feedback feedback;
+    private final Metrics metrics;
+
+    private final Duration stepDuration;
+    private final Duration settle;
+    private final double maxLoss;
+
+    private final List<Step> steps = Lists.newArrayList();
+
+    /**
+     * @param load offers the flows
+     * @param feedback queries the receiver
+     * @param metrics the metrics of the senders used by the load
+     * @param stepDuration the time each rate is offered for
+     * @param settle the time to wait after each step for packets in flight
+     * @param maxLoss the fraction of records which may be lost in a sustained step
+     */
+    public Saturation(final Load load,
+                      final Feedback feedback,
+                      final Metrics metrics,
+                      final Duration stepDuration,
+                      final Duration settle,
+                      final double maxLoss) {
+        this.load = Preconditions.checkNotNull(load);
+        this.feedback = Preconditions.checkNotNull(feedback);
+        this.metrics = Preconditions.checkNotNull(metrics);
+        this.stepDuration = Preconditions.checkNotNull(stepDuration);
+        this.settle = Preconditions.checkNotNull(settle);
+        this.maxLoss = maxLoss;
+
+        Preconditions.checkArgument(!stepDuration.isZero() && !stepDuration.isNegative(), "step duration must be positive");
+        Preconditions.checkArgument(maxLoss >= 0.0 && maxLoss < 1.0, "max loss must be a fraction");
+    }
+
+    /**
+     * Searches the highest sustained rate.
+     *
+     * @param search how to search
+     * @param rate the rate to start with and to warm up at
+     * @param step the increment or, for a binary search, the resolution
+     * @param maxRate the highest rate to try or {@code 0} to try without limit
+     * @param warmup the time to warm up for
+     * @return the highest sustained rate or {@code 0} if no rate has been sustained
+     */
+    public double run(final Search search,
+                      final double rate,
+                      final double step,
+                      final double maxRate,
+                      final Duration warmup) throws IOException, InterruptedException, ExecutionException {
+        Preconditions.checkArgument(rate > 0.0, "rate must be positive");
+        Preconditions.checkArgument(step > 0.0, "step must be positive");
+        Preconditions.checkArgument(maxRate == 0.0 || maxRate >= rate, "max rate must not be lower than rate");
+
+        if (!warmup.isZero()) {
+            LOG.info("Warming up at {} flows/s for {} s", rate, warmup.getSeconds());
+            this.load.run(rate, warmup);
+            Thread.sleep(this.settle.toMillis());
+        }
+
+        final double best = search == Search.BINARY
+                ? this.binary(rate, step, maxRate)
+                : this.linear(rate, step, maxRate);
+
+        if (best > 0.0) {
+            LOG.info("Highest sustained rate: {} flows/s", String.format("%.1f", best));
+        } else {
+            LOG.info("No rate has been sustained");
+        }
+
+        return best;
+    }
+
+    private double linear(final double start, final double step, final double maxRate) throws IOException, InterruptedException, ExecutionException {
+        double best = 0.0;
+        for (double rate = start; maxRate == 0.0 || rate <= maxRate; rate += step) {
+            if (!this.measure(rate).sustained) {
+                break;
+            }
+            best = rate;
+        }
+        return best;
+    }
+
+    private double binary(final double start, final double resolution, final double maxRate) throws IOException, InterruptedException, ExecutionException {
+        double lower = 0.0;
+        double upper;
+
+        // Double the rate until a step fails to find the upper bound
+        double rate = start;
+        while (true) {
+            if (!this.measure(rate).sustained) {
+                upper = rate;
+                break;
+            }
+
+            lower = rate;
+            if (maxRate > 0.0 && rate >= maxRate) {
+                return rate;
+            }
+
+            rate = maxRate > 0.0 ? Math.min(maxRate, rate * 2.0) : rate * 2.0;
+        }
+
+        while (upper - lower > resolution) {
+            final double middle = (lower + upper) / 2.0;
+            if (this.measure(middle).sustained) {
+                lower = middle;
+            } else {
+                upper = middle;
+            }
+        }
+
+        return lower;
+    }
+
+    /**
+     * Offers the given rate for one step and evaluates the feedback.
+     */
+    Step measure(final double rate) throws IOException, InterruptedException, ExecutionException {
+        final SinkProbe.Snapshot before = this.feedback.snapshot();
+        final long sentBefore = this.metrics.records();
+        final long errorsBefore = this.metrics.errors();
+
+        final long start = System.nanoTime();
+        this.load.run(rate, this.stepDuration);
+        final double elapsed = (System.nanoTime() - start) / 1e9;
+
+        // Give packets in flight the chance to arrive
+        Thread.sleep(this.settle.toMillis());
+
+        final SinkProbe.Snapshot after = this.feedback.snapshot();
+        final long sent = this.metrics.records() - sentBefore;
+        final long errors = this.metrics.errors() - errorsBefore;
+        final long received = after.records - before.records;
+        final long missing = after.missing - before.missing;
+
+        final double loss = sent > 0 ? Math.max(0, sent - received) / (double) sent : 0.0;
+        final double achieved = sent / elapsed;
+
+        final boolean generated = achieved >= rate * GENERATOR_TOLERANCE;
+        final boolean sustained = generated && errors == 0 && loss <= this.maxLoss;
+
+        final Step step = new Step(rate, achieved, received / elapsed, loss, missing, errors,
+                after.latency(before, 50.0), after.latency(before, 99.0), after.latency(before, 99.9),
+                sustained);
+        this.steps.add(step);
+
+        LOG.info("Offered {} flows/s: achieved {} flows/s, received {} flows/s, loss {}%, {} missing in sequences, {} send errors, latency p50 <= {} ms, p99 <= {} ms, p99.9 <= {} ms - {}",
+                String.format("%.1f", rate),
+                String.format("%.1f", step.achieved),
+                String.format("%.1f", step.received),
+                String.format("%.3f", loss * 100.0),
+                missing,
+                errors,
+                millis(step.p50),
+                millis(step.p99),
+                millis(step.p999),
+                sustained ? "sustained" : generated ? "not sustained" : "generator can not keep up");
+
+        return step;
+    }
+
+    private static String millis(final double seconds) {
+        return Double.isNaN(seconds) ? "-" : String.format("%.1f", seconds * 1000.0);
+    }
+
+    /**
+     * Returns the results of all steps run so far.
+     */
+    public List<Step> steps() {
+        return Collections.unmodifiableList(this.steps);
+    }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Hands sessions from a reading thread over to the engine of a worker.
+ *
+ * The feed is bounded and blocks the reader as long as the engine is busy, so the number of sessions held in memory
+ * stays limited no matter how many sessions are read in total. There must be a single consumer per feed.
+ *
+ * A consumer which stops early cancels the feed, which fails the reader instead of leaving it blocked forever.
+ */
+public class SessionFeed {
+
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    public static class Item {
+        public final TcpSession session;
+        public final Exporter exporter;
+
+        private Item(final TcpSession session, final Exporter exporter) {
+            this.session = session;
+            this.exporter = exporter;
+        }
+    }
+
+    private final static Item END = new Item(null, null);
+
+    // The time between checks whether the feed has been cancelled while waiting for space
+    private final static long CANCEL_CHECK_MILLIS = 100;
+
+    private final BlockingQueue<Item> queue;
+
+    private boolean finished = false;
+
+    private volatile boolean cancelled = false;
+
+    public SessionFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SessionFeed(final int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Adds a session exported by the given exporter and waits for space if the feed is full.
+     *
+     * @throws CancellationException if the consumer has cancelled the feed
+     */
+    public void put(final TcpSession session, final Exporter exporter) throws InterruptedException {
+        this.offer(new Item(Preconditions.checkNotNull(session), Preconditions.checkNotNull(exporter)));
+    }
+
+    /**
+     * Marks the end of the feed after all sessions added before. Does nothing if the feed has been cancelled.
+     */
+    public void finish() throws InterruptedException {
+        try {
+            this.offer(END);
+        } catch (final CancellationException e) {
+            // Nobody is listening anymore
+        }
+    }
+
+    private void offer(final Item item) throws InterruptedException {
+        while (!this.cancelled) {
+            if (this.queue.offer(item, CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+        throw new CancellationException("Session feed has been cancelled");
+    }
+
+    /**
+     * Stops the feed from the consumer side. Sessions not taken yet are never taken.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Returns the next session or {@code null} if there is none available right now or the feed has finished.
+     */
+    public Item poll() {
+        return this.unwrap(this.queue.poll());
+    }
+
+    /**
+     * Waits for the next session and returns it or {@code null} if the feed has finished.
+     */
+    public Item take() throws InterruptedException {
+        if (this.finished) {
+            return null;
+        }
+
+        return this.unwrap(this.queue.take());
+    }
+
+    /**
+     * Returns whether the end of the feed has been reached by the consumer.
+     */
+    public boolean finished() {
+        return this.finished;
+    }
+
+    private Item unwrap(final Item item) {
+        if (item == END) {
+            this.finished = true;
+            return null;
+        }
+
+        return item;
+    }
+}
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads sessions lazily from a stream of YAML or JSON documents.
+ *
+ * The input is parsed incrementally and only the session currently read is materialized. Each document can be a single
+ * session, a list of sessions or a scenario with a list of sessions. Multiple YAML documents are separated by
+ * {@code ---} while JSON documents are simply concatenated, which covers JSON-lines. The format is detected by the
+ * first non-whitespace character of the input: {@code {} and {@code [} start JSON, everything else is YAML.
+ *
+ * This class is not thread-safe.
+ */
+public class SessionReader implements SessionSource {
+
+    /**
+     * The file name reading from standard input.
+     */
+    public final static String STDIN = "-";
+
+    private final static String SESSIONS = "sessions";
+
+    private final JsonParser parser;
+    private final ObjectReader reader;
+
+    private boolean inList = false;
+    private boolean inScenario = false;
+
+    private TcpSession next;
+
+    private long count = 0;
+
+    public SessionReader(final InputStream input) throws IOException {
+        final BufferedInputStream buffered = new BufferedInputStream(Preconditions.checkNotNull(input));
+
+        final JsonFactory factory = isJson(buffered)
+                ? new JsonFactory()
+                : new YAMLFactory();
+
+        final ObjectMapper mapper = new ObjectMapper(factory);
+        mapper.registerModule(new JavaTimeModule());
+
+        this.parser = factory.createParser(buffered);
+        this.reader = mapper.readerFor(TcpSession.class);
+    }
+
+    /**
+     * Opens the given file or standard input if the file is {@link #STDIN}.
+     */
+    public static SessionReader open(final Path path) throws IOException {
+        if (STDIN.equals(path.toString())) {
+            return new SessionReader(System.in);
+        }
+
+        return new SessionReader(Files.newInputStream(path));
+    }
+
+    private static boolean isJson(final BufferedInputStream input) throws IOException {
+        input.mark(1024);
+        try {
+            int c = input.read();
+            while (c != -1 && Character.isWhitespace(c)) {
+                c = input.read();
+            }
+            return c == '{' || c == '[';
+        } finally {
+            input.reset();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.next == null) {
+            try {
+                this.next = this.advance();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return this.next != null;
+    }
+
+    @Override
+    public TcpSession next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final TcpSession session = this.next;
+        this.next = null;
+        this.count++;
+        return session;
+    }
+
+    @Override
+    public long count() {
+        return this.count;
+    }
+
+    private TcpSession advance() throws IOException {
+        while (true) {
+            if (this.inList) {
+                final JsonToken token = this.parser.nextToken();
+                if (token == JsonToken.START_OBJECT) {
+                    return this.reader.readValue(this.parser);
+                }
+
+                if (token == JsonToken.END_ARRAY) {
+                    this.inList = false;
+                    if (this.inScenario) {
+                        this.inScenario = false;
+                        this.skipObject();
+                    }
+                    continue;
+                }
+
+                throw new JsonMappingException(this.parser, "Expected session but got " + token);
+            }
+
+            final JsonToken token = this.parser.nextToken();
+            if (token == null) {
+                return null;
+            }
+
+            if (token == JsonToken.START_ARRAY) {
+                this.inList = true;
+                continue;
+            }
+
+            if (token == JsonToken.START_OBJECT) {
+                if (this.parser.nextToken() == JsonToken.FIELD_NAME && SESSIONS.equals(this.parser.currentName())) {
+                    if (this.parser.nextToken() != JsonToken.START_ARRAY) {
+                        throw new JsonMappingException(this.parser, "Expected list of sessions");
+                    }
+
+                    this.inList = true;
+                    this.inScenario = true;
+                    continue;
+                }
+
+                // The session is deserialized starting at its first field
+                return this.reader.readValue(this.parser);
+            }
+
+            throw new JsonMappingException(this.parser, "Expected session or list of sessions but got " + token);
+        }
+    }
+
+    /**
+     * Skips the remaining fields of the current object.
+     */
+    private void skipObject() throws IOException {
+        JsonToken token;
+        while ((token = this.parser.nextToken()) == JsonToken.FIELD_NAME) {
+            this.parser.nextToken();
+            this.parser.skipChildren();
+        }
+
+        if (token != JsonToken.END_OBJECT) {
+            throw new JsonMappingException(this.parser, "Expected end of scenario but got " + token);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.parser.close();
+    }
+}
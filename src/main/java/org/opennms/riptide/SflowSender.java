@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Exports the flows as sFlow v5 datagrams through another sender.
+ *
+ * Unlike Netflow, sFlow does not export flows but samples packets. For each record, one out of sampling rate packets
+ * becomes a flow sample, randomly rounded so the expected number of samples matches the packets of the record. Each
+ * sample carries a synthetic Ethernet, IPv4 and TCP or UDP header built from the record with the average packet size
+ * of the record as frame length. Flows are sampled on their input interface.
+ *
+ * The interface counters are accumulated from all records and exported as generic interface counter samples for every
+ * interface seen whenever the counter interval has passed.
+ *
+ * Each exporter is a sub-agent with its own datagram sequence. Samples are collected in a pending datagram per
+ * sub-agent which is sent out as soon as it is full or the sender is flushed. As the sequences must be gap-free but
+ * this sender is owned by a single thread, the sub-agent id combines the index of the sender with the engine type and
+ * id of the exporter. The datagrams are handed to the delegate as encoded packets.
+ */
+public class SflowSender implements Simulation.Sender {
+
+    public final static int VERSION = 5;
+
+    public final static int DEFAULT_SAMPLING_RATE = 1000;
+    public final static Duration DEFAULT_COUNTER_INTERVAL = Duration.ofSeconds(20);
+
+    public final static long INTERFACE_SPEED = 1_000_000_000L;
+
+    public final static int HEADER_SIZE = 28;
+
+    private final static int FLOW_SAMPLE = 1;
+    private final static int COUNTER_SAMPLE = 2;
+    private final static int RAW_PACKET_HEADER = 1;
+    private final static int GENERIC_INTERFACE_COUNTERS = 1;
+
+    private final static int FCS_SIZE = 4;
+
+    private final static int MAX_SAMPLED_HEADER_SIZE = PacketHeaders.ETHERNET_HEADER_SIZE + PacketHeaders.IP_HEADER_SIZE + PacketHeaders.TCP_HEADER_SIZE + 2;
+    private final static int MAX_FLOW_SAMPLE_SIZE = 8 + 32 + 8 + 16 + MAX_SAMPLED_HEADER_SIZE;
+    private final static int GENERIC_INTERFACE_COUNTERS_SIZE = 88;
+    private final static int COUNTER_SAMPLE_SIZE = 8 + 12 + 8 + GENERIC_INTERFACE_COUNTERS_SIZE;
+
+    // Interfaces up to the range of Netflow v5 are looked up by ifIndex directly
+    private final static int MAX_INDEXED_INTERFACE = 0xFFFF;
+
+    private final Simulation.Sender delegate;
+
+    private final Inet4SockAddr agent;
+    private final int index;
+
+    private final int samplingRate;
+    private final long counterIntervalMillis;
+    private final int maxDatagramSize;
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    private final LongMap<SubAgent> subAgents = new LongMap<>();
+
+    // Most flows are sent by the same exporter as the one before
+    private int lastEngine = -1;
+    private SubAgent lastSubAgent;
+
+    public SflowSender(final Simulation.Sender delegate, final Inet4SockAddr agent, final int index) {
+        this(delegate, agent, index, DEFAULT_SAMPLING_RATE, DEFAULT_COUNTER_INTERVAL, 1500 - PacketHeaders.IP_HEADER_SIZE - PacketHeaders.UDP_HEADER_SIZE);
+    }
+
+    /**
+     * @param agent the agent address of exporters without own source address
+     * @param index the index of this sender used to distinguish the sub-agents of multiple senders
+     * @param samplingRate the number of packets represented by each flow sample
+     * @param counterInterval the interval between counter samples of each interface
+     * @param maxDatagramSize the maximum size of a datagram
+     */
+    public SflowSender(final Simulation.Sender delegate,
+                       final Inet4SockAddr agent,
+                       final int index,
+                       final int samplingRate,
+                       final Duration counterInterval,
+                       final int maxDatagramSize) {
+        Preconditions.checkArgument(index >= 0 && index <= 0x7FFF, "Index must be between 0 and 32767");
+        Preconditions.checkArgument(samplingRate > 0, "Sampling rate must be positive");
+        Preconditions.checkArgument(!counterInterval.isNegative() && !counterInterval.isZero(), "Counter interval must be positive");
+        Preconditions.checkArgument(maxDatagramSize >= HEADER_SIZE + Math.max(MAX_FLOW_SAMPLE_SIZE, COUNTER_SAMPLE_SIZE) && maxDatagramSize <= Encoder.MAX_PACKET_SIZE,
+                "Datagram size must be between %s and %s", HEADER_SIZE + Math.max(MAX_FLOW_SAMPLE_SIZE, COUNTER_SAMPLE_SIZE), Encoder.MAX_PACKET_SIZE);
+
+        this.delegate = Preconditions.checkNotNull(delegate);
+        this.agent = Preconditions.checkNotNull(agent);
+        this.index = index;
+        this.samplingRate = samplingRate;
+        this.counterIntervalMillis = counterInterval.toMillis();
+        this.maxDatagramSize = maxDatagramSize;
+    }
+
+    @Override
+    public void send(final Flow flow) {
+        this.send(flow, null);
+    }
+
+    @Override
+    public void send(final Flow flow, final Inet4SockAddr source) {
+        final SubAgent subAgent = this.subAgent(flow, source);
+
+        subAgent.uptime = flow.header.uptimeMillis;
+
+        final FlowRecordBatch records = flow.records;
+        for (int i = 0; i < records.size(); i++) {
+            final long packets = records.packets[i];
+            final long octets = records.octets[i];
+
+            final Interface input = subAgent.iface(records.snmpInputIface[i]);
+            input.inPackets += packets;
+            input.inOctets += octets;
+
+            final Interface output = subAgent.iface(records.snmpOutputIface[i]);
+            output.outPackets += packets;
+            output.outOctets += octets;
+
+            input.samplePool += packets;
+
+            // Round randomly to keep the expected number of samples
+            long samples = packets / this.samplingRate;
+            if (this.random.nextInt(this.samplingRate) < packets % this.samplingRate) {
+                samples++;
+            }
+
+            for (long s = 0; s < samples; s++) {
+                if (subAgent.datagram.remaining() < MAX_FLOW_SAMPLE_SIZE) {
+                    this.emit(subAgent);
+                }
+                this.flowSample(subAgent.datagram, input, output, records, i);
+                subAgent.samples++;
+            }
+        }
+
+        final long now = flow.timeMillis();
+        if (now - subAgent.lastCounters >= this.counterIntervalMillis) {
+            for (int i = 0; i < subAgent.interfaces.size(); i++) {
+                if (subAgent.datagram.remaining() < COUNTER_SAMPLE_SIZE) {
+                    this.emit(subAgent);
+                }
+                this.counterSample(subAgent.datagram, subAgent.interfaces.get(i));
+                subAgent.samples++;
+            }
+            subAgent.lastCounters = now;
+        }
+    }
+
+    private SubAgent subAgent(final Flow flow, final Inet4SockAddr source) {
+        final int engine = flow.header.engineType << 8 | flow.header.engineId;
+        if (engine == this.lastEngine) {
+            return this.lastSubAgent;
+        }
+
+        SubAgent subAgent = this.subAgents.get(engine);
+        if (subAgent == null) {
+            subAgent = new SubAgent(source != null ? source : this.agent, this.index << 16 | engine, flow.timeMillis());
+            this.subAgents.put(engine, subAgent);
+        }
+
+        this.lastEngine = engine;
+        this.lastSubAgent = subAgent;
+        return subAgent;
+    }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        this.delegate.send(packet, source);
+    }
+
+    @Override
+    public void flush() {
+        for (final SubAgent subAgent : this.subAgents.values()) {
+            this.emit(subAgent);
+        }
+
+        this.delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        this.flush();
+        this.delegate.close();
+    }
+
+    private void flowSample(final ByteBuffer buffer,
+                            final Interface input,
+                            final Interface output,
+                            final FlowRecordBatch records,
+                            final int i) {
+        final int protocol = records.protocol[i] & 0xFF;
+        final int transportHeaderSize = protocol == PacketHeaders.PROTOCOL_TCP ? PacketHeaders.TCP_HEADER_SIZE
+                : protocol == PacketHeaders.PROTOCOL_UDP ? PacketHeaders.UDP_HEADER_SIZE
+                : 0;
+        final int headerSize = PacketHeaders.ETHERNET_HEADER_SIZE + PacketHeaders.IP_HEADER_SIZE + transportHeaderSize;
+        final int paddedHeaderSize = (headerSize + 3) & ~3;
+
+        // The average size of the packets in the record
+        final int ipLength = (int) Math.min(0xFFFF, Math.max(PacketHeaders.IP_HEADER_SIZE + transportHeaderSize,
+                records.packets[i] > 0 ? records.octets[i] / records.packets[i] : 0));
+
+        buffer.putInt(FLOW_SAMPLE);
+        buffer.putInt(32 + 8 + 16 + paddedHeaderSize);
+        buffer.putInt(input.flowSequence++);
+        buffer.putInt(input.index); // Source ID with type 0 = ifIndex
+        buffer.putInt(this.samplingRate);
+        buffer.putInt((int) input.samplePool);
+        buffer.putInt(0); // Drops
+        buffer.putInt(input.index);
+        buffer.putInt(output.index);
+        buffer.putInt(1); // Number of flow records
+
+        buffer.putInt(RAW_PACKET_HEADER);
+        buffer.putInt(16 + paddedHeaderSize);
+        buffer.putInt(1); // Header protocol = Ethernet
+        buffer.putInt(PacketHeaders.ETHERNET_HEADER_SIZE + ipLength + FCS_SIZE); // Frame length
+        buffer.putInt(FCS_SIZE); // Stripped
+        buffer.putInt(headerSize);
+
+        PacketHeaders.ethernet(buffer);
+
+        final int ip = buffer.position();
+        PacketHeaders.ipv4(buffer, records.tos[i] & 0xFF, ipLength, protocol, records.srcAddr[i], records.dstAddr[i]);
+        PacketHeaders.ipv4Checksum(buffer, ip);
+
+        if (protocol == PacketHeaders.PROTOCOL_TCP) {
+            PacketHeaders.tcp(buffer, records.srcPort[i], records.dstPort[i], this.random.nextInt(), records.tcpFlags[i]);
+        } else if (protocol == PacketHeaders.PROTOCOL_UDP) {
+            PacketHeaders.udp(buffer, records.srcPort[i], records.dstPort[i], ipLength - PacketHeaders.IP_HEADER_SIZE - PacketHeaders.UDP_HEADER_SIZE);
+        }
+
+        for (int p = headerSize; p < paddedHeaderSize; p++) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private void counterSample(final ByteBuffer buffer, final Interface iface) {
+        buffer.putInt(COUNTER_SAMPLE);
+        buffer.putInt(12 + 8 + GENERIC_INTERFACE_COUNTERS_SIZE);
+        buffer.putInt(iface.counterSequence++);
+        buffer.putInt(iface.index); // Source ID with type 0 = ifIndex
+        buffer.putInt(1); // Number of counter records
+
+        buffer.putInt(GENERIC_INTERFACE_COUNTERS);
+        buffer.putInt(GENERIC_INTERFACE_COUNTERS_SIZE);
+        buffer.putInt(iface.index);
+        buffer.putInt(6); // Type = ethernetCsmacd
+        buffer.putLong(INTERFACE_SPEED);
+        buffer.putInt(1); // Direction = full-duplex
+        buffer.putInt(3); // Status = admin and oper up
+        buffer.putLong(iface.inOctets);
+        buffer.putInt((int) iface.inPackets); // Unicast packets
+        buffer.putInt(0); // Multicast packets
+        buffer.putInt(0); // Broadcast packets
+        buffer.putInt(0); // Discards
+        buffer.putInt(0); // Errors
+        buffer.putInt(0); // Unknown protocols
+        buffer.putLong(iface.outOctets);
+        buffer.putInt((int) iface.outPackets); // Unicast packets
+        buffer.putInt(0); // Multicast packets
+        buffer.putInt(0); // Broadcast packets
+        buffer.putInt(0); // Discards
+        buffer.putInt(0); // Errors
+        buffer.putInt(0); // Promiscuous mode
+    }
+
+    private void emit(final SubAgent subAgent) {
+        if (subAgent.samples == 0) {
+            return;
+        }
+
+        final ByteBuffer datagram = subAgent.datagram;
+        datagram.putInt(0, VERSION);
+        datagram.putInt(4, 1); // Address type = IPv4
+        datagram.putInt(8, subAgent.source.addrBits);
+        datagram.putInt(12, subAgent.id);
+        datagram.putInt(16, subAgent.sequence++);
+        datagram.putInt(20, (int) subAgent.uptime);
+        datagram.putInt(24, subAgent.samples);
+
+        datagram.flip();
+        this.delegate.send(datagram, subAgent.source);
+
+        datagram.clear().position(HEADER_SIZE);
+        subAgent.samples = 0;
+    }
+
+    private class SubAgent {
+        private final Inet4SockAddr source;
+        private final int id;
+
+        private final ByteBuffer datagram = ByteBuffer.allocate(maxDatagramSize);
+
+        // All interfaces in the order they were seen and the common ones indexed by ifIndex
+        private final List<Interface> interfaces = new ArrayList<>();
+        private Interface[] indexed = new Interface[0];
+        private final LongMap<Interface> others = new LongMap<>();
+
+        private int sequence;
+        private int samples;
+
+        private long uptime;
+        private long lastCounters;
+
+        private SubAgent(final Inet4SockAddr source, final int id, final long now) {
+            this.source = source;
+            this.id = id;
+            this.lastCounters = now;
+
+            this.datagram.position(HEADER_SIZE);
+        }
+
+        private Interface iface(final int index) {
+            if (index >= 0 && index < this.indexed.length && this.indexed[index] != null) {
+                return this.indexed[index];
+            }
+
+            if (index < 0 || index > MAX_INDEXED_INTERFACE) {
+                Interface iface = this.others.get(index);
+                if (iface == null) {
+                    iface = this.add(index);
+                    this.others.put(index, iface);
+                }
+                return iface;
+            }
+
+            if (index >= this.indexed.length) {
+                this.indexed = Arrays.copyOf(this.indexed, Math.min(MAX_INDEXED_INTERFACE + 1, Math.max(index + 1, 2 * this.indexed.length)));
+            }
+            return this.indexed[index] = this.add(index);
+        }
+
+        private Interface add(final int index) {
+            final Interface iface = new Interface(index);
+            this.interfaces.add(iface);
+            return iface;
+        }
+    }
+
+    private static class Interface {
+        private final int index;
+
+        private int flowSequence;
+        private int counterSequence;
+
+        private long samplePool;
+
+        private long inOctets;
+        private long inPackets;
+        private long outOctets;
+        private long outPackets;
+
+        private Interface(final int index) {
+            this.index = index;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -45,25 +46,94 @@ public class SimpleSender implements Simulation.Sender {
     private final List<Inet4SockAddr> targets;
     private final DatagramSocket datagramSocket;
 
+    private final Encoder encoder;
+
+    private final ByteBuffer buffer;
+    private final DatagramPacket[] packets;
+
+    private final Metrics.Target[] metrics;
+
     public SimpleSender(final List<Inet4SockAddr> targets) throws SocketException {
+        this(targets, new NetflowV5Encoder());
+    }
+
+    public SimpleSender(final List<Inet4SockAddr> targets, final Encoder encoder) throws SocketException {
+        this(targets, encoder, 0);
+    }
+
+    /**
+     * @param sendBufferSize the size of the socket send buffer or {@code 0} to use the system default
+     */
+    public SimpleSender(final List<Inet4SockAddr> targets, final Encoder encoder, final int sendBufferSize) throws SocketException {
+        this(targets, encoder, sendBufferSize, new Metrics());
+    }
+
+    /**
+     * @param sendBufferSize the size of the socket send buffer or {@code 0} to use the system default
+     * @param metrics the metrics to count the sent packets per target in
+     */
+    public SimpleSender(final List<Inet4SockAddr> targets,
+                        final Encoder encoder,
+                        final int sendBufferSize,
+                        final Metrics metrics) throws SocketException {
         this.targets = Preconditions.checkNotNull(targets);
+        this.encoder = Preconditions.checkNotNull(encoder);
 
         this.datagramSocket = new DatagramSocket();
+        if (sendBufferSize > 0) {
+            this.datagramSocket.setSendBufferSize(sendBufferSize);
+        }
+
+        // The packets share the buffer and are re-used for each flow
+        this.buffer = ByteBuffer.allocate(Encoder.MAX_PACKET_SIZE);
+        this.packets = new DatagramPacket[this.targets.size()];
+        for (int i = 0; i < this.packets.length; i++) {
+            this.packets[i] = new DatagramPacket(this.buffer.array(), 0, this.targets.get(i).toSocketAddress());
+        }
+
+        this.metrics = new Metrics.Target[this.targets.size()];
+        for (int i = 0; i < this.metrics.length; i++) {
+            this.metrics[i] = metrics.target(this.targets.get(i));
+        }
     }
 
     @Override
     public void send(final Flow flow) {
-        final byte[] buffer = flow.write().array();
+        this.buffer.clear();
+        this.encoder.encode(flow, this.buffer);
+
+        this.transmit(this.buffer.position());
+    }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        this.buffer.clear();
+        this.buffer.put(packet);
+
+        this.transmit(this.buffer.position());
+    }
+
+    private void transmit(final int length) {
+        for (int i = 0; i < this.packets.length; i++) {
+            final DatagramPacket packet = this.packets[i];
+            packet.setLength(length);
 
-        try {
-            for (final Inet4SockAddr addr : this.targets) {
-                final DatagramPacket packet = new DatagramPacket(buffer, buffer.length, addr.toSocketAddress());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Sending packet to {} ({} bytes)", this.targets.get(i), length);
+            }
 
-                LOG.debug("Sending packet to {} ({} bytes)", addr, packet.getLength());
+            try {
                 datagramSocket.send(packet);
+                this.metrics[i].sent(length);
+            } catch (final IOException e) {
+                this.metrics[i].failed();
+                LOG.error("Failed to send packet", e);
             }
-        } catch (final IOException e) {
-            LOG.error("Failed to send packet", e);
         }
     }
+
+    @Override
+    public void close() {
+        this.datagramSocket.close();
+    }
 }
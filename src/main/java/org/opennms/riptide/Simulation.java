@@ -28,134 +28,253 @@
 
 package org.opennms.riptide;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Iterator;
 import java.util.Objects;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.net.InetAddresses;
 
 public class Simulation {
 
     interface Sender {
+        /**
+         * Sends the flow.
+         *
+         * The flow and its records are only valid during the call and may be re-used by the caller afterwards.
+         */
         void send(Flow flow);
+
+        /**
+         * Sends the flow from the given source.
+         *
+         * Senders which do not control the IP header ignore the source.
+         */
+        default void send(final Flow flow, final Inet4SockAddr source) {
+            this.send(flow);
+        }
+
+        /**
+         * Sends an already encoded packet.
+         *
+         * The packet is read from its position up to its limit and is only valid during the call. Senders which
+         * control the IP header send the packet from the given source address.
+         */
+        void send(ByteBuffer packet, Inet4SockAddr source);
+
+        /**
+         * Sends out everything which may have been held back by the sender.
+         */
+        default void flush() {
+        }
+
+        /**
+         * Sends out everything left and releases all resources held by the sender.
+         */
+        default void close() {
+            this.flush();
+        }
     }
 
     // TODO fooker: Is this feasible?
-    private final Instant bootTime = Instant.ofEpochSecond((long) ((System.currentTimeMillis() / 1000L) * Math.random()));
+    public static Instant randomBootTime() {
+        return randomBootTime(Instant.now());
+    }
+
+    public static Instant randomBootTime(final Instant now) {
+        return Instant.ofEpochSecond((long) (now.getEpochSecond() * Math.random()));
+    }
+
+    public final static short ENGINE_TYPE = 0x20;
+    public final static short ENGINE_ID = 0x20;
+
+    /**
+     * The number of records emitted per tick - one for each direction.
+     */
+    public final static int RECORDS_PER_TICK = 2;
+
+    private final Instant bootTime;
+    private final long bootMillis;
 
     private final TcpSession tcpSession;
     private final Duration flushInterval;
 
+    private final float sendPacketRate;
+    private final float sendOctetsRate;
+    private final float recvPacketRate;
+    private final float recvOctetsRate;
+
+    private final int clientAddress;
+    private final int clientGateway;
+    private final int serverAddress;
+    private final int serverGateway;
+
     public Simulation(final TcpSession tcpSession, final Duration flushInterval) {
+        this(tcpSession, flushInterval, randomBootTime());
+    }
+
+    public Simulation(final TcpSession tcpSession, final Duration flushInterval, final Instant bootTime) {
         this.tcpSession = Objects.requireNonNull(tcpSession);
         this.flushInterval = Objects.requireNonNull(flushInterval);
+        this.bootTime = Objects.requireNonNull(bootTime);
+        this.bootMillis = bootTime.toEpochMilli();
+
+        this.sendPacketRate = this.tcpSession.sendPackets / (float) this.tcpSession.timespan.duration().toMillis();
+        this.sendOctetsRate = this.tcpSession.sendSize / (float) this.tcpSession.timespan.duration().toMillis();
+        this.recvPacketRate = this.tcpSession.recvPackets / (float) this.tcpSession.timespan.duration().toMillis();
+        this.recvOctetsRate = this.tcpSession.recvSize / (float) this.tcpSession.timespan.duration().toMillis();
+
+        this.clientAddress = InetAddresses.coerceToInteger(this.tcpSession.client.address);
+        this.clientGateway = InetAddresses.coerceToInteger(this.tcpSession.client.gateway);
+        this.serverAddress = InetAddresses.coerceToInteger(this.tcpSession.server.address);
+        this.serverGateway = InetAddresses.coerceToInteger(this.tcpSession.server.gateway);
     }
 
-    public void simulate(final Sender sender) {
-        final float sendPacketRate = this.tcpSession.sendPackets / (float) this.tcpSession.timespan.duration().toMillis();
-        final float sendOctetsRate = this.tcpSession.sendSize / (float) this.tcpSession.timespan.duration().toMillis();
-        final float recvPacketRate = this.tcpSession.recvPackets / (float) this.tcpSession.timespan.duration().toMillis();
-        final float recvOctetsRate = this.tcpSession.recvSize / (float) this.tcpSession.timespan.duration().toMillis();
+    public TcpSession session() {
+        return this.tcpSession;
+    }
 
-        final Sleeper sleeper = new Sleeper(this.tcpSession.timespan.ticker(this.flushInterval));
+    public Timespan.Ticker ticker() {
+        return this.tcpSession.timespan.ticker(this.flushInterval);
+    }
+
+    public void simulate(final Sender sender) {
+        final Sleeper sleeper = new Sleeper(this.ticker());
         for (final Positional.Positioned<Timespan> tick : Positional.from(sleeper)) {
-            short sendFlags = 0x18;
-            short recvFlags = 0x18;
-            if (tick.first) {
-                sendFlags |= 0xDA;
-                recvFlags |= 0x5A;
-            }
-            if (tick.last) {
-                sendFlags |= 0x19;
-                recvFlags |= 0x99;
-            }
+            sender.send(this.flow(tick).build());
+        }
+    }
+
+    public Flow.Builder flow(final Positional.Positioned<Timespan> tick) {
+        final FlowRecordBatch records = new FlowRecordBatch(RECORDS_PER_TICK);
+        this.records(tick, records);
+
+        return Flow.builder()
+                .withUptime(Duration.between(this.bootTime, tick.element.e))
+                .withTime(tick.element.e)
+                .withEngineType(ENGINE_TYPE)
+                .withEngineId(ENGINE_ID)
+                .withSamplingMode(Flow.SamplingMode.Unassigned)
+                .withSamplingInterval(0)
+                .withRecords(records);
+    }
 
-            final FlowRecord.Builder sendRecord = FlowRecord.builder()
-                    .withSrcAddr(this.tcpSession.client.address)
-                    .withDstAddr(this.tcpSession.server.address)
-                    .withNextHop(this.tcpSession.client.gateway)
-                    .withPackets((long) (sendPacketRate * tick.element.duration().toMillis()))
-                    .withOctets((long) (sendOctetsRate * tick.element.duration().toMillis()))
-                    .withFirstUptime(Duration.between(this.bootTime, tick.element.s))
-                    .withLastUptime(Duration.between(this.bootTime, tick.element.e))
-                    .withSnmpInputIface(this.tcpSession.client.snmpInterface)
-                    .withSnmpOutputIface(this.tcpSession.server.snmpInterface)
-                    .withSrcPort(this.tcpSession.client.port)
-                    .withDstPort(this.tcpSession.server.port)
-                    .withTcpFlags(sendFlags)
-                    .withProtocol((short) 0x06) // TCP
-                    .withSrcAS(this.tcpSession.client.as)
-                    .withDstAS(this.tcpSession.server.as)
-                    .withTos((short) 0x00)
-                    .withSrcMask(this.tcpSession.client.mask)
-                    .withDstMask(this.tcpSession.server.mask);
-
-            final FlowRecord.Builder recvRecord = FlowRecord.builder()
-                    .withSrcAddr(this.tcpSession.server.address)
-                    .withDstAddr(this.tcpSession.client.address)
-                    .withNextHop(this.tcpSession.server.gateway)
-                    .withPackets((long) (recvPacketRate * tick.element.duration().toMillis()))
-                    .withOctets((long) (recvOctetsRate * tick.element.duration().toMillis()))
-                    .withFirstUptime(Duration.between(this.bootTime, tick.element.s))
-                    .withLastUptime(Duration.between(this.bootTime, tick.element.e))
-                    .withSnmpInputIface(this.tcpSession.server.snmpInterface)
-                    .withSnmpOutputIface(this.tcpSession.client.snmpInterface)
-                    .withSrcPort(this.tcpSession.server.port)
-                    .withDstPort(this.tcpSession.client.port)
-                    .withTcpFlags(recvFlags)
-                    .withProtocol((short) 0x06) // TCP
-                    .withSrcAS(this.tcpSession.server.as)
-                    .withDstAS(this.tcpSession.client.as)
-                    .withTos((short) 0x00)
-                    .withSrcMask(this.tcpSession.server.mask)
-                    .withDstMask(this.tcpSession.client.mask);
-
-            final Flow.Builder flow = Flow.builder()
-                    .withUptime(Duration.between(this.bootTime, tick.element.e))
-                    .withTime(tick.element.e)
-                    .withEngineType((short) 0x20)
-                    .withEngineId((short) 0x20)
-                    .withSamplingMode(Flow.SamplingMode.Unassigned)
-                    .withSamplingInterval(0)
-                    .withRecord(sendRecord)
-                    .withRecord(recvRecord);
-
-            sender.send(flow.build());
+    /**
+     * Appends the records of both directions for the given tick to the batch.
+     */
+    public void records(final Positional.Positioned<Timespan> tick, final FlowRecordBatch records) {
+        this.records(tick.element.s.toEpochMilli(), tick.element.e.toEpochMilli(), tick.first, tick.last, records);
+    }
+
+    /**
+     * Appends the records of both directions for the tick between the given epoch milliseconds to the batch.
+     */
+    public void records(final long s, final long e,
+                        final boolean first, final boolean last,
+                        final FlowRecordBatch records) {
+        byte sendFlags = 0x18;
+        byte recvFlags = 0x18;
+        if (first) {
+            sendFlags |= 0xDA;
+            recvFlags |= 0x5A;
         }
+        if (last) {
+            sendFlags |= 0x19;
+            recvFlags |= 0x99;
+        }
+
+        final long duration = e - s;
+
+        final int send = records.append();
+        records.srcAddr[send] = this.clientAddress;
+        records.dstAddr[send] = this.serverAddress;
+        records.nextHop[send] = this.clientGateway;
+        records.packets[send] = (long) (this.sendPacketRate * duration);
+        records.octets[send] = (long) (this.sendOctetsRate * duration);
+        records.firstUptime[send] = s - this.bootMillis;
+        records.lastUptime[send] = e - this.bootMillis;
+        records.snmpInputIface[send] = this.tcpSession.client.snmpInterface;
+        records.snmpOutputIface[send] = this.tcpSession.server.snmpInterface;
+        records.srcPort[send] = this.tcpSession.client.port;
+        records.dstPort[send] = this.tcpSession.server.port;
+        records.tcpFlags[send] = sendFlags;
+        records.protocol[send] = 0x06; // TCP
+        records.srcAS[send] = this.tcpSession.client.as;
+        records.dstAS[send] = this.tcpSession.server.as;
+        records.tos[send] = 0x00;
+        records.srcMask[send] = (byte) this.tcpSession.client.mask;
+        records.dstMask[send] = (byte) this.tcpSession.server.mask;
+        records.egress[send] = false;
+
+        final int recv = records.append();
+        records.srcAddr[recv] = this.serverAddress;
+        records.dstAddr[recv] = this.clientAddress;
+        records.nextHop[recv] = this.serverGateway;
+        records.packets[recv] = (long) (this.recvPacketRate * duration);
+        records.octets[recv] = (long) (this.recvOctetsRate * duration);
+        records.firstUptime[recv] = s - this.bootMillis;
+        records.lastUptime[recv] = e - this.bootMillis;
+        records.snmpInputIface[recv] = this.tcpSession.server.snmpInterface;
+        records.snmpOutputIface[recv] = this.tcpSession.client.snmpInterface;
+        records.srcPort[recv] = this.tcpSession.server.port;
+        records.dstPort[recv] = this.tcpSession.client.port;
+        records.tcpFlags[recv] = recvFlags;
+        records.protocol[recv] = 0x06; // TCP
+        records.srcAS[recv] = this.tcpSession.server.as;
+        records.dstAS[recv] = this.tcpSession.client.as;
+        records.tos[recv] = 0x00;
+        records.srcMask[recv] = (byte) this.tcpSession.server.mask;
+        records.dstMask[recv] = (byte) this.tcpSession.client.mask;
+        records.egress[recv] = false;
     }
 
 
+    /**
+     * Iterates over the ticks and waits for the end of each tick before handing it out.
+     *
+     * If the clock asks to skip missed deadlines, all ticks which are already over are merged into a single tick.
+     */
     public static class Sleeper implements Iterable<Timespan> {
 
         private final Timespan.Ticker ticker;
+        private final SimulationClock clock;
 
         public Sleeper(final Timespan.Ticker ticker) {
+            this(ticker, SimulationClock.wall());
+        }
+
+        public Sleeper(final Timespan.Ticker ticker, final SimulationClock clock) {
             this.ticker = Preconditions.checkNotNull(ticker);
+            this.clock = Preconditions.checkNotNull(clock);
         }
 
         @Override
         public Iterator<Timespan> iterator() {
             return new Iterator<Timespan>() {
-                public Iterator<Timespan> it = Sleeper.this.ticker.iterator();
+                public PeekingIterator<Timespan> it = Iterators.peekingIterator(Sleeper.this.ticker.iterator());
 
                 @Override
                 public boolean hasNext() {
-                    return this.it.hasNext();
+                    return !Thread.currentThread().isInterrupted() && this.it.hasNext();
                 }
 
                 @Override
                 public Timespan next() {
-                    final Timespan next = this.it.next();
-                    final Duration duration = Duration.between(Instant.now(), next.e);
-
-                    // zzzZZZZzzz
-                    try {
-                        Thread.sleep(duration.toMillis());
-                    } catch (final InterruptedException e) {
-                        throw new RuntimeException(e);
+                    Timespan next = this.it.next();
+
+                    if (Sleeper.this.clock.catchUp() == Pacer.CatchUp.SKIP) {
+                        final long now = Sleeper.this.clock.millis();
+                        while (this.it.hasNext() && this.it.peek().e.toEpochMilli() <= now) {
+                            next = new Timespan(next.s, this.it.next().e);
+                        }
                     }
 
+                    Sleeper.this.clock.sleepUntil(next.e.toEpochMilli());
+
                     return next;
                 }
             };
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.riptide;
+
+import java.time.Instant;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The time base driving a simulation.
+ *
+ * The clock provides the current simulation time and allows to wait until a point in simulation time has been reached.
+ * Besides the wall clock, the simulation time can be compressed by a factor or advanced without any waiting at all.
+ *
+ * Real time clocks are derived from {@link System#nanoTime()} and wait using a {@link Pacer}.
+ */
+public interface SimulationClock {
+
+    /**
+     * Returns the current simulation time in epoch milliseconds.
+     */
+    long millis();
+
+    /**
+     * Waits until the given simulation time in epoch milliseconds has been reached.
+     */
+    void sleepUntil(long deadline);
+
+    /**
+     * Returns the policy to apply if the simulation falls behind this clock.
+     */
+    default Pacer.CatchUp catchUp() {
+        return Pacer.CatchUp.BURST;
+    }
+
+    /**
+     * A clock following the system time.
+     */
+    static SimulationClock wall() {
+        return wall(new Pacer());
+    }
+
+    static SimulationClock wall(final Pacer pacer) {
+        return scaled(Instant.now(), 1.0, pacer);
+    }
+
+    /**
+     * A clock starting at the given origin and running faster than real time by the given factor.
+     */
+    static SimulationClock scaled(final Instant origin, final double factor) {
+        return scaled(origin, factor, new Pacer());
+    }
+
+    static SimulationClock scaled(final Instant origin, final double factor, final Pacer pacer) {
+        Preconditions.checkArgument(factor > 0.0);
+        Preconditions.checkNotNull(pacer);
+
+        final long originMillis = origin.toEpochMilli();
+        final long start = System.nanoTime();
+
+        return new SimulationClock() {
+            @Override
+            public long millis() {
+                return originMillis + (long) ((System.nanoTime() - start) / 1e6 * factor);
+            }
+
+            @Override
+            public void sleepUntil(final long deadline) {
+                if (deadline == Long.MIN_VALUE || deadline == Long.MAX_VALUE) {
+                    return;
+                }
+
+                pacer.awaitNanos(start + (long) ((deadline - originMillis) * 1e6 / factor));
+            }
+
+            @Override
+            public Pacer.CatchUp catchUp() {
+                return pacer.catchUp();
+            }
+        };
+    }
+
+    /**
+     * A clock starting at the given origin which never waits but jumps to the requested time instead.
+     */
+    static SimulationClock virtual(final Instant origin) {
+        return new SimulationClock() {
+            private long current = origin.toEpochMilli();
+
+            @Override
+            public long millis() {
+                return this.current;
+            }
+
+            @Override
+            public void sleepUntil(final long deadline) {
+                this.current = Math.max(this.current, deadline);
+            }
+        };
+    }
+}
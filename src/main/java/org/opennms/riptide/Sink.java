@@ -0,0 +1,447 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.net.InetAddresses;
+
+/**
+ * A stand-in collector which receives Netflow v5 packets, checks the sequence numbers of each exporter and measures
+ * the rates and the latency from export to receipt.
+ *
+ * Exporters are identified by their source address and engine. Records are counted as missing when the sequence jumps
+ * ahead. A packet behind the expected sequence is a duplicate if the same sequence has been seen recently and is
+ * counted as reordered otherwise - its records are no longer missing then. A sequence far behind or an uptime going
+ * back is taken as a restart of the exporter.
+ *
+ * The latency is the difference between the export time in the packet header and the time of receipt. It is only
+ * meaningful if the generator runs on the wall clock of the same machine.
+ *
+ * This class is not thread-safe except for {@link #stop()}.
+ */
+public class Sink implements Closeable {
+    private final static Logger LOG = LoggerFactory.getLogger(Sink.class);
+
+    public final static Duration DEFAULT_REPORT_INTERVAL = Duration.ofSeconds(10);
+
+    // The number of recent packet sequences kept per exporter to detect duplicates
+    private final static int WINDOW = 1024;
+
+    // Sequences further behind or uptimes further back are taken as a restart of the exporter
+    private final static int RESTART_THRESHOLD = 1 << 20;
+    private final static long RESTART_UPTIME_MILLIS = 60_000L;
+
+    private final static int SELECT_TIMEOUT_MILLIS = 100;
+
+    private final static double[] LATENCY_BUCKETS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0
+    };
+
+    static class ExporterState {
+        private final String name;
+
+        private boolean started = false;
+        private long expected;
+        private long uptime;
+
+        private final long[] recent = new long[WINDOW];
+        private int recentCount = 0;
+
+        private long datagrams = 0;
+        private long records = 0;
+        private long missing = 0;
+        private long duplicates = 0;
+        private long reordered = 0;
+        private long restarts = 0;
+
+        private ExporterState(final String name) {
+            this.name = Preconditions.checkNotNull(name);
+        }
+
+        /**
+         * Tracks the packet with the given sequence, number of records and uptime.
+         *
+         * @return {@code false} if the packet is a duplicate
+         */
+        private boolean track(final long sequence, final int count, final long uptime) {
+            final long next = (sequence + count) & 0xFFFFFFFFL;
+
+            if (!this.started) {
+                this.started = true;
+                this.expected = next;
+
+            } else if ((int) (uptime - this.uptime) < -RESTART_UPTIME_MILLIS) {
+                // The uptime wraps around after 49.7 days like the sequence does, which is not a restart
+                this.restarts++;
+                this.expected = next;
+
+            } else {
+                final int delta = (int) (sequence - this.expected);
+                if (delta > 0) {
+                    this.missing += delta;
+                    this.expected = next;
+
+                } else if (delta < 0) {
+                    if (this.seen(sequence)) {
+                        this.duplicates++;
+                        return false;
+                    }
+
+                    if (delta < -RESTART_THRESHOLD) {
+                        this.restarts++;
+                        this.expected = next;
+                    } else {
+                        // A late packet fills (part of) an earlier gap
+                        this.reordered++;
+                        this.missing = Math.max(0, this.missing - count);
+                    }
+
+                } else {
+                    this.expected = next;
+                }
+            }
+
+            this.recent[this.recentCount++ % WINDOW] = sequence;
+            this.uptime = uptime;
+
+            this.datagrams++;
+            this.records += count;
+            return true;
+        }
+
+        private boolean seen(final long sequence) {
+            for (int i = 0, n = Math.min(this.recentCount, WINDOW); i < n; i++) {
+                if (this.recent[i] == sequence) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long datagrams() {
+            return this.datagrams;
+        }
+
+        public long records() {
+            return this.records;
+        }
+
+        public long missing() {
+            return this.missing;
+        }
+
+        public long duplicates() {
+            return this.duplicates;
+        }
+
+        public long reordered() {
+            return this.reordered;
+        }
+
+        public long restarts() {
+            return this.restarts;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("name", this.name)
+                    .add("datagrams", this.datagrams)
+                    .add("records", this.records)
+                    .add("missing", this.missing)
+                    .add("duplicates", this.duplicates)
+                    .add("reordered", this.reordered)
+                    .add("restarts", this.restarts)
+                    .toString();
+        }
+    }
+
+    private final DatagramChannel channel;
+
+    private final NetflowV5Decoder decoder = new NetflowV5Decoder();
+
+    private final LongMap<ExporterState> exporters = new LongMap<>();
+
+    private final Histogram latency = new Histogram();
+
+    // Written by the receiving thread only but read by the metrics server
+    private volatile long datagrams = 0;
+    private volatile long records = 0;
+    private volatile long missing = 0;
+    private volatile long duplicates = 0;
+    private volatile long reordered = 0;
+    private volatile long invalid = 0;
+
+    private volatile boolean running = true;
+
+    private Selector selector;
+
+    /**
+     * Creates a sink which is not bound to a socket.
+     */
+    Sink() {
+        this.channel = null;
+    }
+
+    /**
+     * @param address the address to listen on
+     * @param receiveBuffer the size of the socket receive buffer or {@code 0} for the system default
+     */
+    public Sink(final Inet4SockAddr address, final int receiveBuffer) throws IOException {
+        this.channel = DatagramChannel.open();
+        try {
+            if (receiveBuffer > 0) {
+                this.channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBuffer);
+            }
+            this.channel.bind(new InetSocketAddress(address.addr, address.port));
+            this.channel.configureBlocking(false);
+        } catch (final IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Receives packets until stopped, the duration has passed or no packet has been received for the idle time.
+     *
+     * @param duration the time to run or {@link Duration#ZERO} to run until stopped
+     * @param idle the time without packets after which to stop or {@link Duration#ZERO} to wait forever - the idle
+     *             time starts with the first packet
+     * @param reportInterval the interval to report the rates and counters in
+     */
+    public void run(final Duration duration, final Duration idle, final Duration reportInterval) throws IOException {
+        Preconditions.checkState(this.channel != null, "Sink is not bound");
+
+        LOG.info("Listening on {}", this.channel.getLocalAddress());
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(0xFFFF);
+
+        final long start = System.nanoTime();
+        long lastReceived = start;
+        long nextReport = start + reportInterval.toNanos();
+
+        long reportedDatagrams = 0;
+        long reportedRecords = 0;
+        long reportedTime = start;
+
+        try (final Selector selector = Selector.open()) {
+            this.selector = selector;
+            this.channel.register(selector, SelectionKey.OP_READ);
+
+            while (this.running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                selector.selectedKeys().clear();
+
+                // Drain everything queued before waiting again
+                SocketAddress source;
+                while ((source = this.channel.receive(buffer)) != null) {
+                    buffer.flip();
+                    this.receive(buffer, InetAddresses.coerceToInteger(((InetSocketAddress) source).getAddress()), System.currentTimeMillis() * 1000L);
+                    buffer.clear();
+
+                    lastReceived = System.nanoTime();
+                }
+
+                final long now = System.nanoTime();
+                if (!duration.isZero() && now - start >= duration.toNanos()) {
+                    break;
+                }
+
+                if (!idle.isZero() && this.datagrams > 0 && now - lastReceived >= idle.toNanos()) {
+                    LOG.info("No packets received for {} s", idle.getSeconds());
+                    break;
+                }
+
+                if (now - nextReport >= 0) {
+                    LOG.info("Received {} datagrams/s, {} records/s - {}",
+                            String.format("%.1f", (this.datagrams - reportedDatagrams) * 1e9 / (now - reportedTime)),
+                            String.format("%.1f", (this.records - reportedRecords) * 1e9 / (now - reportedTime)),
+                            this.counters());
+
+                    reportedDatagrams = this.datagrams;
+                    reportedRecords = this.records;
+                    reportedTime = now;
+                    nextReport += reportInterval.toNanos();
+                }
+            }
+        } finally {
+            this.selector = null;
+        }
+
+        this.summary(System.nanoTime() - start);
+    }
+
+    /**
+     * Stops receiving. Can be called from any thread.
+     */
+    public void stop() {
+        this.running = false;
+
+        final Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Handles a received packet.
+     *
+     * @param packet the packet starting at the position of the buffer
+     * @param sourceAddress the source address of the packet
+     * @param nowMicros the time of receipt in epoch microseconds
+     */
+    void receive(final ByteBuffer packet, final int sourceAddress, final long nowMicros) {
+        if (!this.decoder.decode(packet)) {
+            this.invalid++;
+            return;
+        }
+
+        final int engine = this.decoder.engineType() << 8 | this.decoder.engineId();
+        final long key = (sourceAddress & 0xFFFFFFFFL) << 16 | engine;
+
+        ExporterState exporter = this.exporters.get(key);
+        if (exporter == null) {
+            exporter = new ExporterState(
+                    InetAddresses.fromInteger(sourceAddress).getHostAddress() + "/" + this.decoder.engineType() + "/" + this.decoder.engineId());
+            this.exporters.put(key, exporter);
+        }
+
+        final long missing = exporter.missing;
+        final long reordered = exporter.reordered;
+
+        if (!exporter.track(this.decoder.flowSequence(), this.decoder.count(), this.decoder.uptime())) {
+            this.duplicates++;
+            return;
+        }
+
+        this.missing += exporter.missing - missing;
+        this.reordered += exporter.reordered - reordered;
+
+        this.datagrams++;
+        this.records += this.decoder.count();
+
+        this.latency.record(nowMicros - this.decoder.timeMicros());
+    }
+
+    /**
+     * Writes the counters and the latency histogram in the Prometheus text exposition format.
+     */
+    public void prometheus(final StringBuilder out) {
+        Metrics.counter(out, "riptide_sink_datagrams_total", "Valid datagrams received", this.datagrams);
+        Metrics.counter(out, "riptide_sink_records_total", "Flow records received", this.records);
+        Metrics.counter(out, "riptide_sink_missing_total", "Flow records missing in the sequences", this.missing);
+        Metrics.counter(out, "riptide_sink_duplicates_total", "Duplicate datagrams received", this.duplicates);
+        Metrics.counter(out, "riptide_sink_reordered_total", "Datagrams received out of order", this.reordered);
+        Metrics.counter(out, "riptide_sink_invalid_total", "Datagrams which could not be decoded", this.invalid);
+        Metrics.histogram(out, "riptide_sink_latency_seconds", "Time from export to receipt",
+                this.latency, LATENCY_BUCKETS, TimeUnit.MICROSECONDS);
+    }
+
+    private String counters() {
+        return String.format("datagrams: %d, records: %d, missing: %d, duplicates: %d, reordered: %d, invalid: %d, latency: mean %.1f ms, p99 %.1f ms, max %.1f ms",
+                this.datagrams,
+                this.records,
+                this.missing,
+                this.duplicates,
+                this.reordered,
+                this.invalid,
+                this.latency.mean() / 1000.0,
+                this.latency.percentile(99.0) / 1000.0,
+                this.latency.max() / 1000.0);
+    }
+
+    private void summary(final long elapsed) {
+        LOG.info("Received {} datagrams and {} records from {} exporters in {} ms: {} datagrams/s, {} records/s",
+                this.datagrams,
+                this.records,
+                this.exporters.size(),
+                elapsed / 1_000_000L,
+                String.format("%.1f", this.datagrams * 1e9 / elapsed),
+                String.format("%.1f", this.records * 1e9 / elapsed));
+        LOG.info("{}", this.counters());
+
+        for (final ExporterState exporter : this.exporters.values()) {
+            LOG.debug("{}", exporter);
+        }
+    }
+
+    public long datagrams() {
+        return this.datagrams;
+    }
+
+    public long records() {
+        return this.records;
+    }
+
+    public long missing() {
+        return this.missing;
+    }
+
+    public long duplicates() {
+        return this.duplicates;
+    }
+
+    public long reordered() {
+        return this.reordered;
+    }
+
+    public long invalid() {
+        return this.invalid;
+    }
+
+    public Histogram latency() {
+        return this.latency;
+    }
+
+    public int exporters() {
+        return this.exporters.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+        }
+    }
+}
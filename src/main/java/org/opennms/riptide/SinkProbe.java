@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Queries the counters of a sink from its Prometheus metrics endpoint.
+ */
+public class SinkProbe implements Saturation.Feedback {
+
+    private final static int TIMEOUT_MILLIS = 5000;
+
+    private final static String RECORDS = "riptide_sink_records_total";
+    private final static String MISSING = "riptide_sink_missing_total";
+    private final static String LATENCY_BUCKET = "riptide_sink_latency_seconds_bucket";
+
+    /**
+     * The counters of a sink at a point in time.
+     */
+    public static class Snapshot {
+        public final long records;
+        public final long missing;
+
+        // Cumulative latency histogram by upper bound in seconds
+        private final double[] bounds;
+        private final long[] counts;
+
+        public Snapshot(final long records, final long missing, final double[] bounds, final long[] counts) {
+            Preconditions.checkArgument(bounds.length == counts.length);
+            this.records = records;
+            this.missing = missing;
+            this.bounds = bounds;
+            this.counts = counts;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the given percentile of the latencies recorded since the
+         * given earlier snapshot in seconds or {@code NaN} if nothing has been recorded in between.
+         */
+        public double latency(final Snapshot before, final double percentile) {
+            Preconditions.checkArgument(percentile >= 0.0 && percentile <= 100.0);
+
+            final int last = this.counts.length - 1;
+            if (last < 0) {
+                return Double.NaN;
+            }
+
+            final long total = this.counts[last] - before.count(this.bounds[last]);
+            if (total <= 0) {
+                return Double.NaN;
+            }
+
+            final long rank = (long) Math.ceil(total * percentile / 100.0);
+            for (int i = 0; i < this.counts.length; i++) {
+                if (this.counts[i] - before.count(this.bounds[i]) >= rank) {
+                    return this.bounds[i];
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+
+        private long count(final double bound) {
+            for (int i = 0; i < this.bounds.length; i++) {
+                if (this.bounds[i] == bound) {
+                    return this.counts[i];
+                }
+            }
+            return 0;
+        }
+    }
+
+    private final URL url;
+
+    public SinkProbe(final URL url) {
+        this.url = Preconditions.checkNotNull(url);
+    }
+
+    @Override
+    public Snapshot snapshot() throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) this.url.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response from " + this.url + ": " + connection.getResponseCode());
+            }
+
+            try (final Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                return parse(reader);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static Snapshot parse(final String text) throws IOException {
+        return parse(new StringReader(text));
+    }
+
+    /**
+     * Parses the metrics written by {@link Sink#prometheus(StringBuilder)}.
+     */
+    static Snapshot parse(final Reader text) throws IOException {
+        final Map<String, Double> values = Maps.newHashMap();
+        final Map<Double, Long> buckets = Maps.newTreeMap();
+
+        final BufferedReader reader = new BufferedReader(text);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            final int space = line.lastIndexOf(' ');
+            if (space < 0) {
+                continue;
+            }
+
+            final String name = line.substring(0, space);
+            final double value = Double.parseDouble(line.substring(space + 1));
+
+            if (name.startsWith(LATENCY_BUCKET + "{le=\"")) {
+                final String le = name.substring(LATENCY_BUCKET.length() + 5, name.length() - 2);
+                buckets.put("+Inf".equals(le) ? Double.POSITIVE_INFINITY : Double.parseDouble(le), (long) value);
+            } else {
+                values.put(name, value);
+            }
+        }
+
+        if (!values.containsKey(RECORDS)) {
+            throw new IOException("Not a sink: " + RECORDS + " is missing");
+        }
+
+        final double[] bounds = new double[buckets.size()];
+        final long[] counts = new long[buckets.size()];
+        int i = 0;
+        for (final Map.Entry<Double, Long> bucket : buckets.entrySet()) {
+            bounds[i] = bucket.getKey();
+            counts[i] = bucket.getValue();
+            i++;
+        }
+
+        return new Snapshot(values.get(RECORDS).longValue(),
+                values.getOrDefault(MISSING, 0.0).longValue(),
+                bounds,
+                counts);
+    }
+}
@@ -28,10 +28,6 @@
 
 package org.opennms.riptide;
 
-import static org.opennms.riptide.BufferUtils.bytes;
-import static org.opennms.riptide.BufferUtils.uint16;
-import static org.opennms.riptide.BufferUtils.uint8;
-
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
@@ -42,57 +38,137 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 import com.savarese.rocksaw.net.RawSocket;
 
+/**
+ * Sends packets from a spoofed source address using a raw socket.
+ *
+ * Each packet is encoded once into a reused buffer right behind the space for the headers. For every target, the
+ * prebuilt header of the source and target pair is copied in front of the payload and completed with the lengths, a
+ * running IP identification and checksums derived from the payload sum, which is calculated once per packet.
+ */
 public class SpoofingSender implements Simulation.Sender {
     private final static Logger LOG = LoggerFactory.getLogger(SpoofingSender.class);
 
+    private final static int HEADER_SIZE = UdpHeaderTemplate.SIZE;
+
     private final Inet4SockAddr source;
     private final List<Inet4SockAddr> targets;
 
+    private final Encoder encoder;
+
     private final RawSocket socket;
 
+    private final ByteBuffer buffer;
+
+    // Header templates for all targets by source
+    private final LongMap<UdpHeaderTemplate[]> templates = new LongMap<>();
+
+    private Inet4SockAddr lastSource;
+    private UdpHeaderTemplate[] lastTemplates;
+
+    private int identification = 0;
+
+    private final Metrics.Target[] metrics;
+
     public SpoofingSender(final Inet4SockAddr source,
                           final List<Inet4SockAddr> targets) throws IOException {
+        this(source, targets, new NetflowV5Encoder());
+    }
+
+    public SpoofingSender(final Inet4SockAddr source,
+                          final List<Inet4SockAddr> targets,
+                          final Encoder encoder) throws IOException {
+        this(source, targets, encoder, new Metrics());
+    }
+
+    /**
+     * @param metrics the metrics to count the sent packets per target in
+     */
+    public SpoofingSender(final Inet4SockAddr source,
+                          final List<Inet4SockAddr> targets,
+                          final Encoder encoder,
+                          final Metrics metrics) throws IOException {
         this.source = Preconditions.checkNotNull(source);
         this.targets = Preconditions.checkNotNull(targets);
+        this.encoder = Preconditions.checkNotNull(encoder);
 
         this.socket = new RawSocket();
         this.socket.open(RawSocket.PF_INET, RawSocket.getProtocolByName("udp"));
         this.socket.setIPHeaderInclude(true);
+
+        // The payload is encoded once right behind the headers which are re-written for each target
+        this.buffer = ByteBuffer.allocate(HEADER_SIZE + Encoder.MAX_PACKET_SIZE);
+
+        this.metrics = new Metrics.Target[this.targets.size()];
+        for (int i = 0; i < this.metrics.length; i++) {
+            this.metrics[i] = metrics.target(this.targets.get(i));
+        }
     }
 
     @Override
     public void send(final Flow flow) {
-        final byte[] payload = flow.write().array();
-
-        for (final Inet4SockAddr target : this.targets) {
-            LOG.debug("Sending packet from {} to {} ({} bytes)", this.source, target, payload.length);
-
-            final ByteBuffer buffer = ByteBuffer.allocate(20 + 8 + payload.length);
-
-            // IP Header
-            uint8(buffer, (0x04 << 4) | 5); // IPv4 version and header size
-            uint8(buffer,0); // DSCP and ECN
-            uint16(buffer,20 + 8 + payload.length); // Length
-            uint16(buffer,0); // Identification
-            uint16(buffer, 0); // Flags and fragment offset
-            uint8(buffer, 64); // TTL
-            uint8(buffer, 17); // Protocol = UDP
-            uint16(buffer, 0); // Checksum - will be calculated by kernel
-            bytes(buffer, this.source.addr.getAddress()); // Source address
-            bytes(buffer, target.addr.getAddress()); // Target address
-
-            // UDP Header
-            uint16(buffer, this.source.port); // Source port
-            uint16(buffer, target.port); // Target port
-            uint16(buffer, 8 + payload.length); // Length
-            uint16(buffer, 0); // Checksum - can be omitted
-
-            // Payload
-            bytes(buffer, payload);
+        this.send(flow, this.source);
+    }
+
+    @Override
+    public void send(final Flow flow, final Inet4SockAddr source) {
+        this.buffer.clear();
+        this.buffer.position(HEADER_SIZE);
+        this.encoder.encode(flow, this.buffer);
+
+        this.transmit(source, this.buffer.position());
+    }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        this.buffer.clear();
+        this.buffer.position(HEADER_SIZE);
+        this.buffer.put(packet);
+
+        this.transmit(source, this.buffer.position());
+    }
+
+    private UdpHeaderTemplate[] templates(final Inet4SockAddr source) {
+        // Most packets are sent from the same source as the one before
+        if (source != this.lastSource) {
+            final long key = ((source.addrBits & 0xFFFFFFFFL) << 16) | source.port;
+
+            UdpHeaderTemplate[] templates = this.templates.get(key);
+            if (templates == null) {
+                templates = new UdpHeaderTemplate[this.targets.size()];
+                for (int i = 0; i < templates.length; i++) {
+                    templates[i] = new UdpHeaderTemplate(source, this.targets.get(i));
+                }
+                this.templates.put(key, templates);
+            }
+
+            this.lastTemplates = templates;
+            this.lastSource = source;
+        }
+
+        return this.lastTemplates;
+    }
+
+    private void transmit(final Inet4SockAddr source, final int length) {
+        final int payloadLength = length - HEADER_SIZE;
+
+        final byte[] packet = this.buffer.array();
+        final int payloadSum = PacketHeaders.sum(packet, HEADER_SIZE, payloadLength);
+
+        final UdpHeaderTemplate[] templates = this.templates(source);
+        for (int i = 0; i < templates.length; i++) {
+            final Inet4SockAddr target = this.targets.get(i);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Sending packet from {} to {} ({} bytes)", source, target, payloadLength);
+            }
+
+            templates[i].write(packet, 0, payloadLength, payloadSum, this.identification++ & 0xFFFF);
 
             try {
-                this.socket.write(target.addr, buffer.array());
+                this.socket.write(target.addr, packet, 0, length);
+                this.metrics[i].sent(payloadLength);
             } catch (final IOException e) {
+                this.metrics[i].failed();
                 LOG.error("Failed to send packet", e);
             }
         }
@@ -58,6 +58,21 @@ public class TcpSession {
         this.recvPackets = builder.recvPackets;
     }
 
+    /**
+     * Returns a copy of this session moved in time by the given offset.
+     */
+    public TcpSession shift(final Duration offset) {
+        return builder()
+                .withClient(this.client)
+                .withServer(this.server)
+                .withTimespan(this.timespan.plus(offset))
+                .withSendSize(this.sendSize)
+                .withSendPackets(this.sendPackets)
+                .withRecvSize(this.recvSize)
+                .withRecvPackets(this.recvPackets)
+                .build();
+    }
+
     @JsonPOJOBuilder(buildMethodName = "build", withPrefix = "with")
     public static class Builder {
         private Endpoint client;
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.time.Duration;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decides when templates are sent again.
+ *
+ * Templates are sent with the first packet of each source and refreshed after the configured number of packets or
+ * amount of time, whichever comes first. As collectors can't decode data without the template, the refresh bounds the
+ * time a restarted collector stays blind.
+ *
+ * The state per source is kept in an open-addressing table of primitive arrays, so counting a packet neither boxes the
+ * source nor allocates once the source is known.
+ *
+ * Not thread-safe - owned by a single encoder.
+ */
+class TemplateRefresh {
+
+    public final static int DEFAULT_PACKETS = 20;
+    public final static Duration DEFAULT_INTERVAL = Duration.ofMinutes(1);
+
+    private final int packets;
+    private final long intervalMillis;
+
+    private final static int INITIAL_CAPACITY = 16;
+
+    private int[] sources = new int[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private long[] lastMillis = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    TemplateRefresh(final int packets, final Duration interval) {
+        Preconditions.checkArgument(packets > 0, "Template refresh packets must be positive");
+        Preconditions.checkArgument(!interval.isNegative() && !interval.isZero(), "Template refresh interval must be positive");
+
+        this.packets = packets;
+        this.intervalMillis = interval.toMillis();
+    }
+
+    /**
+     * Returns whether the next packet of the given source must carry the template and counts the packet.
+     *
+     * @param now the export time of the packet in epoch milliseconds
+     */
+    boolean due(final int source, final long now) {
+        final int slot = this.slot(source);
+
+        if (this.counts[slot] == 0 || this.counts[slot] >= this.packets || now - this.lastMillis[slot] >= this.intervalMillis) {
+            this.counts[slot] = 1;
+            this.lastMillis[slot] = now;
+            return true;
+        }
+
+        this.counts[slot]++;
+        return false;
+    }
+
+    /**
+     * Returns the slot of the given source, adding it if it is not known yet.
+     */
+    private int slot(final int source) {
+        int slot = find(this.sources, this.used, source);
+        if (this.used[slot]) {
+            return slot;
+        }
+
+        // Keep the table at most half full so probe sequences stay short
+        if (2 * (this.size + 1) > this.sources.length) {
+            this.grow();
+            slot = find(this.sources, this.used, source);
+        }
+
+        this.sources[slot] = source;
+        this.used[slot] = true;
+        this.size++;
+        return slot;
+    }
+
+    private void grow() {
+        final int[] sources = new int[2 * this.sources.length];
+        final boolean[] used = new boolean[sources.length];
+        final int[] counts = new int[sources.length];
+        final long[] lastMillis = new long[sources.length];
+
+        for (int i = 0; i < this.sources.length; i++) {
+            if (this.used[i]) {
+                final int slot = find(sources, used, this.sources[i]);
+                sources[slot] = this.sources[i];
+                used[slot] = true;
+                counts[slot] = this.counts[i];
+                lastMillis[slot] = this.lastMillis[i];
+            }
+        }
+
+        this.sources = sources;
+        this.used = used;
+        this.counts = counts;
+        this.lastMillis = lastMillis;
+    }
+
+    /**
+     * Returns the slot holding the given source or the free slot to put it in.
+     */
+    private static int find(final int[] sources, final boolean[] used, final int source) {
+        final int mask = sources.length - 1;
+
+        int hash = source * 0x9E3779B9;
+        hash ^= hash >>> 16;
+
+        int slot = hash & mask;
+        while (used[slot] && sources[slot] != source) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
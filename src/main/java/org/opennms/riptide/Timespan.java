@@ -55,6 +55,10 @@ public class Timespan {
         return Duration.between(this.s, this.e);
     }
 
+    public Timespan plus(final Duration offset) {
+        return new Timespan(this.s.plus(offset), this.e.plus(offset));
+    }
+
     public static class Ticker implements Iterable<Timespan> {
         private final Timespan timespan;
         private final Duration interval;
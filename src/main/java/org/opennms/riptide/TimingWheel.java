@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.riptide;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A hierarchical timing wheel.
+ *
+ * Elements are scheduled at an absolute deadline and handed out by {@link #advance(long, Consumer)} once the deadline
+ * has passed. Each level of the wheel covers {@code size} times the span of the level below and elements are cascaded
+ * down as time progresses. Only non-empty buckets are tracked in a priority queue which allows to jump over idle
+ * periods without touching every slot.
+ *
+ * The resolution of the wheel is its tick - elements are handed out at the start of the tick their deadline falls into.
+ *
+ * This class is not thread-safe.
+ */
+public class TimingWheel<T> {
+
+    private static class Entry<T> {
+        private final long deadline;
+        private final T element;
+
+        private Entry(final long deadline, final T element) {
+            this.deadline = deadline;
+            this.element = element;
+        }
+    }
+
+    private static class Bucket<T> {
+        private final List<Entry<T>> entries = new ArrayList<>();
+        private long expiration = -1;
+    }
+
+    private class Level {
+        private final long tick;
+        private final long interval;
+        private final Bucket<T>[] buckets;
+
+        private long current;
+
+        private Level overflow;
+
+        private Level(final long tick, final long start) {
+            this.tick = tick;
+            this.interval = tick * TimingWheel.this.size;
+
+            @SuppressWarnings("unchecked")
+            final Bucket<T>[] buckets = (Bucket<T>[]) new Bucket<?>[TimingWheel.this.size];
+            this.buckets = buckets;
+            for (int i = 0; i < this.buckets.length; i++) {
+                this.buckets[i] = new Bucket<>();
+            }
+
+            this.current = start - (start % tick);
+        }
+
+        private boolean add(final Entry<T> entry) {
+            if (entry.deadline < this.current + this.tick) {
+                // Already expired
+                return false;
+            }
+
+            if (entry.deadline < this.current + this.interval) {
+                final long id = entry.deadline / this.tick;
+                final Bucket<T> bucket = this.buckets[(int) (id % this.buckets.length)];
+                bucket.entries.add(entry);
+
+                final long expiration = id * this.tick;
+                if (bucket.expiration != expiration) {
+                    bucket.expiration = expiration;
+                    TimingWheel.this.queue.add(bucket);
+                }
+
+                return true;
+            }
+
+            if (this.overflow == null) {
+                this.overflow = new Level(this.interval, this.current);
+            }
+
+            return this.overflow.add(entry);
+        }
+
+        private void advance(final long time) {
+            if (time >= this.current + this.tick) {
+                this.current = time - (time % this.tick);
+
+                if (this.overflow != null) {
+                    this.overflow.advance(this.current);
+                }
+            }
+        }
+    }
+
+    private final int size;
+
+    private final PriorityQueue<Bucket<T>> queue = new PriorityQueue<>((b1, b2) -> Long.compare(b1.expiration, b2.expiration));
+    private final ArrayDeque<T> expired = new ArrayDeque<>();
+
+    private final Level root;
+
+    private int count = 0;
+
+    public TimingWheel(final long tick, final int size, final long start) {
+        Preconditions.checkArgument(tick > 0);
+        Preconditions.checkArgument(size > 1);
+
+        this.size = size;
+        this.root = new Level(tick, start);
+    }
+
+    /**
+     * Schedules the element to be handed out as soon as the deadline has passed.
+     *
+     * Elements with a deadline in the past are handed out on the next call to {@link #advance(long, Consumer)}.
+     */
+    public void schedule(final long deadline, final T element) {
+        Preconditions.checkNotNull(element);
+
+        this.count++;
+        this.insert(new Entry<>(deadline, element));
+    }
+
+    private void insert(final Entry<T> entry) {
+        if (!this.root.add(entry)) {
+            this.expired.add(entry.element);
+        }
+    }
+
+    /**
+     * Returns the deadline of the earliest scheduled bucket or {@link Long#MIN_VALUE} if elements are already due.
+     * If the wheel is empty, {@link Long#MAX_VALUE} is returned.
+     */
+    public long nextDeadline() {
+        if (!this.expired.isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+
+        final Bucket<T> bucket = this.queue.peek();
+        if (bucket == null) {
+            return Long.MAX_VALUE;
+        }
+
+        return bucket.expiration;
+    }
+
+    /**
+     * Advances the wheel to the given time and hands out all elements which became due.
+     *
+     * The consumer is allowed to schedule new elements - elements which are due already are handed out during the same
+     * call.
+     */
+    public void advance(final long now, final Consumer<? super T> consumer) {
+        Bucket<T> bucket;
+        while ((bucket = this.queue.peek()) != null && bucket.expiration <= now) {
+            this.queue.poll();
+            this.root.advance(bucket.expiration);
+
+            final List<Entry<T>> entries = new ArrayList<>(bucket.entries);
+            bucket.entries.clear();
+            bucket.expiration = -1;
+
+            // Re-insert into lower levels or mark as expired
+            for (final Entry<T> entry : entries) {
+                this.insert(entry);
+            }
+        }
+
+        this.root.advance(now);
+
+        T element;
+        while ((element = this.expired.poll()) != null) {
+            this.count--;
+            consumer.accept(element);
+        }
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+}
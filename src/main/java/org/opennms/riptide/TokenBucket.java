@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.riptide;
+
+import java.util.function.LongSupplier;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A token bucket pacing events to a constant rate.
+ *
+ * Tokens are refilled continuously based on {@link System#nanoTime()} up to the configured burst size. Waiting for
+ * tokens is left to a {@link Pacer}.
+ */
+public class TokenBucket {
+
+    private final static long SPIN_NANOS = 50_000L;
+
+    private final LongSupplier clock;
+    private final Pacer pacer;
+
+    private final double rate;
+    private final double burst;
+
+    private double tokens;
+    private long last;
+
+    /**
+     * @param rate the number of tokens per second
+     * @param burst the maximum number of tokens accumulated while idle
+     */
+    public TokenBucket(final double rate, final double burst) {
+        this(rate, burst, System::nanoTime);
+    }
+
+    TokenBucket(final double rate, final double burst, final LongSupplier clock) {
+        Preconditions.checkArgument(rate > 0.0);
+        Preconditions.checkArgument(burst >= 1.0);
+
+        this.clock = Preconditions.checkNotNull(clock);
+        this.pacer = new Pacer(SPIN_NANOS, Pacer.CatchUp.BURST);
+
+        this.rate = rate / 1e9;
+        this.burst = burst;
+
+        this.tokens = 0.0;
+        this.last = this.clock.getAsLong();
+    }
+
+    private void refill(final long now) {
+        this.tokens = Math.min(this.burst, this.tokens + (now - this.last) * this.rate);
+        this.last = now;
+    }
+
+    /**
+     * Takes the given number of tokens if available.
+     *
+     * @return the number of nanoseconds until the tokens will be available or {@code 0} if they have been taken
+     */
+    public long tryAcquire(final int count) {
+        this.refill(this.clock.getAsLong());
+
+        if (this.tokens >= count) {
+            this.tokens -= count;
+            return 0;
+        }
+
+        return (long) Math.ceil((count - this.tokens) / this.rate);
+    }
+
+    /**
+     * Blocks until the given number of tokens is available and takes them.
+     *
+     * If the thread is interrupted while waiting, this returns early with the interrupt status still set.
+     *
+     * @return {@code true} if the tokens have been taken or {@code false} if interrupted
+     */
+    public boolean acquire(final int count) {
+        Preconditions.checkArgument(count <= this.burst, "Can not acquire more tokens than the burst size");
+
+        long wait;
+        while ((wait = this.tryAcquire(count)) > 0) {
+            this.pacer.awaitNanos(System.nanoTime() + wait);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A prebuilt IPv4 and UDP header for the packets sent from one source to one target.
+ *
+ * Per packet, only the lengths, the identification and both checksums are patched into a copy of the template. The
+ * checksums are completed from the sums over the constant fields, which are calculated once, and the sum over the
+ * payload, which is shared by all targets of a packet.
+ *
+ * This class is immutable.
+ */
+public class UdpHeaderTemplate {
+
+    public final static int SIZE = PacketHeaders.IP_HEADER_SIZE + PacketHeaders.UDP_HEADER_SIZE;
+
+    private final static int IP_TOTAL_LENGTH = 2;
+    private final static int IP_IDENTIFICATION = 4;
+    private final static int IP_CHECKSUM = 10;
+    private final static int UDP_LENGTH = PacketHeaders.IP_HEADER_SIZE + 4;
+    private final static int UDP_CHECKSUM = PacketHeaders.IP_HEADER_SIZE + 6;
+
+    private final byte[] header = new byte[SIZE];
+
+    // Sums over the header fields which are the same for all packets
+    private final int ipSum;
+    private final int udpSum;
+
+    public UdpHeaderTemplate(final int sourceAddress, final int sourcePort,
+                             final int targetAddress, final int targetPort) {
+        final ByteBuffer buffer = ByteBuffer.wrap(this.header);
+        PacketHeaders.ipv4Udp(buffer, sourceAddress, sourcePort, targetAddress, targetPort, 0);
+
+        // Lengths are patched per packet
+        buffer.putShort(IP_TOTAL_LENGTH, (short) 0);
+        buffer.putShort(UDP_LENGTH, (short) 0);
+
+        this.ipSum = PacketHeaders.sum(this.header, 0, PacketHeaders.IP_HEADER_SIZE);
+
+        // The UDP checksum covers a pseudo header made of the addresses, the protocol and the UDP length
+        this.udpSum = PacketHeaders.fold((long) PacketHeaders.sum(this.header, 12, 8)
+                + PacketHeaders.PROTOCOL_UDP
+                + PacketHeaders.sum(this.header, PacketHeaders.IP_HEADER_SIZE, PacketHeaders.UDP_HEADER_SIZE));
+    }
+
+    public UdpHeaderTemplate(final Inet4SockAddr source, final Inet4SockAddr target) {
+        this(source.addrBits, source.port, target.addrBits, target.port);
+    }
+
+    /**
+     * Writes the header in front of a payload.
+     *
+     * @param packet the buffer holding the packet
+     * @param offset the offset of the header which is directly followed by the payload
+     * @param payloadLength the length of the payload
+     * @param payloadSum the sum over the payload as calculated by {@link PacketHeaders#sum(byte[], int, int)}
+     * @param identification the IP identification of the packet
+     */
+    public void write(final byte[] packet, final int offset,
+                      final int payloadLength, final int payloadSum,
+                      final int identification) {
+        Preconditions.checkArgument(payloadLength >= 0 && payloadLength <= 0xFFFF - SIZE);
+
+        System.arraycopy(this.header, 0, packet, offset, SIZE);
+
+        final int totalLength = SIZE + payloadLength;
+        final int udpLength = PacketHeaders.UDP_HEADER_SIZE + payloadLength;
+
+        uint16(packet, offset + IP_TOTAL_LENGTH, totalLength);
+        uint16(packet, offset + IP_IDENTIFICATION, identification);
+        uint16(packet, offset + IP_CHECKSUM, ~PacketHeaders.fold((long) this.ipSum + totalLength + identification) & 0xFFFF);
+
+        // The UDP length is part of both the pseudo header and the UDP header
+        final int udpChecksum = ~PacketHeaders.fold((long) this.udpSum + udpLength + udpLength + payloadSum) & 0xFFFF;
+
+        uint16(packet, offset + UDP_LENGTH, udpLength);
+        uint16(packet, offset + UDP_CHECKSUM, udpChecksum != 0 ? udpChecksum : 0xFFFF); // Zero means no checksum
+    }
+
+    private static void uint16(final byte[] packet, final int offset, final int value) {
+        packet[offset] = (byte) (value >>> 8);
+        packet[offset + 1] = (byte) value;
+    }
+}
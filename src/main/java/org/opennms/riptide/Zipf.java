@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide;
+
+import java.util.SplittableRandom;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Draws ranks from a Zipf distribution.
+ *
+ * Uses the rejection-inversion method by Hörmann and Derflinger which needs constant time and memory regardless of
+ * the number of elements. Rank {@code 1} is the most frequent one.
+ *
+ * This class is thread-safe as long as each thread uses its own random generator.
+ */
+class Zipf {
+    private final int elements;
+    private final double exponent;
+
+    private final double hIntegralX1;
+    private final double hIntegralElements;
+    private final double s;
+
+    Zipf(final int elements, final double exponent) {
+        Preconditions.checkArgument(elements > 0, "elements must be positive");
+        Preconditions.checkArgument(exponent >= 0.0, "exponent must not be negative");
+
+        this.elements = elements;
+        this.exponent = exponent;
+
+        this.hIntegralX1 = this.hIntegral(1.5) - 1.0;
+        this.hIntegralElements = this.hIntegral(elements + 0.5);
+        this.s = 2.0 - this.hIntegralInverse(this.hIntegral(2.5) - this.h(2.0));
+    }
+
+    /**
+     * Returns a rank between {@code 1} and the number of elements.
+     */
+    int sample(final SplittableRandom random) {
+        while (true) {
+            final double u = this.hIntegralElements + random.nextDouble() * (this.hIntegralX1 - this.hIntegralElements);
+            final double x = this.hIntegralInverse(u);
+
+            final int k = (int) Math.max(1, Math.min(this.elements, (long) (x + 0.5)));
+            if (k - x <= this.s || u >= this.hIntegral(k + 0.5) - this.h(k)) {
+                return k;
+            }
+        }
+    }
+
+    private double h(final double x) {
+        return Math.exp(-this.exponent * Math.log(x));
+    }
+
+    private double hIntegral(final double x) {
+        final double logX = Math.log(x);
+        return helper2((1.0 - this.exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(final double x) {
+        final double t = Math.max(-1.0, x * (1.0 - this.exponent));
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, stable around 0
+    private static double helper1(final double x) {
+        return Math.abs(x) > 1e-8
+                ? Math.log1p(x) / x
+                : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, stable around 0
+    private static double helper2(final double x) {
+        return Math.abs(x) > 1e-8
+                ? Math.expm1(x) / x
+                : 1.0 + x * 0.5 * (1.0 + x * 1.0 / 3.0 * (1.0 + 0.25 * x));
+    }
+}
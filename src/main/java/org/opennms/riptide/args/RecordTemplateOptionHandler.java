@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.riptide.args;
+
+import java.util.List;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.OptionDef;
+import org.kohsuke.args4j.spi.OneArgumentOptionHandler;
+import org.kohsuke.args4j.spi.Setter;
+import org.opennms.riptide.FlowField;
+import org.opennms.riptide.RecordTemplate;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+/**
+ * Parses a comma separated list of field names into a template.
+ */
+public class RecordTemplateOptionHandler extends OneArgumentOptionHandler<RecordTemplate> {
+    public RecordTemplateOptionHandler(final CmdLineParser parser,
+                                   final OptionDef option,
+                                   final Setter<? super RecordTemplate> setter) {
+        super(parser, option, setter);
+    }
+
+    @Override
+    protected RecordTemplate parse(String argument) throws CmdLineException {
+        final List<FlowField> fields = Lists.newArrayList();
+        for (final String name : Splitter.on(',').trimResults().omitEmptyStrings().split(argument)) {
+            try {
+                fields.add(FlowField.valueOf(name.toUpperCase()));
+            } catch (final IllegalArgumentException e) {
+                throw new CmdLineException(this.owner, "Unknown field: " + name, e);
+            }
+        }
+
+        if (fields.isEmpty()) {
+            throw new CmdLineException(this.owner, "No fields given", null);
+        }
+
+        return new RecordTemplate(RecordTemplate.MIN_ID, fields.toArray(new FlowField[0]));
+    }
+
+    @Override
+    public String getDefaultMetaVariable() {
+        return "FIELDS";
+    }
+}
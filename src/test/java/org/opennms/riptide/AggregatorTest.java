@@ -0,0 +1,86 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class AggregatorTest {
+    private static FlowRecordBatch records(final int count) {
+        final FlowRecordBatch records = new FlowRecordBatch(count);
+        for (int i = 0; i < count; i++) {
+            records.packets[records.append()] = i;
+        }
+        return records;
+    }
+
+    @Test
+    public void packs() {
+        final List<Integer> sizes = Lists.newArrayList();
+        final List<Long> sequences = Lists.newArrayList();
+        final Aggregator aggregator = new Aggregator(new ConsumingSender(flow -> {
+            sizes.add(flow.records.size());
+            sequences.add(flow.flowSequence());
+        }), 30);
+
+        for (int i = 0; i < 16; i++) {
+            aggregator.add(records(2), 1000000 + i * 1000, 10000 + i);
+        }
+
+        assertEquals(Lists.newArrayList(30), sizes);
+        assertEquals(Lists.newArrayList(0L), sequences);
+
+        aggregator.flush();
+
+        assertEquals(Lists.newArrayList(30, 2), sizes);
+        assertEquals(Lists.newArrayList(0L, 30L), sequences);
+
+        // Nothing pending
+        aggregator.flush();
+        assertEquals(2, sizes.size());
+    }
+
+    @Test
+    public void header() {
+        final List<Flow> flows = Lists.newArrayList();
+        final Aggregator aggregator = new Aggregator(new ConsumingSender(flows::add), 3);
+
+        aggregator.add(records(2), 1000000, 10000);
+        aggregator.add(records(2), 1001000, 11000);
+
+        assertEquals(1, flows.size());
+        assertEquals(Instant.ofEpochSecond(1001), flows.get(0).time());
+        assertEquals(11000, flows.get(0).uptimeMillis());
+    }
+
+    @Test
+    public void reusesFlow() {
+        final List<Flow> flows = Lists.newArrayList();
+        final List<Long> times = Lists.newArrayList();
+        final Aggregator aggregator = new Aggregator(new ConsumingSender(flow -> {
+            flows.add(flow);
+            times.add(flow.timeMillis());
+        }), 2);
+
+        aggregator.add(records(2), 1000000, 10000);
+        aggregator.add(records(2), 1001500, 11500);
+
+        assertEquals(2, flows.size());
+        assertSame(flows.get(0), flows.get(1));
+        assertEquals(Lists.newArrayList(1000000L, 1001500L), times);
+        assertEquals(11500, flows.get(1).uptimeMillis());
+        assertEquals(2L, flows.get(1).flowSequence());
+    }
+
+    @Test
+    public void recordsPerPacket() {
+        assertEquals(30, Aggregator.recordsPerPacket(1500));
+        assertEquals(30, Aggregator.recordsPerPacket(9000));
+        assertEquals(10, Aggregator.recordsPerPacket(576));
+    }
+}
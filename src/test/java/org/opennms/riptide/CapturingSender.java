@@ -0,0 +1,52 @@
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Captures a copy of all encoded packets sent together with their source.
+ *
+ * The captured packets can be inspected from another thread than the one sending them. Optionally, sending waits for a
+ * gate to be opened to simulate a slow target.
+ */
+class CapturingSender implements Simulation.Sender {
+    final List<ByteBuffer> packets = new CopyOnWriteArrayList<>();
+    final List<Inet4SockAddr> sources = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch gate;
+
+    volatile boolean closed = false;
+
+    CapturingSender() {
+        this(new CountDownLatch(0));
+    }
+
+    CapturingSender(final CountDownLatch gate) {
+        this.gate = gate;
+    }
+
+    @Override
+    public void send(final Flow flow) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        Uninterruptibles.awaitUninterruptibly(this.gate);
+
+        final ByteBuffer copy = ByteBuffer.allocate(packet.remaining());
+        copy.put(packet).flip();
+
+        this.sources.add(source);
+        this.packets.add(copy);
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+    }
+}
@@ -0,0 +1,116 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChannelSenderTest {
+
+    private DatagramChannel receiver;
+    private Inet4SockAddr target;
+    private Inet4SockAddr unreachable;
+
+    @Before
+    public void setUp() throws IOException {
+        this.receiver = DatagramChannel.open();
+        this.receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.receiver.configureBlocking(false);
+        this.target = addr(this.receiver);
+
+        // A port nobody listens on anymore
+        try (final DatagramChannel closed = DatagramChannel.open()) {
+            closed.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            this.unreachable = addr(closed);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.receiver.close();
+    }
+
+    private static Inet4SockAddr addr(final DatagramChannel channel) throws IOException {
+        final InetSocketAddress local = (InetSocketAddress) channel.getLocalAddress();
+        return new Inet4SockAddr((Inet4Address) local.getAddress(), local.getPort());
+    }
+
+    private int receive(final long timeoutMillis) throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(Encoder.MAX_PACKET_SIZE);
+
+        int received = 0;
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            buffer.clear();
+            if (this.receiver.receive(buffer) != null) {
+                received++;
+            } else {
+                Thread.sleep(10);
+            }
+        }
+        return received;
+    }
+
+    @Test
+    public void batchesUntilFullOrFlushed() throws Exception {
+        final Metrics metrics = new Metrics();
+        final ChannelSender sender = new ChannelSender(Arrays.asList(this.target), new NetflowV5Encoder(), 0, 4, metrics);
+
+        final Flow flow = NetflowV5EncoderTest.flow();
+        for (int i = 0; i < 3; i++) {
+            sender.send(flow);
+        }
+        assertEquals(0, this.receive(100));
+
+        // The fourth packet fills the batch
+        sender.send(flow);
+        assertEquals(4, this.receive(200));
+
+        sender.send(flow);
+        sender.flush();
+        assertEquals(1, this.receive(200));
+
+        // Closing sends out what is left
+        sender.send(flow);
+        sender.close();
+        assertEquals(1, this.receive(200));
+
+        assertEquals(6, sender.sent(0));
+        assertEquals(6, metrics.target(this.target).getDatagrams());
+    }
+
+    @Test
+    public void isolatesFailingTarget() throws Exception {
+        final Metrics metrics = new Metrics();
+        final ChannelSender sender = new ChannelSender(Arrays.asList(this.unreachable, this.target), new NetflowV5Encoder(), 0, 1, metrics);
+
+        final Flow flow = NetflowV5EncoderTest.flow();
+        for (int i = 0; i < 20; i++) {
+            sender.send(flow);
+            // Give the port unreachable message a chance to arrive
+            Thread.sleep(5);
+        }
+        sender.close();
+
+        // The reachable target gets every packet regardless of the failures of the other one
+        assertEquals(20, this.receive(300));
+        assertEquals(20, sender.sent(1));
+        assertEquals(0, sender.failed(1));
+        assertEquals(0, metrics.target(this.target).getErrors());
+
+        // The unreachable target reports its failures separately
+        assertTrue(sender.failed(0) > 0);
+        assertEquals(20, sender.sent(0) + sender.failed(0));
+        assertEquals(sender.failed(0), metrics.target(this.unreachable).getErrors());
+    }
+}
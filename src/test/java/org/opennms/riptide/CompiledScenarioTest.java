@@ -0,0 +1,112 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+
+public class CompiledScenarioTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TcpSession session(final Instant start, final String client, final int port) {
+        return TcpSession.builder()
+                .withClient(Endpoint.builder()
+                        .withAddress(client)
+                        .withGateway("10.0.0.254")
+                        .withSnmpInterface(3)
+                        .withAS(65001)
+                        .withMask((short) 24)
+                        .build())
+                .withServer(Endpoint.builder()
+                        .withAddress("192.168.1.1")
+                        .withPort(port)
+                        .withAS(65002)
+                        .withMask((short) 16)
+                        .build())
+                .withTimespan(new Timespan(start, start.plusSeconds(30)))
+                .withSendSize(1_000_000_000_000L)
+                .withSendPackets(5000)
+                .withRecvSize(4000)
+                .withRecvPackets(40)
+                .build();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        final Instant compiled = Instant.parse("2018-01-01T00:00:00Z");
+        final List<TcpSession> sessions = Arrays.asList(
+                session(compiled.plusMillis(1500), "10.0.0.1", 443),
+                session(compiled.minusSeconds(10), "10.0.0.2", 65535));
+
+        final Path file = this.folder.getRoot().toPath().resolve("scenario.bin");
+        assertEquals(2, CompiledScenario.compile(sessions.iterator(), file, compiled));
+        assertEquals(CompiledScenario.HEADER_SIZE + 2 * CompiledScenario.RECORD_SIZE, Files.size(file));
+        assertTrue(CompiledScenario.detect(file));
+
+        // Sessions are replayed relative to the anchor given on open
+        final Instant anchor = Instant.parse("2020-06-01T12:00:00Z");
+        try (final CompiledScenario scenario = CompiledScenario.open(file, anchor)) {
+            assertEquals(2, scenario.size());
+
+            final List<TcpSession> read = Lists.newArrayList(scenario);
+            assertFalse(scenario.hasNext());
+            assertEquals(2, scenario.count());
+
+            for (int i = 0; i < sessions.size(); i++) {
+                final TcpSession expected = sessions.get(i);
+                final TcpSession actual = read.get(i);
+
+                assertEquals(anchor.plus(Duration.between(compiled, expected.timespan.s)), actual.timespan.s);
+                assertEquals(expected.timespan.duration(), actual.timespan.duration());
+                assertEquals(expected.sendSize, actual.sendSize);
+                assertEquals(expected.sendPackets, actual.sendPackets);
+                assertEquals(expected.recvSize, actual.recvSize);
+                assertEquals(expected.recvPackets, actual.recvPackets);
+
+                assertEndpoint(expected.client, actual.client);
+                assertEndpoint(expected.server, actual.server);
+            }
+        }
+    }
+
+    private static void assertEndpoint(final Endpoint expected, final Endpoint actual) {
+        assertEquals(expected.address, actual.address);
+        assertEquals(expected.port, actual.port);
+        assertEquals(expected.gateway, actual.gateway);
+        assertEquals(expected.snmpInterface, actual.snmpInterface);
+        assertEquals(expected.as, actual.as);
+        assertEquals(expected.mask, actual.mask);
+    }
+
+    @Test
+    public void detect() throws IOException {
+        final Path yaml = this.folder.newFile("scenario.yaml").toPath();
+        Files.write(yaml, "sessions: []\n".getBytes());
+        assertFalse(CompiledScenario.detect(yaml));
+
+        assertFalse(CompiledScenario.detect(this.folder.getRoot().toPath().resolve("missing")));
+
+        final Path empty = this.folder.getRoot().toPath().resolve("empty.bin");
+        CompiledScenario.compile(Lists.<TcpSession>newArrayList().iterator(), empty, Instant.now());
+        assertTrue(CompiledScenario.detect(empty));
+
+        try (final CompiledScenario scenario = CompiledScenario.open(empty, Instant.now())) {
+            assertFalse(scenario.hasNext());
+        }
+    }
+}
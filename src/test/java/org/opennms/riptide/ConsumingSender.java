@@ -0,0 +1,25 @@
+package org.opennms.riptide;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Hands all flows sent to a consumer.
+ */
+class ConsumingSender implements Simulation.Sender {
+    private final Consumer<Flow> consumer;
+
+    ConsumingSender(final Consumer<Flow> consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void send(final Flow flow) {
+        this.consumer.accept(flow);
+    }
+
+    @Override
+    public void send(final ByteBuffer packet, final Inet4SockAddr source) {
+        throw new AssertionError("Unexpected encoded packet");
+    }
+}
@@ -0,0 +1,58 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class EngineTest {
+
+    private final static Instant ORIGIN = Instant.ofEpochSecond(1_500_000_000L);
+
+    private static TcpSession session() {
+        return TcpSession.builder()
+                .withClient(Endpoint.builder()
+                        .withAddress("10.0.0.1")
+                        .build())
+                .withServer(Endpoint.builder()
+                        .withAddress("192.168.1.1")
+                        .withPort(443)
+                        .build())
+                .withTimespan(new Timespan(ORIGIN, ORIGIN.plusSeconds(30)))
+                .build();
+    }
+
+    @Test(timeout = 10_000)
+    public void feedWithoutDefaultAggregator() throws Exception {
+        final Exporter exporter = Exporter.random(ORIGIN);
+
+        final AtomicLong records = new AtomicLong();
+        final Aggregator aggregator = new Aggregator(new ConsumingSender(flow -> records.addAndGet(flow.records.size())), 30, exporter);
+
+        final SessionFeed feed = new SessionFeed(2);
+        feed.put(session(), exporter);
+        feed.finish();
+
+        final Engine engine = new Engine(Duration.ofSeconds(10), SimulationClock.virtual(ORIGIN));
+        engine.feed(feed, e -> aggregator, 10);
+        engine.run();
+
+        // Both directions of three ticks
+        assertEquals(6, records.get());
+    }
+
+    @Test
+    public void addRequiresAggregator() {
+        final Engine engine = new Engine(Duration.ofSeconds(10), SimulationClock.virtual(ORIGIN));
+        try {
+            engine.add(session());
+            fail();
+        } catch (final IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet4Address;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.net.InetAddresses;
+
+public class ExporterTest {
+
+    @Test
+    public void gapFreeAcrossThreads() throws Exception {
+        final Exporter exporter = new Exporter(Simulation.ENGINE_TYPE, Simulation.ENGINE_ID, Instant.EPOCH);
+
+        final int threads = 4;
+        final int packets = 10_000;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int records = t + 1;
+                futures.add(executor.submit(() -> {
+                    // Encodes start and size of each reserved range
+                    final long[] ranges = new long[packets];
+                    for (int i = 0; i < packets; i++) {
+                        ranges[i] = exporter.reserve(records) << 8 | records;
+                    }
+                    return ranges;
+                }));
+            }
+
+            final long[] all = new long[threads * packets];
+            for (int t = 0; t < threads; t++) {
+                System.arraycopy(futures.get(t).get(), 0, all, t * packets, packets);
+            }
+            Arrays.sort(all);
+
+            long expected = 0;
+            for (final long range : all) {
+                assertEquals(expected, range >>> 8);
+                expected += range & 0xFF;
+            }
+
+            assertEquals(expected, exporter.sequence());
+            assertEquals(packets * (1 + 2 + 3 + 4), exporter.sequence());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void range() {
+        final Inet4SockAddr source = new Inet4SockAddr((Inet4Address) InetAddresses.forString("10.0.0.254"), 9995);
+        final Instant now = Instant.parse("2018-10-01T00:00:00Z");
+
+        final List<Exporter> exporters = Exporter.range(300, source, now);
+        assertEquals(300, exporters.size());
+
+        assertEquals(Simulation.ENGINE_TYPE, exporters.get(0).engineType);
+        assertEquals(Simulation.ENGINE_ID, exporters.get(0).engineId);
+
+        final Set<Integer> engines = new HashSet<>();
+        final Set<Instant> bootTimes = new HashSet<>();
+        for (final Exporter exporter : exporters) {
+            engines.add(exporter.engineType << 8 | exporter.engineId);
+            bootTimes.add(exporter.bootTime);
+            assertTrue(!exporter.bootTime.isAfter(now));
+        }
+        assertEquals(300, engines.size());
+        assertTrue(bootTimes.size() > 1);
+
+        // Addresses count up across octets
+        assertEquals(InetAddresses.forString("10.0.0.254"), exporters.get(0).source.addr);
+        assertEquals(InetAddresses.forString("10.0.1.0"), exporters.get(2).source.addr);
+        assertEquals(9995, exporters.get(2).source.port);
+
+        assertNull(Exporter.range(2, null, now).get(1).source);
+    }
+}
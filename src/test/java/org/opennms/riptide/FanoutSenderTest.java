@@ -0,0 +1,166 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.net.InetAddresses;
+
+public class FanoutSenderTest {
+
+    private final static Inet4SockAddr SOURCE = new Inet4SockAddr((Inet4Address) InetAddresses.forString("10.0.0.1"), 9995);
+    private final static Inet4SockAddr FAST = new Inet4SockAddr((Inet4Address) InetAddresses.forString("10.0.0.2"), 2055);
+    private final static Inet4SockAddr SLOW = new Inet4SockAddr((Inet4Address) InetAddresses.forString("10.0.0.3"), 2055);
+
+    @Test
+    public void slowTargetDoesNotStallOthers() throws Exception {
+        final Metrics metrics = new Metrics();
+        final CapturingSender fast = new CapturingSender();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CapturingSender slow = new CapturingSender(gate);
+
+        final FanoutSender sender = new FanoutSender(SOURCE, Arrays.asList(FAST, SLOW), new NetflowV5Encoder(), Encoder.MAX_PACKET_SIZE,
+                target -> target == FAST ? fast : slow,
+                4, FanoutSender.Overflow.DROP, metrics);
+
+        // The slow lane gets stuck on its first packet while the fast one sends it
+        final Flow flow = NetflowV5EncoderTest.flow();
+        sender.send(flow);
+        while (sender.backlog(0) > 0 || sender.backlog(1) > 0) {
+            Thread.sleep(1);
+        }
+
+        // The fast lane keeps up with bursts fitting into its queue
+        for (int i = 1; i < 100; i++) {
+            sender.send(flow);
+            if (i % 4 == 0) {
+                while (sender.backlog(0) > 0) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+
+        gate.countDown();
+        sender.close();
+
+        assertTrue(fast.closed);
+        assertTrue(slow.closed);
+
+        // The slow lane holds one packet in flight and its queue is full
+        assertEquals(100 - 1 - 4, sender.dropped(1));
+        assertEquals(100, fast.packets.size());
+        assertEquals(5, slow.packets.size());
+        assertEquals(0, sender.dropped(0));
+        assertEquals(95, metrics.target(SLOW).getDropped());
+        assertEquals(0, metrics.target(FAST).getDropped());
+
+        // Both lanes got the same encoded bytes
+        final ByteBuffer expected = ByteBuffer.allocate(Encoder.MAX_PACKET_SIZE);
+        new NetflowV5Encoder().encode(flow, expected);
+        expected.flip();
+        final byte[] bytes = new byte[expected.remaining()];
+        expected.get(bytes);
+        assertArrayEquals(bytes, fast.packets.get(0).array());
+        assertArrayEquals(bytes, slow.packets.get(0).array());
+
+        // The source is passed on to all lanes
+        for (final Inet4SockAddr source : Iterables.concat(fast.sources, slow.sources)) {
+            assertSame(SOURCE, source);
+        }
+    }
+
+    @Test
+    public void blockKeepsAllPackets() throws Exception {
+        final Metrics metrics = new Metrics();
+        final CapturingSender fast = new CapturingSender();
+        final CapturingSender slow = new CapturingSender();
+
+        final FanoutSender sender = new FanoutSender(SOURCE, Arrays.asList(FAST, SLOW), new NetflowV5Encoder(), Encoder.MAX_PACKET_SIZE,
+                target -> target == FAST ? fast : slow,
+                2, FanoutSender.Overflow.BLOCK, metrics);
+
+        final ByteBuffer packet = ByteBuffer.allocate(16);
+        for (int i = 0; i < 1000; i++) {
+            packet.clear();
+            packet.putInt(i);
+            packet.flip();
+            sender.send(packet, SOURCE);
+        }
+        sender.close();
+
+        assertEquals(1000, fast.packets.size());
+        assertEquals(1000, slow.packets.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, fast.packets.get(i).getInt(0));
+            assertEquals(i, slow.packets.get(i).getInt(0));
+        }
+        assertEquals(0, metrics.target(SLOW).getDropped());
+    }
+
+    @Test
+    public void dropsOversizedPackets() throws Exception {
+        final Metrics metrics = new Metrics();
+        final CapturingSender fast = new CapturingSender();
+        final CapturingSender slow = new CapturingSender();
+
+        final FanoutSender sender = new FanoutSender(SOURCE, Arrays.asList(FAST, SLOW), new NetflowV5Encoder(), 64,
+                target -> target == FAST ? fast : slow,
+                4, FanoutSender.Overflow.BLOCK, metrics);
+
+        sender.send(ByteBuffer.allocate(64), SOURCE);
+        sender.send(ByteBuffer.allocate(65), SOURCE);
+        sender.close();
+
+        assertEquals(1, fast.packets.size());
+        assertEquals(1, slow.packets.size());
+        assertEquals(1, sender.dropped(0));
+        assertEquals(1, sender.dropped(1));
+        assertEquals(1, metrics.target(SLOW).getDropped());
+    }
+
+    @Test(timeout = 10_000)
+    public void interruptReleasesSkippedLanes() throws Exception {
+        final Metrics metrics = new Metrics();
+        final CapturingSender fast = new CapturingSender();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CapturingSender slow = new CapturingSender(gate);
+
+        final FanoutSender sender = new FanoutSender(SOURCE, Arrays.asList(FAST, SLOW), new NetflowV5Encoder(), 64,
+                target -> target == FAST ? fast : slow,
+                1, FanoutSender.Overflow.BLOCK, metrics);
+
+        // The slow lane gets stuck on the first packet and the second one fills its queue
+        sender.send(ByteBuffer.allocate(16), SOURCE);
+        while (sender.backlog(1) > 0) {
+            Thread.sleep(1);
+        }
+        sender.send(ByteBuffer.allocate(16), SOURCE);
+
+        // The third packet reaches the fast lane but blocks on the slow one
+        final Thread producer = new Thread(() -> sender.send(ByteBuffer.allocate(16), SOURCE));
+        producer.start();
+        while (producer.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        producer.interrupt();
+        producer.join();
+
+        gate.countDown();
+        sender.close();
+
+        assertEquals(3, fast.packets.size());
+        assertEquals(2, slow.packets.size());
+
+        // No packet leaked from the pool
+        assertEquals(3, sender.pooled());
+    }
+}
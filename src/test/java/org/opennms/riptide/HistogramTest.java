@@ -0,0 +1,57 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void buckets() {
+        // Small values are exact
+        for (long v = 0; v < 128; v++) {
+            assertEquals(v, Histogram.highest(Histogram.index(v)));
+        }
+
+        // Larger values are within the relative error
+        final Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            final long v = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            final long highest = Histogram.highest(Histogram.index(v));
+
+            assertTrue(highest >= v);
+            assertTrue((highest - v) <= v / 63);
+        }
+
+        assertEquals(Long.MAX_VALUE, Histogram.highest(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentiles() {
+        final Histogram histogram = new Histogram();
+        for (long v = 1; v <= 100_000; v++) {
+            histogram.record(v);
+        }
+
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000, histogram.max());
+        assertEquals(50_000, histogram.mean());
+
+        assertEquals(50_000, histogram.percentile(50.0), 50_000 / 63);
+        assertEquals(99_000, histogram.percentile(99.0), 99_000 / 63);
+        assertEquals(1, histogram.percentile(0.0));
+        assertEquals(100_000, histogram.percentile(100.0));
+    }
+
+    @Test
+    public void empty() {
+        final Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.mean());
+        assertEquals(0, histogram.percentile(99.0));
+    }
+}
@@ -0,0 +1,112 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Test;
+
+import com.google.common.net.InetAddresses;
+
+public class IpfixEncoderTest {
+    private final static Instant TIME = Instant.parse("2018-10-01T00:00:00Z");
+
+    private static Flow flow(final int records) {
+        final Flow.Builder builder = Flow.builder()
+                .withUptime(Duration.ofMinutes(10))
+                .withTime(TIME)
+                .withFlowSequence(0x0D0E0F10L)
+                .withEngineType((short) 0x20)
+                .withEngineId((short) 0x21);
+
+        for (int i = 0; i < records; i++) {
+            builder.withRecord(FlowRecord.builder()
+                    .withSrcAddr((Inet4Address) InetAddresses.forString("10.0.0." + i))
+                    .withDstAddr((Inet4Address) InetAddresses.forString("10.0.1.1"))
+                    .withNextHop((Inet4Address) InetAddresses.forString("10.0.0.254"))
+                    .withFirstUptime(Duration.ofMinutes(5))
+                    .withLastUptime(Duration.ofMinutes(9))
+                    .withProtocol((short) 6));
+        }
+
+        return builder.build();
+    }
+
+    @Test
+    public void layout() {
+        final RecordTemplate template = new RecordTemplate(300,
+                FlowField.SRC_ADDR,
+                FlowField.PROTOCOL,
+                FlowField.FLOW_START_MILLISECONDS,
+                FlowField.FLOW_END_MILLISECONDS);
+        final IpfixEncoder encoder = new IpfixEncoder(template, 10, Duration.ofMinutes(1));
+
+        final Flow flow = flow(3);
+        final ByteBuffer buffer = ByteBuffer.allocate(encoder.size(flow));
+        encoder.encode(flow, buffer);
+
+        // Header
+        assertEquals(10, buffer.getShort(0));
+        assertEquals(buffer.position(), buffer.getShort(2));
+        assertEquals(TIME.getEpochSecond(), buffer.getInt(4));
+        assertEquals(0x0D0E0F10, buffer.getInt(8));
+        assertEquals(0x2021, buffer.getInt(12));
+
+        // Template set
+        assertEquals(2, buffer.getShort(16));
+        assertEquals(4 + 4 + 4 * 4, buffer.getShort(18));
+        assertEquals(300, buffer.getShort(20));
+        assertEquals(4, buffer.getShort(22));
+        assertEquals(152, buffer.getShort(32));
+        assertEquals(8, buffer.getShort(34));
+
+        // Data set with three records of 21 bytes padded to 32 bit
+        final int set = 16 + 24;
+        assertEquals(300, buffer.getShort(set));
+        assertEquals(4 + 3 * 21 + 1, buffer.getShort(set + 2));
+        assertEquals(set + 4 + 3 * 21 + 1, buffer.position());
+
+        final long boot = TIME.toEpochMilli() - Duration.ofMinutes(10).toMillis();
+        for (int i = 0; i < 3; i++) {
+            final int record = set + 4 + i * 21;
+            assertEquals(0x0A000000 + i, buffer.getInt(record));
+            assertEquals(6, buffer.get(record + 4));
+            assertEquals(boot + Duration.ofMinutes(5).toMillis(), buffer.getLong(record + 5));
+            assertEquals(boot + Duration.ofMinutes(9).toMillis(), buffer.getLong(record + 13));
+        }
+    }
+
+    @Test
+    public void withoutTemplate() {
+        final IpfixEncoder encoder = new IpfixEncoder();
+
+        final Flow flow = flow(2);
+        final ByteBuffer first = ByteBuffer.allocate(encoder.size(flow));
+        encoder.encode(flow, first);
+
+        final ByteBuffer second = ByteBuffer.allocate(encoder.size(flow));
+        encoder.encode(flow, second);
+
+        assertEquals(2, first.getShort(16));
+        assertEquals(256, second.getShort(16));
+        assertEquals(second.position(), second.getShort(2));
+        assertTrue(second.position() < first.position());
+    }
+
+    @Test
+    public void messageSize() {
+        final IpfixEncoder encoder = new IpfixEncoder();
+
+        for (final int mtu : new int[]{576, 1500, 9000}) {
+            final Flow flow = flow(Aggregator.recordsPerPacket(encoder, mtu));
+            assertTrue(encoder.size(flow) <= mtu - 28);
+
+            final Flow exceeding = flow(Aggregator.recordsPerPacket(encoder, mtu) + 1);
+            assertTrue(encoder.size(exceeding) > mtu - 28);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class LongMapTest {
+
+    @Test
+    public void putAndGet() {
+        final LongMap<String> map = new LongMap<>();
+        assertNull(map.get(0L));
+
+        // Enough keys to grow several times, including ones colliding in the low bits
+        for (long i = 0; i < 1000; i++) {
+            map.put(i << 32, "v" + i);
+        }
+        map.put(-1L, "minus");
+
+        assertEquals(1001, map.size());
+        for (long i = 0; i < 1000; i++) {
+            assertEquals("v" + i, map.get(i << 32));
+        }
+        assertEquals("minus", map.get(-1L));
+        assertNull(map.get(1L));
+
+        // Replacing keeps the size
+        map.put(0L, "zero");
+        assertEquals("zero", map.get(0L));
+        assertEquals(1001, map.size());
+    }
+
+    @Test
+    public void values() {
+        final LongMap<Long> map = new LongMap<>();
+        for (long i = 0; i < 100; i++) {
+            map.put(i * 7, i);
+        }
+
+        final Set<Long> values = Sets.newHashSet(map.values());
+        assertEquals(100, values.size());
+        for (long i = 0; i < 100; i++) {
+            assertTrue(values.contains(i));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet4Address;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Test;
+
+import com.google.common.net.InetAddresses;
+
+public class MetricsTest {
+
+    @Test
+    public void prometheus() {
+        final Metrics metrics = new Metrics();
+        final Metrics.Target target = metrics.target(new Inet4SockAddr((Inet4Address) InetAddresses.forString("10.0.0.1"), 2055));
+
+        final MeteredSender sender = new MeteredSender(new ConsumingSender(flow -> target.sent(72)), metrics);
+        for (int i = 0; i < 3; i++) {
+            sender.send(Flow.builder()
+                    .withUptime(Duration.ZERO)
+                    .withTime(Instant.EPOCH)
+                    .withRecord(FlowRecord.builder()
+                            .withSrcAddr((Inet4Address) InetAddresses.forString("10.0.0.1"))
+                            .withDstAddr((Inet4Address) InetAddresses.forString("10.0.0.2"))
+                            .withNextHop((Inet4Address) InetAddresses.forString("10.0.0.254")))
+                    .build());
+        }
+        target.failed();
+
+        assertEquals(3, metrics.flows());
+        assertEquals(3, metrics.records());
+        assertEquals(3, metrics.sendLatency().count());
+
+        final StringBuilder out = new StringBuilder();
+        metrics.prometheus(out);
+        final String text = out.toString();
+
+        assertTrue(text.contains("\nriptide_flows_total 3\n"));
+        assertTrue(text.contains("\nriptide_records_total 3\n"));
+        assertTrue(text.contains("\nriptide_datagrams_total{target=\"10.0.0.1:2055\"} 3\n"));
+        assertTrue(text.contains("\nriptide_bytes_total{target=\"10.0.0.1:2055\"} 216\n"));
+        assertTrue(text.contains("\nriptide_send_errors_total{target=\"10.0.0.1:2055\"} 1\n"));
+        assertTrue(text.contains("\nriptide_send_latency_seconds_count 3\n"));
+        assertTrue(text.contains("# TYPE riptide_tick_lateness_seconds summary\n"));
+    }
+}
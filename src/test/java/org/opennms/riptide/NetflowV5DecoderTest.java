@@ -0,0 +1,52 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class NetflowV5DecoderTest {
+
+    @Test
+    public void roundTrip() {
+        final Flow flow = NetflowV5EncoderTest.flow();
+
+        final ByteBuffer buffer = flow.write();
+        buffer.flip();
+
+        final NetflowV5Decoder decoder = new NetflowV5Decoder();
+        assertTrue(decoder.decode(buffer));
+        assertEquals(0, buffer.position());
+
+        assertEquals(flow.uptimeMillis(), decoder.uptime());
+        assertEquals(flow.time().getEpochSecond() * 1_000_000L + flow.time().getNano() / 1000L, decoder.timeMicros());
+        assertEquals(flow.flowSequence(), decoder.flowSequence());
+        assertEquals(flow.engineType(), decoder.engineType());
+        assertEquals(flow.engineId(), decoder.engineId());
+        assertEquals(flow.samplingMode().value, decoder.samplingMode());
+        assertEquals(flow.samplingInterval(), decoder.samplingInterval());
+
+        assertEquals(1, decoder.count());
+        assertEquals(flow.records.get(0).toString(), decoder.records().get(0).toString());
+    }
+
+    @Test
+    public void invalid() {
+        final NetflowV5Decoder decoder = new NetflowV5Decoder();
+
+        // Wrong version
+        final ByteBuffer v9 = ByteBuffer.allocate(100);
+        v9.putShort(0, (short) 9);
+        assertFalse(decoder.decode(v9));
+
+        // Truncated records
+        final ByteBuffer buffer = NetflowV5EncoderTest.flow().write();
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+        assertFalse(decoder.decode(buffer));
+        assertEquals(0, decoder.count());
+    }
+}
@@ -0,0 +1,124 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.net.InetAddresses;
+
+public class NetflowV5EncoderTest {
+    static Flow flow() {
+        return Flow.builder()
+                .withUptime(Duration.ofMillis(0x01020304L))
+                .withTime(Instant.ofEpochSecond(0x05060708L, 0x090A0B0CL))
+                .withFlowSequence(0x0D0E0F10L)
+                .withEngineType((short) 0x20)
+                .withEngineId((short) 0x21)
+                .withSamplingMode(Flow.SamplingMode.SystematicCountBased)
+                .withSamplingInterval(0x0123)
+                .withRecord(FlowRecord.builder()
+                        .withSrcAddr((Inet4Address) InetAddresses.forString("10.0.0.1"))
+                        .withDstAddr((Inet4Address) InetAddresses.forString("10.0.0.2"))
+                        .withNextHop((Inet4Address) InetAddresses.forString("192.168.255.254"))
+                        .withSnmpInputIface(0x1112)
+                        .withSnmpOutputIface(0x1314)
+                        .withPackets(0xF1F2F3F4L)
+                        .withOctets(0x15161718L)
+                        .withFirstUptime(Duration.ofMillis(0x191A1B1CL))
+                        .withLastUptime(Duration.ofMillis(0x1D1E1F20L))
+                        .withSrcPort(0xFFEE)
+                        .withDstPort(0x0050)
+                        .withTcpFlags((short) 0xDA)
+                        .withProtocol((short) 0x06)
+                        .withTos((short) 0xB8)
+                        .withSrcAS(0x2122)
+                        .withDstAS(0x2324)
+                        .withSrcMask((short) 24)
+                        .withDstMask((short) 16)
+                        .withEgress(true))
+                .build();
+    }
+
+    @Test
+    public void layout() {
+        final ByteBuffer buffer = ByteBuffer.allocate(100);
+        new NetflowV5Encoder().encode(flow(), buffer);
+
+        assertEquals(24 + 48, buffer.position());
+
+        assertEquals(5, buffer.getShort(0));
+        assertEquals(1, buffer.getShort(2));
+        assertEquals(0x01020304, buffer.getInt(4));
+        assertEquals(0x05060708, buffer.getInt(8));
+        assertEquals(0x090A0B0C, buffer.getInt(12));
+        assertEquals(0x0D0E0F10, buffer.getInt(16));
+        assertEquals(0x20, buffer.get(20));
+        assertEquals(0x21, buffer.get(21));
+        assertEquals(0x4123, buffer.getShort(22));
+
+        assertArrayEquals(new byte[] {
+                10, 0, 0, 1,
+                10, 0, 0, 2,
+                (byte) 192, (byte) 168, (byte) 255, (byte) 254,
+                0x11, 0x12, 0x13, 0x14,
+                (byte) 0xF1, (byte) 0xF2, (byte) 0xF3, (byte) 0xF4,
+                0x15, 0x16, 0x17, 0x18,
+                0x19, 0x1A, 0x1B, 0x1C,
+                0x1D, 0x1E, 0x1F, 0x20,
+                (byte) 0xFF, (byte) 0xEE, 0x00, 0x50,
+                0x00, (byte) 0xDA, 0x06, (byte) 0xB8,
+                0x21, 0x22, 0x23, 0x24,
+                24, 16, 0x00, (byte) 0x80,
+        }, Arrays.copyOfRange(buffer.array(), 24, 72));
+    }
+
+    @Test
+    public void direct() {
+        final Flow flow = flow();
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(Encoder.MAX_PACKET_SIZE);
+        direct.position(28);
+        new NetflowV5Encoder().encode(flow, direct);
+        direct.flip().position(28);
+
+        final byte[] bytes = new byte[direct.remaining()];
+        direct.get(bytes);
+
+        assertArrayEquals(flow.write().array(), bytes);
+    }
+
+    @Test
+    public void uptimeWrap() {
+        // The exporter has been up for more than 2^32 ms and the header wrapped after the record started
+        final long uptime = (1L << 32) + 1000;
+        final long first = (1L << 32) - 5000;
+
+        final Flow flow = Flow.builder()
+                .withUptime(Duration.ofMillis(uptime))
+                .withTime(Instant.EPOCH)
+                .withRecord(FlowRecord.builder()
+                        .withSrcAddr((Inet4Address) InetAddresses.forString("10.0.0.1"))
+                        .withDstAddr((Inet4Address) InetAddresses.forString("10.0.0.2"))
+                        .withNextHop((Inet4Address) InetAddresses.forString("10.0.0.254"))
+                        .withFirstUptime(Duration.ofMillis(first))
+                        .withLastUptime(Duration.ofMillis(uptime)))
+                .build();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(100);
+        new NetflowV5Encoder().encode(flow, buffer);
+
+        assertEquals(1000, buffer.getInt(4));
+        assertEquals(0xFFFFEC78, buffer.getInt(24 + 24));
+        assertEquals(1000, buffer.getInt(24 + 28));
+
+        // Collectors calculate the age of a record modulo 2^32
+        assertEquals(6000L, (buffer.getInt(4) - buffer.getInt(24 + 24)) & 0xFFFFFFFFL);
+    }
+}
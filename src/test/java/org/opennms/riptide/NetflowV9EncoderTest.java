@@ -0,0 +1,146 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Test;
+
+import com.google.common.net.InetAddresses;
+
+public class NetflowV9EncoderTest {
+    private final static int TEMPLATE_FLOWSET_SIZE = 4 + 4 + 19 * 4;
+    private final static int RECORD_SIZE = 54;
+
+    private static Flow flow(final long packetSequence, final Instant time) {
+        return Flow.builder()
+                .withUptime(Duration.ofMillis(0x01020304L))
+                .withTime(time)
+                .withPacketSequence(packetSequence)
+                .withEngineType((short) 0x20)
+                .withEngineId((short) 0x21)
+                .withRecord(FlowRecord.builder()
+                        .withSrcAddr((Inet4Address) InetAddresses.forString("10.0.0.1"))
+                        .withDstAddr((Inet4Address) InetAddresses.forString("10.0.0.2"))
+                        .withNextHop((Inet4Address) InetAddresses.forString("192.168.255.254"))
+                        .withSnmpInputIface(0x1112)
+                        .withSnmpOutputIface(0x1314)
+                        .withPackets(0xF1F2F3F4L)
+                        .withOctets(0x15161718L)
+                        .withFirstUptime(Duration.ofMillis(0x191A1B1CL))
+                        .withLastUptime(Duration.ofMillis(0x1D1E1F20L))
+                        .withSrcPort(0xFFEE)
+                        .withDstPort(0x0050)
+                        .withTcpFlags((short) 0xDA)
+                        .withProtocol((short) 0x06)
+                        .withTos((short) 0xB8)
+                        .withSrcAS(0x2122)
+                        .withDstAS(0x2324)
+                        .withSrcMask((short) 24)
+                        .withDstMask((short) 16)
+                        .withEgress(true))
+                .build();
+    }
+
+    @Test
+    public void layout() {
+        final Flow flow = flow(0x0D0E0F10L, Instant.ofEpochSecond(0x05060708L));
+
+        final NetflowV9Encoder encoder = new NetflowV9Encoder();
+        final ByteBuffer buffer = ByteBuffer.allocate(encoder.size(flow));
+        encoder.encode(flow, buffer);
+
+        // Header with template record and one data record
+        assertEquals(9, buffer.getShort(0));
+        assertEquals(2, buffer.getShort(2));
+        assertEquals(0x01020304, buffer.getInt(4));
+        assertEquals(0x05060708, buffer.getInt(8));
+        assertEquals(0x0D0E0F10, buffer.getInt(12));
+        assertEquals(0x2021, buffer.getInt(16));
+
+        // Template FlowSet
+        assertEquals(0, buffer.getShort(20));
+        assertEquals(TEMPLATE_FLOWSET_SIZE, buffer.getShort(22));
+        assertEquals(256, buffer.getShort(24));
+        assertEquals(19, buffer.getShort(26));
+        assertEquals(FlowField.SRC_ADDR.type, buffer.getShort(28));
+        assertEquals(4, buffer.getShort(30));
+
+        // Data FlowSet padded to 32 bit
+        final int data = 20 + TEMPLATE_FLOWSET_SIZE;
+        assertEquals(256, buffer.getShort(data));
+        assertEquals(4 + RECORD_SIZE + 2, buffer.getShort(data + 2));
+        assertEquals(data + 4 + RECORD_SIZE + 2, buffer.position());
+        assertTrue(buffer.position() <= encoder.size(flow));
+
+        assertEquals(0x0A000001, buffer.getInt(data + 4));
+        assertEquals(0x0A000002, buffer.getInt(data + 8));
+        assertEquals(0xC0A8FFFE, buffer.getInt(data + 12));
+        assertEquals(0x1112, buffer.getShort(data + 16));
+        assertEquals(0x1314, buffer.getShort(data + 18));
+        assertEquals(0xF1F2F3F4L, buffer.getLong(data + 20));
+        assertEquals(0x15161718L, buffer.getLong(data + 28));
+        assertEquals(0x191A1B1C, buffer.getInt(data + 36));
+        assertEquals(0x1D1E1F20, buffer.getInt(data + 40));
+        assertEquals((short) 0xFFEE, buffer.getShort(data + 44));
+        assertEquals(0x0050, buffer.getShort(data + 46));
+        assertEquals((byte) 0xDA, buffer.get(data + 48));
+        assertEquals(0x06, buffer.get(data + 49));
+        assertEquals((byte) 0xB8, buffer.get(data + 50));
+        assertEquals(0x2122, buffer.getShort(data + 51));
+        assertEquals(0x2324, buffer.getShort(data + 53));
+        assertEquals(24, buffer.get(data + 55));
+        assertEquals(16, buffer.get(data + 56));
+        assertEquals(1, buffer.get(data + 57));
+    }
+
+    private static boolean withTemplate(final NetflowV9Encoder encoder, final Flow flow) {
+        final ByteBuffer buffer = ByteBuffer.allocate(encoder.size(flow));
+        encoder.encode(flow, buffer);
+        return buffer.getShort(20) == 0;
+    }
+
+    @Test
+    public void refreshByPackets() {
+        final NetflowV9Encoder encoder = new NetflowV9Encoder(NetflowV9Encoder.DEFAULT_TEMPLATE, 3, Duration.ofHours(1));
+
+        final Instant now = Instant.now();
+        assertTrue(withTemplate(encoder, flow(0, now)));
+        assertFalse(withTemplate(encoder, flow(1, now)));
+        assertFalse(withTemplate(encoder, flow(2, now)));
+        assertTrue(withTemplate(encoder, flow(3, now)));
+        assertFalse(withTemplate(encoder, flow(4, now)));
+    }
+
+    @Test
+    public void refreshByTime() {
+        final NetflowV9Encoder encoder = new NetflowV9Encoder(NetflowV9Encoder.DEFAULT_TEMPLATE, 1000, Duration.ofSeconds(10));
+
+        final Instant now = Instant.now();
+        assertTrue(withTemplate(encoder, flow(0, now)));
+        assertFalse(withTemplate(encoder, flow(1, now.plusSeconds(9))));
+        assertTrue(withTemplate(encoder, flow(2, now.plusSeconds(10))));
+        assertFalse(withTemplate(encoder, flow(3, now.plusSeconds(11))));
+    }
+
+    @Test
+    public void packedToMtu() {
+        final NetflowV9Encoder encoder = new NetflowV9Encoder();
+        final int records = Aggregator.recordsPerPacket(encoder, 1500);
+        assertEquals((1500 - 28 - 20 - TEMPLATE_FLOWSET_SIZE - 4 - 3) / RECORD_SIZE, records);
+
+        final FlowRecordBatch batch = new FlowRecordBatch(records);
+        final Flow template = flow(0, Instant.now());
+        while (!batch.isFull()) {
+            batch.add(template.records, 0);
+        }
+
+        final Flow flow = Flow.builder().withRecords(batch).build();
+        assertTrue(encoder.size(flow) <= 1500 - 28);
+    }
+}
@@ -0,0 +1,102 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class PacerTest {
+    @Test
+    public void absoluteDeadlines() {
+        final Pacer pacer = new Pacer();
+
+        final long start = System.nanoTime();
+        for (int i = 1; i <= 100; i++) {
+            final long lateness = pacer.awaitNanos(start + i * 1_000_000L);
+            assertTrue(lateness >= 0);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        assertEquals(100, pacer.count());
+
+        // Lateness does not accumulate
+        assertEquals(100_000_000L, elapsed, 5_000_000L);
+    }
+
+    @Test
+    public void pastDeadline() {
+        final Pacer pacer = new Pacer();
+
+        final long lateness = pacer.awaitNanos(System.nanoTime() - 1_000_000L);
+        assertTrue(lateness >= 1_000_000L);
+        assertEquals(lateness, pacer.maxLateness());
+    }
+
+    @Test
+    public void interruptKeepsStatus() {
+        final Pacer pacer = new Pacer();
+
+        Thread.currentThread().interrupt();
+
+        final long start = System.nanoTime();
+        final long lateness = pacer.awaitNanos(start + 1_000_000_000L);
+
+        // Returns early and leaves the interrupt status for the caller
+        assertTrue(lateness < 0);
+        assertTrue(System.nanoTime() - start < 500_000_000L);
+        assertTrue(Thread.interrupted());
+        assertEquals(0, pacer.count());
+    }
+
+    private static SimulationClock stopped(final long now, final Pacer.CatchUp catchUp) {
+        return new SimulationClock() {
+            @Override
+            public long millis() {
+                return now;
+            }
+
+            @Override
+            public void sleepUntil(final long deadline) {
+            }
+
+            @Override
+            public Pacer.CatchUp catchUp() {
+                return catchUp;
+            }
+        };
+    }
+
+    @Test
+    public void sleeperBurst() {
+        final Timespan timespan = new Timespan(Instant.ofEpochSecond(0), Instant.ofEpochSecond(100));
+        final Simulation.Sleeper sleeper = new Simulation.Sleeper(timespan.ticker(Duration.ofSeconds(30)), stopped(65_000, Pacer.CatchUp.BURST));
+
+        final List<Timespan> ticks = Lists.newArrayList(sleeper);
+        assertEquals(4, ticks.size());
+    }
+
+    @Test
+    public void sleeperSkip() {
+        final Timespan timespan = new Timespan(Instant.ofEpochSecond(0), Instant.ofEpochSecond(100));
+        final Simulation.Sleeper sleeper = new Simulation.Sleeper(timespan.ticker(Duration.ofSeconds(30)), stopped(65_000, Pacer.CatchUp.SKIP));
+
+        final List<Timespan> ticks = Lists.newArrayList(sleeper);
+        assertEquals(3, ticks.size());
+
+        // Missed ticks are merged
+        assertEquals(0, ticks.get(0).s.getEpochSecond());
+        assertEquals(60, ticks.get(0).e.getEpochSecond());
+
+        assertEquals(60, ticks.get(1).s.getEpochSecond());
+        assertEquals(90, ticks.get(1).e.getEpochSecond());
+
+        assertEquals(90, ticks.get(2).s.getEpochSecond());
+        assertEquals(100, ticks.get(2).e.getEpochSecond());
+    }
+}
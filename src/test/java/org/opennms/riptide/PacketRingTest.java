@@ -0,0 +1,193 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class PacketRingTest {
+
+    private final static Inet4SockAddr SOURCE = new Inet4SockAddr((Inet4Address) InetAddresses.forString("10.0.0.1"), 9995);
+
+    private static void publish(final PacketRing ring, final int value) {
+        final long position = ring.claim(Integer.BYTES);
+        if (position >= 0) {
+            ring.buffer(position).putInt(value);
+            ring.publish(position, SOURCE);
+        }
+    }
+
+    private static int take(final PacketRing ring) {
+        final long position = ring.poll();
+        assertTrue(position >= 0);
+        assertSame(SOURCE, ring.source(position));
+
+        final int value = ring.buffer(position).getInt();
+        ring.release(position);
+        return value;
+    }
+
+    @Test
+    public void rejectsOversizedRegion() {
+        // 65536 slots of the largest UDP payload would overflow an int
+        try {
+            new PacketRing(1 << 16, Encoder.MAX_PACKET_SIZE, PacketRing.Producers.SINGLE, PacketRing.WaitStrategy.SPIN, PacketRing.FullPolicy.BLOCK);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("exceed"));
+        }
+    }
+
+    @Test
+    public void wrapsAround() {
+        final PacketRing ring = new PacketRing(4, 16, PacketRing.Producers.SINGLE, PacketRing.WaitStrategy.SPIN, PacketRing.FullPolicy.DROP_NEWEST);
+
+        for (int i = 0; i < 10; i++) {
+            publish(ring, i);
+            publish(ring, i + 100);
+            assertEquals(i, take(ring));
+            assertEquals(i + 100, take(ring));
+        }
+
+        assertEquals(-1, ring.poll());
+        assertEquals(20, ring.published());
+    }
+
+    @Test
+    public void dropNewest() {
+        final PacketRing ring = new PacketRing(4, 16, PacketRing.Producers.SINGLE, PacketRing.WaitStrategy.SPIN, PacketRing.FullPolicy.DROP_NEWEST);
+        for (int i = 0; i < 6; i++) {
+            publish(ring, i);
+        }
+
+        assertEquals(4, ring.published());
+        assertEquals(2, ring.droppedNewest());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, take(ring));
+        }
+    }
+
+    @Test
+    public void dropOldest() {
+        final PacketRing ring = new PacketRing(4, 16, PacketRing.Producers.SINGLE, PacketRing.WaitStrategy.SPIN, PacketRing.FullPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++) {
+            publish(ring, i);
+        }
+
+        assertEquals(6, ring.published());
+        assertEquals(2, ring.droppedOldest());
+        for (int i = 2; i < 6; i++) {
+            assertEquals(i, take(ring));
+        }
+    }
+
+    @Test
+    public void oversized() {
+        final PacketRing ring = new PacketRing(4, 16, PacketRing.Producers.SINGLE, PacketRing.WaitStrategy.SPIN, PacketRing.FullPolicy.BLOCK);
+
+        assertEquals(-1, ring.claim(17));
+        assertEquals(1, ring.oversized());
+        assertEquals(-1, ring.poll());
+    }
+
+    @Test
+    public void blockWaitsForConsumer() throws Exception {
+        final PacketRing ring = new PacketRing(4, 16, PacketRing.Producers.SINGLE, PacketRing.WaitStrategy.PARK, PacketRing.FullPolicy.BLOCK);
+        final CapturingSender collector = new CapturingSender();
+
+        final Thread consumer = new Thread(() -> ring.drain(collector));
+        consumer.start();
+
+        for (int i = 0; i < 10_000; i++) {
+            publish(ring, i);
+        }
+        ring.close();
+        consumer.join();
+
+        assertEquals(10_000, collector.packets.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, collector.packets.get(i).getInt(0));
+            assertSame(SOURCE, collector.sources.get(i));
+        }
+        assertEquals(0, ring.droppedNewest());
+    }
+
+    @Test
+    public void multipleProducersAndConsumers() throws Exception {
+        final PacketRing ring = new PacketRing(64, 16, PacketRing.Producers.MULTI, PacketRing.WaitStrategy.YIELD, PacketRing.FullPolicy.BLOCK);
+
+        final List<CapturingSender> collectors = Lists.newArrayList();
+        final List<Thread> consumers = Lists.newArrayList();
+        for (int i = 0; i < 2; i++) {
+            final CapturingSender collector = new CapturingSender();
+            final Thread consumer = new Thread(() -> ring.drain(collector));
+            consumer.start();
+            collectors.add(collector);
+            consumers.add(consumer);
+        }
+
+        final List<Thread> producers = Lists.newArrayList();
+        for (int p = 0; p < 4; p++) {
+            final int producer = p;
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 25_000; i++) {
+                    publish(ring, producer * 25_000 + i);
+                }
+            });
+            thread.start();
+            producers.add(thread);
+        }
+
+        producers.forEach(Uninterruptibles::joinUninterruptibly);
+        ring.close();
+        consumers.forEach(Uninterruptibles::joinUninterruptibly);
+
+        // Every packet arrives exactly once
+        final boolean[] seen = new boolean[100_000];
+        for (final CapturingSender collector : collectors) {
+            for (final ByteBuffer packet : collector.packets) {
+                final int value = packet.getInt(0);
+                assertTrue(!seen[value]);
+                seen[value] = true;
+            }
+        }
+        for (final boolean s : seen) {
+            assertTrue(s);
+        }
+        assertEquals(100_000, ring.published());
+    }
+
+    @Test
+    public void asyncSenderEncodesIntoRing() {
+        final PacketRing ring = new PacketRing(4, Encoder.MAX_PACKET_SIZE, PacketRing.Producers.SINGLE, PacketRing.WaitStrategy.SPIN, PacketRing.FullPolicy.BLOCK);
+        final AsyncSender sender = new AsyncSender(ring, new NetflowV5Encoder(), SOURCE);
+
+        final Flow flow = NetflowV5EncoderTest.flow();
+        sender.send(flow);
+
+        final ByteBuffer expected = ByteBuffer.allocate(Encoder.MAX_PACKET_SIZE);
+        new NetflowV5Encoder().encode(flow, expected);
+        expected.flip();
+
+        final long position = ring.poll();
+        assertSame(SOURCE, ring.source(position));
+
+        final ByteBuffer packet = ring.buffer(position);
+        final byte[] actual = new byte[packet.remaining()];
+        packet.get(actual);
+        final byte[] bytes = new byte[expected.remaining()];
+        expected.get(bytes);
+        assertArrayEquals(bytes, actual);
+    }
+}
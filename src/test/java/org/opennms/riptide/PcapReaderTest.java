@@ -0,0 +1,96 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.net.InetAddresses;
+
+public class PcapReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Inet4SockAddr addr(final String addr, final int port) {
+        return new Inet4SockAddr((Inet4Address) InetAddresses.forString(addr), port);
+    }
+
+    @Test
+    public void roundtrip() throws Exception {
+        final Path path = this.folder.getRoot().toPath().resolve("test.pcap");
+
+        final PcapSender sender = new PcapSender(path, addr("192.168.0.1", 9995), Arrays.asList(addr("192.168.0.2", 4729)));
+        for (int i = 0; i < 100; i++) {
+            final ByteBuffer packet = ByteBuffer.allocate(i + 1);
+            packet.put(0, (byte) i);
+            sender.send(packet, addr("10.0.0." + i, 1000 + i));
+        }
+        sender.close();
+
+        try (final PcapReader reader = new PcapReader(path)) {
+            for (int i = 0; i < 100; i++) {
+                assertTrue(reader.next());
+
+                assertEquals(InetAddresses.coerceToInteger(InetAddresses.forString("10.0.0." + i)), reader.sourceAddress());
+                assertEquals(1000 + i, reader.sourcePort());
+                assertEquals(InetAddresses.coerceToInteger(InetAddresses.forString("192.168.0.2")), reader.targetAddress());
+                assertEquals(4729, reader.targetPort());
+
+                assertEquals(i + 1, reader.payload().remaining());
+                assertEquals(i, reader.payload().get(reader.payload().position()));
+            }
+
+            assertFalse(reader.next());
+            assertEquals(100, reader.packets());
+            assertEquals(0, reader.skipped());
+        }
+    }
+
+    @Test
+    public void littleEndianRawNanos() throws Exception {
+        final Path path = this.folder.getRoot().toPath().resolve("test.pcap");
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0xA1B23C4D).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(0xFFFF).putInt(101);
+
+        // TCP packet which must be skipped
+        buffer.putInt(1).putInt(0).putInt(20).putInt(20);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.put((byte) 0x45).put((byte) 0).putShort((short) 20).putInt(0).put((byte) 64).put((byte) 6).putShort((short) 0);
+        buffer.putInt(0x0A000001).putInt(0x0A000002);
+
+        // UDP packet
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(2).putInt(500).putInt(32).putInt(32);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.put((byte) 0x45).put((byte) 0).putShort((short) 32).putInt(0).put((byte) 64).put((byte) 17).putShort((short) 0);
+        buffer.putInt(0x0A000001).putInt(0x0A000002);
+        buffer.putShort((short) 2055).putShort((short) 4729).putShort((short) 12).putShort((short) 0);
+        buffer.putInt(0xCAFEBABE);
+
+        Files.write(path, Arrays.copyOf(buffer.array(), buffer.position()));
+
+        try (final PcapReader reader = new PcapReader(path)) {
+            assertTrue(reader.next());
+            assertEquals(2_000_000_500L, reader.timestamp());
+            assertEquals(0x0A000001, reader.sourceAddress());
+            assertEquals(2055, reader.sourcePort());
+            assertEquals(4, reader.payload().remaining());
+            assertEquals(0xCAFEBABE, reader.payload().getInt(reader.payload().position()));
+
+            assertFalse(reader.next());
+            assertEquals(1, reader.skipped());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.net.InetAddresses;
+
+public class PcapSenderTest {
+    private final static int REGION_SIZE = 70000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Inet4SockAddr addr(final String addr, final int port) {
+        return new Inet4SockAddr((Inet4Address) InetAddresses.forString(addr), port);
+    }
+
+    private static Flow flow(final int i) {
+        return Flow.builder()
+                .withUptime(Duration.ofMillis(i))
+                .withTime(Instant.ofEpochSecond(1500000000L + i, 123456789L))
+                .withFlowSequence(i)
+                .withRecord(FlowRecord.builder()
+                        .withSrcAddr((Inet4Address) InetAddresses.forString("10.0.0.1"))
+                        .withDstAddr((Inet4Address) InetAddresses.forString("10.0.0.2"))
+                        .withNextHop((Inet4Address) InetAddresses.forString("10.0.0.254"))
+                        .withPackets(i)
+                        .withOctets(i * 100L))
+                .build();
+    }
+
+    @Test
+    public void records() throws Exception {
+        final Path path = this.folder.getRoot().toPath().resolve("test.pcap");
+
+        final Inet4SockAddr source = addr("192.168.0.1", 9995);
+        final List<Inet4SockAddr> targets = Arrays.asList(addr("192.168.0.2", 4729), addr("192.168.0.3", 4730));
+
+        // Enough flows to span multiple regions
+        final int count = 1000;
+
+        final PcapSender sender = new PcapSender(path, source, targets, new NetflowV5Encoder(), REGION_SIZE);
+        for (int i = 0; i < count; i++) {
+            sender.send(flow(i));
+        }
+        sender.close();
+
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        assertEquals(PcapSender.MAGIC, buffer.getInt());
+        assertEquals(2, buffer.getShort());
+        assertEquals(4, buffer.getShort());
+        assertEquals(0, buffer.getInt());
+        assertEquals(0, buffer.getInt());
+        assertEquals(0xFFFF, buffer.getInt());
+        assertEquals(PcapSender.LINKTYPE_ETHERNET, buffer.getInt());
+
+        final ByteBuffer expected = ByteBuffer.allocate(Encoder.MAX_PACKET_SIZE);
+
+        for (int i = 0; i < count; i++) {
+            expected.clear();
+            new NetflowV5Encoder().encode(flow(i), expected);
+            expected.flip();
+
+            for (final Inet4SockAddr target : targets) {
+                assertEquals(1500000000L + i, buffer.getInt());
+                assertEquals(123456, buffer.getInt());
+
+                final int length = buffer.getInt();
+                assertEquals(PcapSender.FRAME_HEADER_SIZE + expected.remaining(), length);
+                assertEquals(length, buffer.getInt());
+
+                final int frame = buffer.position();
+
+                // Ethernet
+                assertEquals(0x0800, buffer.getShort(frame + 12));
+
+                // IPv4
+                final int ip = frame + PacketHeaders.ETHERNET_HEADER_SIZE;
+                int sum = 0;
+                for (int j = 0; j < PacketHeaders.IP_HEADER_SIZE; j += 2) {
+                    sum += buffer.getShort(ip + j) & 0xFFFF;
+                }
+                sum = (sum & 0xFFFF) + (sum >>> 16);
+                assertEquals(0xFFFF, sum);
+                assertEquals(length - PacketHeaders.ETHERNET_HEADER_SIZE, buffer.getShort(ip + 2) & 0xFFFF);
+                assertEquals(0xC0A80001, buffer.getInt(ip + 12));
+                assertEquals(InetAddresses.coerceToInteger(target.addr), buffer.getInt(ip + 16));
+
+                // UDP
+                final int udp = ip + PacketHeaders.IP_HEADER_SIZE;
+                assertEquals(9995, buffer.getShort(udp) & 0xFFFF);
+                assertEquals(target.port, buffer.getShort(udp + 2) & 0xFFFF);
+                assertEquals(PacketHeaders.UDP_HEADER_SIZE + expected.remaining(), buffer.getShort(udp + 4) & 0xFFFF);
+
+                // Same checksums as a spoofed packet on the wire
+                final byte[] spoofed = new byte[UdpHeaderTemplate.SIZE + expected.remaining()];
+                expected.duplicate().get(spoofed, UdpHeaderTemplate.SIZE, expected.remaining());
+                new UdpHeaderTemplate(source, target).write(spoofed, 0, expected.remaining(),
+                        PacketHeaders.sum(spoofed, UdpHeaderTemplate.SIZE, expected.remaining()), 0);
+                assertEquals(((spoofed[26] & 0xFF) << 8) | (spoofed[27] & 0xFF), buffer.getShort(udp + 6) & 0xFFFF);
+                assertEquals(((spoofed[10] & 0xFF) << 8) | (spoofed[11] & 0xFF), buffer.getShort(ip + 10) & 0xFFFF);
+
+                // Payload
+                buffer.position(udp + PacketHeaders.UDP_HEADER_SIZE);
+                final ByteBuffer payload = buffer.slice();
+                payload.limit(expected.remaining());
+                assertEquals(expected, payload);
+
+                buffer.position(frame + length);
+            }
+        }
+
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void statefulEncoderMultipleTargets() throws Exception {
+        final Path path = this.folder.getRoot().toPath().resolve("v9.pcap");
+
+        final Inet4SockAddr source = addr("192.168.0.1", 9995);
+        final List<Inet4SockAddr> targets = Arrays.asList(addr("192.168.0.2", 4729), addr("192.168.0.3", 4730));
+
+        final int count = 10;
+
+        final PcapSender sender = new PcapSender(path, source, targets,
+                new NetflowV9Encoder(NetflowV9Encoder.DEFAULT_TEMPLATE, 3, Duration.ofHours(1)), REGION_SIZE);
+        for (int i = 0; i < count; i++) {
+            sender.send(flow(i));
+        }
+        sender.close();
+
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        buffer.position(PcapSender.FILE_HEADER_SIZE);
+
+        final int payloadOffset = PcapSender.FRAME_HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            // Every target receives the same packet - the template is refreshed with every third packet
+            final ByteBuffer[] payloads = new ByteBuffer[targets.size()];
+            for (int t = 0; t < targets.size(); t++) {
+                buffer.position(buffer.position() + 8);
+                final int length = buffer.getInt();
+                buffer.getInt();
+
+                buffer.position(buffer.position() + payloadOffset);
+                payloads[t] = buffer.slice();
+                payloads[t].limit(length - payloadOffset);
+                buffer.position(buffer.position() + length - payloadOffset);
+
+                // The first FlowSet follows the 20 byte header
+                assertEquals(i % 3 == 0 ? 0 : NetflowV9Encoder.DEFAULT_TEMPLATE.id, payloads[t].getShort(20) & 0xFFFF);
+            }
+
+            assertEquals(payloads[0], payloads[1]);
+        }
+
+        assertEquals(0, buffer.remaining());
+    }
+}
@@ -0,0 +1,173 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.net.InetAddresses;
+
+public class PopulationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Population population(final long sessions) {
+        return Population.builder()
+                .withSeed(42L)
+                .withSessions(sessions)
+                .withClients(Population.Hosts.builder()
+                        .withNetwork("10.0.0.0/16")
+                        .withAutonomousSystems(4)
+                        .withInterfaces(2)
+                        .build())
+                .withServers(Population.Hosts.builder()
+                        .withNetwork("192.168.1.0/24")
+                        .withSkew(1.5)
+                        .build())
+                .build();
+    }
+
+    @Test
+    public void zipf() {
+        final Zipf zipf = new Zipf(10, 1.0);
+        final SplittableRandom random = new SplittableRandom(1);
+
+        final int[] counts = new int[11];
+        for (int i = 0; i < 100_000; i++) {
+            counts[zipf.sample(random)]++;
+        }
+
+        // P(k) = 1 / (k * H(10))
+        final double harmonic = 2.9289682539682538;
+        for (int k = 1; k <= 10; k++) {
+            assertEquals(1.0 / (k * harmonic), counts[k] / 100_000.0, 0.01);
+        }
+    }
+
+    @Test
+    public void permutation() {
+        final Population.Hosts hosts = Population.Hosts.builder()
+                .withNetwork("10.0.0.0/24")
+                .withCount(200)
+                .build();
+
+        final BitSet seen = new BitSet();
+        for (int rank = 0; rank < 200; rank++) {
+            final int index = hosts.permute(rank);
+            assertTrue(index >= 0 && index < 200);
+            assertFalse(seen.get(index));
+            seen.set(index);
+        }
+    }
+
+    @Test
+    public void sessions() {
+        final Instant anchor = Instant.parse("2018-01-01T00:00:00Z");
+        final List<TcpSession> sessions = Lists.newArrayList(population(10_000).generator(anchor));
+        assertEquals(10_000, sessions.size());
+
+        final Map<Integer, Integer> servers = Maps.newHashMap();
+        for (final TcpSession session : sessions) {
+            final int client = InetAddresses.coerceToInteger(session.client.address);
+            final int server = InetAddresses.coerceToInteger(session.server.address);
+
+            assertTrue(client > InetAddresses.coerceToInteger(InetAddresses.forString("10.0.0.0")));
+            assertTrue(client < InetAddresses.coerceToInteger(InetAddresses.forString("10.0.255.255")));
+            assertEquals(64512 + ((client & 0xFFFF) - 1) * 4 / 65534, session.client.as);
+            assertEquals(1 + ((client & 0xFFFF) - 1) * 2 / 65534, session.client.snmpInterface);
+            assertEquals(16, session.client.mask);
+            assertTrue(session.client.port >= 32768 && session.client.port <= 60999);
+
+            assertTrue((server & 0xFF) >= 1 && (server & 0xFF) <= 254);
+            assertTrue(session.server.port == 443 || session.server.port == 80 || session.server.port == 53
+                    || session.server.port == 22 || session.server.port == 25);
+
+            assertEquals(anchor, session.timespan.s);
+            assertTrue(session.sendPackets >= 1 && session.sendSize >= 40 * session.sendPackets);
+
+            servers.merge(server, 1, Integer::sum);
+        }
+
+        // With a skew of 1.5, the most popular of the 254 servers gets about 40% of the sessions
+        assertEquals(0.40, servers.values().stream().mapToInt(Integer::intValue).max().getAsInt() / 10_000.0, 0.02);
+    }
+
+    @Test
+    public void deterministic() {
+        final Instant anchor = Instant.now();
+        final TcpSession s1 = population(1).generator(anchor).next();
+        final TcpSession s2 = population(1).generator(anchor).next();
+
+        assertEquals(s1.client.address, s2.client.address);
+        assertEquals(s1.client.port, s2.client.port);
+        assertEquals(s1.server.address, s2.server.address);
+        assertEquals(s1.sendSize, s2.sendSize);
+        assertEquals(s1.timespan.e, s2.timespan.e);
+    }
+
+    @Test
+    public void split() {
+        final List<PopulationGenerator> generators = population(10).generator(Instant.now()).split(4);
+        assertEquals(4, generators.size());
+
+        long total = 0;
+        for (final PopulationGenerator generator : generators) {
+            total += Lists.newArrayList(generator).size();
+        }
+        assertEquals(10, total);
+
+        assertEquals(3, population(3).generator(Instant.now()).split(4).size());
+        assertTrue(population(0).generator(Instant.now()).split(2).get(1).hasNext());
+    }
+
+    @Test
+    public void read() throws IOException {
+        final Path file = this.folder.newFile("population.yaml").toPath();
+        Files.write(file, ("" +
+                "seed: 7\n" +
+                "sessions: 1000\n" +
+                "arrivalRate: 100\n" +
+                "clients: {network: 10.1.0.0/16, count: 5000, skew: 1.2}\n" +
+                "servers: {network: 10.2.0.0/24, firstAS: 100, autonomousSystems: 2}\n" +
+                "ports: {443: 1}\n" +
+                "sendPackets: {type: pareto, scale: 10, shape: 1.5, max: 1000}\n" +
+                "recvPackets: {type: log-normal, mu: 2, sigma: 1}\n" +
+                "packetSize: {type: constant, value: 100}\n" +
+                "duration: {type: exponential, mean: 10}\n").getBytes());
+
+        final Population population = Population.read(file);
+        assertEquals(Long.valueOf(7), population.seed);
+        assertEquals(5000, population.clients.count);
+
+        final Instant anchor = Instant.parse("2018-01-01T00:00:00Z");
+        final List<TcpSession> sessions = Lists.newArrayList(population.generator(anchor));
+        assertEquals(1000, sessions.size());
+
+        for (final TcpSession session : sessions) {
+            assertEquals(443, session.server.port);
+            assertTrue(session.sendPackets >= 10 && session.sendPackets <= 1000);
+            assertEquals(100 * session.sendPackets, session.sendSize);
+            assertTrue(session.server.as == 100 || session.server.as == 101);
+        }
+
+        // Poisson arrivals at 100/s spread 1000 sessions over about 10 seconds
+        final Duration spread = Duration.between(anchor, sessions.get(sessions.size() - 1).timespan.s);
+        assertEquals(10_000, spread.toMillis(), 1_000);
+    }
+}
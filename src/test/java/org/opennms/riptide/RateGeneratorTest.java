@@ -0,0 +1,101 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class RateGeneratorTest {
+
+    private final static int TEMPLATES = 4;
+
+    private static TcpSession session(final int port) {
+        return TcpSession.builder()
+                .withClient(Endpoint.builder()
+                        .withAddress("10.0.0.1")
+                        .withPort(port)
+                        .build())
+                .withServer(Endpoint.builder()
+                        .withAddress("192.168.1.1")
+                        .withPort(443)
+                        .build())
+                .withTimespan(new Timespan(Instant.EPOCH, Instant.EPOCH.plusSeconds(10)))
+                .withSendPackets(10_000) // 1 packet/ms
+                .withSendSize(10_000_000) // 1000 bytes/ms
+                .withRecvPackets(5_000)
+                .withRecvSize(2_000_000)
+                .build();
+    }
+
+    @Test(timeout = 10_000)
+    public void generatesRateAndVolumes() {
+        final List<TcpSession> sessions = Lists.newArrayList();
+        for (int i = 0; i < TEMPLATES; i++) {
+            sessions.add(session(10000 + i));
+        }
+
+        final Map<Integer, List<long[]>> windows = Maps.newHashMap();
+        final long[] sendPackets = new long[1];
+        final long[] sendOctets = new long[1];
+        final long[] records = new long[1];
+
+        final Aggregator aggregator = new Aggregator(new ConsumingSender(flow -> {
+            for (int j = 0; j < flow.records.size(); j++) {
+                records[0]++;
+                if (flow.records.dstPort[j] == 443) {
+                    sendPackets[0] += flow.records.packets[j];
+                    sendOctets[0] += flow.records.octets[j];
+                    windows.computeIfAbsent(flow.records.srcPort[j], k -> Lists.newArrayList())
+                            .add(new long[]{flow.records.firstUptime[j], flow.records.lastUptime[j]});
+                }
+            }
+        }), 30);
+
+        final long start = System.nanoTime();
+        new RateGenerator(aggregator, sessions, Duration.ofSeconds(1), Duration.ofMillis(100))
+                .run(2000.0, Duration.ofSeconds(1));
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+
+        // 2000 records/s for a second plus the initial burst of the bucket
+        assertEquals(2000.0, records[0], 200.0);
+
+        // Each template reports the volume of the session for the time it was running - not a full flush interval
+        // per emit
+        final double expectedPackets = TEMPLATES * elapsedMillis;
+        assertEquals(expectedPackets, sendPackets[0], expectedPackets * 0.1);
+        assertEquals(expectedPackets * 1000.0, sendOctets[0], expectedPackets * 1000.0 * 0.1);
+
+        // The windows of a template follow each other
+        assertEquals(TEMPLATES, windows.size());
+        for (final List<long[]> template : windows.values()) {
+            for (int i = 1; i < template.size(); i++) {
+                assertEquals(template.get(i - 1)[1], template.get(i)[0]);
+                assertTrue(template.get(i)[1] >= template.get(i)[0]);
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void stopsOnInterrupt() throws Exception {
+        final Aggregator aggregator = new Aggregator(new ConsumingSender(flow -> {}), 30);
+        final RateGenerator generator = new RateGenerator(aggregator, Lists.newArrayList(session(10000)), Duration.ofSeconds(1), Duration.ofMillis(100));
+
+        final Thread thread = new Thread(() -> generator.run(1000.0, Duration.ZERO));
+        thread.start();
+
+        Thread.sleep(200);
+        thread.interrupt();
+
+        thread.join(5_000);
+        assertFalse(thread.isAlive());
+    }
+}
@@ -0,0 +1,81 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.net.InetAddresses;
+
+public class ReplayerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Inet4SockAddr addr(final String addr, final int port) {
+        return new Inet4SockAddr((Inet4Address) InetAddresses.forString(addr), port);
+    }
+
+    private static Flow flow(final long sequence) {
+        return Flow.builder()
+                .withUptime(Duration.ofMillis(50_000))
+                .withTime(Instant.ofEpochSecond(1_000_000_000L))
+                .withFlowSequence(sequence)
+                .withRecord(FlowRecord.builder()
+                        .withSrcAddr((Inet4Address) InetAddresses.forString("10.0.0.1"))
+                        .withDstAddr((Inet4Address) InetAddresses.forString("10.0.0.2"))
+                        .withNextHop((Inet4Address) InetAddresses.forString("10.0.0.254"))
+                        .withFirstUptime(Duration.ofMillis(10_000))
+                        .withLastUptime(Duration.ofMillis(40_000)))
+                .build();
+    }
+
+    @Test
+    public void rewrite() throws Exception {
+        final Path path = this.folder.getRoot().toPath().resolve("test.pcap");
+
+        final Inet4SockAddr exporter = addr("192.168.0.1", 9995);
+
+        final PcapSender writer = new PcapSender(path, exporter, Arrays.asList(addr("192.168.0.2", 4729)));
+        writer.send(flow(1000));
+        writer.send(flow(1001));
+        writer.close();
+
+        final CapturingSender sender = new CapturingSender();
+
+        final long before = System.currentTimeMillis();
+        try (final PcapReader reader = new PcapReader(path)) {
+            new Replayer(sender, new Pacer(), 0.0, true, null).run(reader);
+        }
+        final long after = System.currentTimeMillis();
+
+        assertEquals(2, sender.packets.size());
+
+        for (int i = 0; i < 2; i++) {
+            final ByteBuffer packet = sender.packets.get(i);
+
+            assertEquals(exporter.addr, sender.sources.get(i).addr);
+            assertEquals(exporter.port, sender.sources.get(i).port);
+
+            final long time = (packet.getInt(8) & 0xFFFFFFFFL) * 1000L + packet.getInt(12) / 1_000_000L;
+            assertTrue(time >= before - 1 && time <= after);
+
+            // Continued per exporter
+            assertEquals(i, packet.getInt(16));
+
+            // Relative timestamps are kept in line with the uptime
+            final int uptime = packet.getInt(4);
+            assertEquals(40_000, uptime - packet.getInt(24 + 24));
+            assertEquals(10_000, uptime - packet.getInt(24 + 28));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet4Address;
+import java.time.Duration;
+
+import org.junit.Test;
+
+import com.google.common.net.InetAddresses;
+
+public class SaturationTest {
+
+    /**
+     * A receiver dropping everything above its capacity.
+     */
+    private static class Receiver {
+        private final Metrics metrics = new Metrics();
+        private final double capacity;
+
+        private long received = 0;
+
+        private Receiver(final double capacity) {
+            this.capacity = capacity;
+        }
+
+        private void offer(final double rate, final Duration duration) {
+            final long sent = (long) (rate * duration.toMillis() / 1000.0);
+            for (long i = 0; i < sent; i++) {
+                this.metrics.flow(1);
+            }
+            this.received += Math.min(sent, (long) (this.capacity * duration.toMillis() / 1000.0));
+        }
+
+        private Saturation saturation() {
+            return new Saturation(this::offer,
+                    () -> new SinkProbe.Snapshot(this.received, 0, new double[0], new long[0]),
+                    this.metrics, Duration.ofSeconds(1), Duration.ZERO, 0.001);
+        }
+    }
+
+    @Test
+    public void step() throws Exception {
+        final Saturation saturation = new Receiver(450).saturation();
+
+        assertEquals(400.0, saturation.run(Saturation.Search.STEP, 100, 100, 0, Duration.ZERO), 0.0);
+        assertEquals(5, saturation.steps().size());
+        assertTrue(saturation.steps().get(3).sustained);
+        assertFalse(saturation.steps().get(4).sustained);
+        assertEquals(50.0 / 500.0, saturation.steps().get(4).loss, 1e-9);
+    }
+
+    @Test
+    public void stepLimited() throws Exception {
+        final Saturation saturation = new Receiver(450).saturation();
+
+        assertEquals(300.0, saturation.run(Saturation.Search.STEP, 100, 100, 300, Duration.ZERO), 0.0);
+        assertEquals(3, saturation.steps().size());
+    }
+
+    @Test
+    public void binary() throws Exception {
+        final Saturation saturation = new Receiver(450).saturation();
+
+        final double best = saturation.run(Saturation.Search.BINARY, 100, 10, 0, Duration.ZERO);
+        assertTrue(best > 440.0 && best <= 450.0);
+
+        // Doubling to 800 and bisecting down to the resolution
+        assertEquals(800.0, saturation.steps().get(3).rate, 0.0);
+        assertEquals(10, saturation.steps().size());
+    }
+
+    @Test
+    public void binaryLimited() throws Exception {
+        final Saturation saturation = new Receiver(10_000).saturation();
+
+        assertEquals(1000.0, saturation.run(Saturation.Search.BINARY, 100, 10, 1000, Duration.ZERO), 0.0);
+        assertEquals(1000.0, saturation.steps().get(4).rate, 0.0);
+        assertEquals(5, saturation.steps().size());
+    }
+
+    @Test
+    public void errors() throws Exception {
+        final Receiver receiver = new Receiver(10_000);
+        final Metrics.Target target = receiver.metrics.target(new Inet4SockAddr((Inet4Address) InetAddresses.forString("10.0.0.1"), 2055));
+
+        final Saturation saturation = new Saturation((rate, duration) -> {
+                    receiver.offer(rate, duration);
+                    if (rate > 200) {
+                        target.failed();
+                    }
+                },
+                () -> new SinkProbe.Snapshot(receiver.received, 0, new double[0], new long[0]),
+                receiver.metrics, Duration.ofSeconds(1), Duration.ZERO, 0.001);
+
+        assertEquals(200.0, saturation.run(Saturation.Search.STEP, 100, 100, 0, Duration.ZERO), 0.0);
+        assertEquals(1, saturation.steps().get(2).errors);
+    }
+}
@@ -0,0 +1,68 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+public class SessionFeedTest {
+
+    private final static Exporter EXPORTER = Exporter.random(Instant.EPOCH);
+
+    private static TcpSession session() {
+        return TcpSession.builder()
+                .withClient(Endpoint.builder()
+                        .withAddress("10.0.0.1")
+                        .build())
+                .withServer(Endpoint.builder()
+                        .withAddress("192.168.1.1")
+                        .withPort(443)
+                        .build())
+                .withTimespan(new Timespan(Instant.EPOCH, Instant.EPOCH.plusSeconds(30)))
+                .build();
+    }
+
+    @Test
+    public void handsOverSessions() throws Exception {
+        final SessionFeed feed = new SessionFeed(2);
+        final TcpSession session = session();
+
+        feed.put(session, EXPORTER);
+        feed.finish();
+
+        assertSame(session, feed.take().session);
+        assertNull(feed.take());
+    }
+
+    @Test(timeout = 10_000)
+    public void cancelFailsBlockedReader() throws Exception {
+        final SessionFeed feed = new SessionFeed(1);
+        feed.put(session(), EXPORTER);
+
+        final Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            feed.cancel();
+        });
+        consumer.start();
+
+        try {
+            // The feed is full and nobody takes from it
+            feed.put(session(), EXPORTER);
+            fail("Expected the feed to be cancelled");
+        } catch (final CancellationException e) {
+            // Expected
+        }
+
+        // Finishing a cancelled feed does not block either
+        feed.finish();
+        consumer.join();
+    }
+}
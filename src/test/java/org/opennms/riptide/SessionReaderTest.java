@@ -0,0 +1,84 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.net.InetAddresses;
+
+public class SessionReaderTest {
+
+    private static List<TcpSession> read(final String input) throws IOException {
+        try (final SessionReader reader = new SessionReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))) {
+            final List<TcpSession> sessions = Lists.newArrayList(reader);
+            assertFalse(reader.hasNext());
+            assertEquals(sessions.size(), reader.count());
+            return sessions;
+        }
+    }
+
+    private static void assertSession(final TcpSession session, final String client, final long duration) {
+        assertEquals(InetAddresses.forString(client), session.client.address);
+        assertEquals(Duration.ofSeconds(duration), session.timespan.duration());
+    }
+
+    @Test
+    public void yamlDocuments() throws IOException {
+        final List<TcpSession> sessions = read("" +
+                "duration: 3\n" +
+                "sendSize: 5000\n" +
+                "client: {address: 10.0.0.1}\n" +
+                "server: {address: 10.0.1.1, port: 80}\n" +
+                "---\n" +
+                "duration: 4\n" +
+                "client: {address: 10.0.0.2}\n" +
+                "server: {address: 10.0.1.1, port: 80}\n");
+
+        assertEquals(2, sessions.size());
+        assertSession(sessions.get(0), "10.0.0.1", 3);
+        assertEquals(5000, sessions.get(0).sendSize);
+        assertSession(sessions.get(1), "10.0.0.2", 4);
+    }
+
+    @Test
+    public void yamlScenarios() throws IOException {
+        final List<TcpSession> sessions = read("" +
+                "sessions:\n" +
+                "  - duration: 3\n" +
+                "    client: {address: 10.0.0.1}\n" +
+                "    server: {address: 10.0.1.1, port: 80}\n" +
+                "  - duration: 4\n" +
+                "    client: {address: 10.0.0.2}\n" +
+                "    server: {address: 10.0.1.1, port: 80}\n" +
+                "---\n" +
+                "- duration: 5\n" +
+                "  client: {address: 10.0.0.3}\n" +
+                "  server: {address: 10.0.1.1, port: 80}\n");
+
+        assertEquals(3, sessions.size());
+        assertSession(sessions.get(0), "10.0.0.1", 3);
+        assertSession(sessions.get(1), "10.0.0.2", 4);
+        assertSession(sessions.get(2), "10.0.0.3", 5);
+    }
+
+    @Test
+    public void jsonLines() throws IOException {
+        final List<TcpSession> sessions = read("" +
+                "{\"duration\": 3, \"client\": {\"address\": \"10.0.0.1\"}, \"server\": {\"address\": \"10.0.1.1\", \"port\": 80}}\n" +
+                "{\"duration\": 4, \"client\": {\"address\": \"10.0.0.2\"}, \"server\": {\"address\": \"10.0.1.1\", \"port\": 80}}\n" +
+                "{\"sessions\": [{\"duration\": 5, \"client\": {\"address\": \"10.0.0.3\"}, \"server\": {\"address\": \"10.0.1.1\", \"port\": 80}}]}\n");
+
+        assertEquals(3, sessions.size());
+        assertSession(sessions.get(0), "10.0.0.1", 3);
+        assertSession(sessions.get(1), "10.0.0.2", 4);
+        assertSession(sessions.get(2), "10.0.0.3", 5);
+    }
+}
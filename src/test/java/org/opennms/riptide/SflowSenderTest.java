@@ -0,0 +1,190 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Test;
+
+import com.google.common.net.InetAddresses;
+
+public class SflowSenderTest {
+    private final static Inet4SockAddr AGENT = new Inet4SockAddr((Inet4Address) InetAddresses.forString("192.168.0.1"), 6343);
+
+    private final static Instant TIME = Instant.parse("2018-10-01T00:00:00Z");
+
+    private static Flow flow(final Instant time, final long packets) {
+        return flow(time, packets, 0x21, 3);
+    }
+
+    private static Flow flow(final Instant time, final long packets, final int engineId, final int input) {
+        return Flow.builder()
+                .withUptime(Duration.ofSeconds(100))
+                .withTime(time)
+                .withEngineType((short) 0x20)
+                .withEngineId((short) engineId)
+                .withRecord(FlowRecord.builder()
+                        .withSrcAddr((Inet4Address) InetAddresses.forString("10.0.0.1"))
+                        .withDstAddr((Inet4Address) InetAddresses.forString("10.0.0.2"))
+                        .withNextHop((Inet4Address) InetAddresses.forString("10.0.0.254"))
+                        .withSnmpInputIface(input)
+                        .withSnmpOutputIface(4)
+                        .withPackets(packets)
+                        .withOctets(packets * 1000)
+                        .withSrcPort(4711)
+                        .withDstPort(80)
+                        .withTcpFlags((short) 0x18)
+                        .withProtocol((short) 6))
+                .build();
+    }
+
+    @Test
+    public void flowSamples() {
+        final CapturingSender capture = new CapturingSender();
+        final SflowSender sender = new SflowSender(capture, AGENT, 1, 100, Duration.ofSeconds(20), 1472);
+
+        sender.send(flow(TIME, 300));
+        sender.flush();
+
+        assertEquals(1, capture.packets.size());
+        final ByteBuffer datagram = capture.packets.get(0);
+
+        assertEquals(5, datagram.getInt(0));
+        assertEquals(1, datagram.getInt(4));
+        assertEquals(0xC0A80001, datagram.getInt(8));
+        assertEquals(1 << 16 | 0x2021, datagram.getInt(12));
+        assertEquals(0, datagram.getInt(16));
+        assertEquals(100_000, datagram.getInt(20));
+        assertEquals(3, datagram.getInt(24));
+
+        // Flow sample with raw packet header of Ethernet, IPv4 and TCP padded to 56 bytes
+        assertEquals(28 + 3 * (8 + 32 + 8 + 16 + 56), datagram.limit());
+        for (int s = 0; s < 3; s++) {
+            final int sample = 28 + s * 120;
+            assertEquals(1, datagram.getInt(sample));
+            assertEquals(112, datagram.getInt(sample + 4));
+            assertEquals(s, datagram.getInt(sample + 8));
+            assertEquals(3, datagram.getInt(sample + 12));
+            assertEquals(100, datagram.getInt(sample + 16));
+            assertEquals(300, datagram.getInt(sample + 20));
+            assertEquals(3, datagram.getInt(sample + 28));
+            assertEquals(4, datagram.getInt(sample + 32));
+            assertEquals(1, datagram.getInt(sample + 36));
+
+            assertEquals(1, datagram.getInt(sample + 40));
+            assertEquals(72, datagram.getInt(sample + 44));
+            assertEquals(1, datagram.getInt(sample + 48));
+            assertEquals(14 + 1000 + 4, datagram.getInt(sample + 52));
+            assertEquals(4, datagram.getInt(sample + 56));
+            assertEquals(54, datagram.getInt(sample + 60));
+
+            final int ip = sample + 64 + 14;
+            assertEquals(0x0800, datagram.getShort(ip - 2));
+            assertEquals(1000, datagram.getShort(ip + 2));
+            assertEquals(6, datagram.get(ip + 9));
+            assertEquals(0x0A000001, datagram.getInt(ip + 12));
+            assertEquals(0x0A000002, datagram.getInt(ip + 16));
+
+            // Checksum over a valid header sums up to 0xFFFF
+            int sum = 0;
+            for (int i = 0; i < 20; i += 2) {
+                sum += datagram.getShort(ip + i) & 0xFFFF;
+            }
+            assertEquals(0xFFFF, (sum & 0xFFFF) + (sum >>> 16));
+
+            assertEquals(4711, datagram.getShort(ip + 20));
+            assertEquals(80, datagram.getShort(ip + 22));
+            assertEquals(0x5018, datagram.getShort(ip + 32));
+        }
+    }
+
+    @Test
+    public void splitDatagrams() {
+        final CapturingSender capture = new CapturingSender();
+        final SflowSender sender = new SflowSender(capture, AGENT, 0, 10, Duration.ofSeconds(20), 28 + 4 * 120);
+
+        sender.send(flow(TIME, 100));
+        sender.flush();
+
+        assertEquals(3, capture.packets.size());
+        assertEquals(4, capture.packets.get(0).getInt(24));
+        assertEquals(4, capture.packets.get(1).getInt(24));
+        assertEquals(2, capture.packets.get(2).getInt(24));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, capture.packets.get(i).getInt(16));
+        }
+    }
+
+    @Test
+    public void counterSamples() {
+        final CapturingSender capture = new CapturingSender();
+        final SflowSender sender = new SflowSender(capture, AGENT, 0, 1_000_000, Duration.ofSeconds(20), 1472);
+
+        sender.send(flow(TIME, 10));
+        sender.send(flow(TIME.plusSeconds(10), 10));
+        sender.flush();
+        assertEquals(0, capture.packets.size());
+
+        sender.send(flow(TIME.plusSeconds(20), 10));
+        sender.flush();
+        assertEquals(1, capture.packets.size());
+
+        final ByteBuffer datagram = capture.packets.get(0);
+        assertEquals(2, datagram.getInt(24));
+
+        int sample = 28;
+        for (int s = 0; s < 2; s++) {
+            assertEquals(2, datagram.getInt(sample));
+            assertEquals(108, datagram.getInt(sample + 4));
+
+            final int ifIndex = datagram.getInt(sample + 12);
+            final int counters = sample + 20 + 8;
+            assertEquals(ifIndex, datagram.getInt(counters));
+            if (ifIndex == 3) {
+                assertEquals(30_000, datagram.getLong(counters + 24));
+                assertEquals(30, datagram.getInt(counters + 32));
+                assertEquals(0, datagram.getLong(counters + 56));
+            } else {
+                assertEquals(4, ifIndex);
+                assertEquals(0, datagram.getLong(counters + 24));
+                assertEquals(30_000, datagram.getLong(counters + 56));
+                assertEquals(30, datagram.getInt(counters + 64));
+            }
+
+            sample += 116;
+        }
+        assertEquals(sample, datagram.limit());
+    }
+
+    @Test
+    public void subAgentsAndInterfaces() {
+        final CapturingSender capture = new CapturingSender();
+        final SflowSender sender = new SflowSender(capture, AGENT, 0, 1_000_000, Duration.ofSeconds(20), 1472);
+
+        // Alternating exporters with interfaces beyond the directly indexed range
+        sender.send(flow(TIME, 10, 0x21, 3));
+        sender.send(flow(TIME, 10, 0x22, 100_000));
+        sender.send(flow(TIME, 10, 0x21, 3));
+        sender.send(flow(TIME.plusSeconds(20), 10, 0x21, 3));
+        sender.send(flow(TIME.plusSeconds(20), 10, 0x22, 100_000));
+        sender.flush();
+
+        assertEquals(2, capture.packets.size());
+        for (final ByteBuffer datagram : capture.packets) {
+            assertEquals(2, datagram.getInt(24));
+
+            final int subAgent = datagram.getInt(12);
+            final int input = subAgent == 0x2021 ? 3 : 100_000;
+            assertEquals(input == 3 ? 0x2021 : 0x2022, subAgent);
+
+            // Interfaces are reported in the order they were seen
+            assertEquals(input, datagram.getInt(28 + 12));
+            assertEquals(4, datagram.getInt(28 + 116 + 12));
+            assertEquals((input == 3 ? 30 : 20) * 1000, datagram.getLong(28 + 20 + 8 + 24));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+
+import org.junit.Test;
+
+public class SimulationClockTest {
+
+    private final static Instant ORIGIN = Instant.ofEpochSecond(1_500_000_000L);
+
+    @Test
+    public void virtualJumps() {
+        final SimulationClock clock = SimulationClock.virtual(ORIGIN);
+        assertEquals(ORIGIN.toEpochMilli(), clock.millis());
+
+        // A day passes without any waiting
+        final long start = System.nanoTime();
+        clock.sleepUntil(ORIGIN.toEpochMilli() + 86_400_000L);
+        assertTrue(System.nanoTime() - start < 50_000_000L);
+        assertEquals(ORIGIN.toEpochMilli() + 86_400_000L, clock.millis());
+
+        // Time never goes backwards
+        clock.sleepUntil(ORIGIN.toEpochMilli());
+        assertEquals(ORIGIN.toEpochMilli() + 86_400_000L, clock.millis());
+    }
+
+    @Test
+    public void scaledRunsFaster() {
+        final SimulationClock clock = SimulationClock.scaled(ORIGIN, 10.0);
+
+        // 2 seconds of simulation time take 200ms of real time
+        final long start = System.nanoTime();
+        clock.sleepUntil(ORIGIN.toEpochMilli() + 2_000L);
+        final long elapsed = System.nanoTime() - start;
+
+        // Never early, but scheduling may add delay
+        assertTrue(elapsed >= 199_000_000L);
+        assertTrue(elapsed < 400_000_000L);
+        assertTrue(clock.millis() >= ORIGIN.toEpochMilli() + 2_000L);
+        assertTrue(clock.millis() < ORIGIN.toEpochMilli() + 2_500L);
+    }
+
+    @Test
+    public void scaledIgnoresOpenDeadlines() {
+        final SimulationClock clock = SimulationClock.scaled(ORIGIN, 1.0);
+
+        final long start = System.nanoTime();
+        clock.sleepUntil(Long.MAX_VALUE);
+        clock.sleepUntil(Long.MIN_VALUE);
+        assertTrue(System.nanoTime() - start < 50_000_000L);
+    }
+
+    @Test
+    public void wallFollowsSystemTime() {
+        final SimulationClock clock = SimulationClock.wall();
+        assertEquals(System.currentTimeMillis(), clock.millis(), 50L);
+
+        final long deadline = clock.millis() + 100L;
+        clock.sleepUntil(deadline);
+        assertTrue(clock.millis() >= deadline);
+        assertEquals(System.currentTimeMillis(), clock.millis(), 50L);
+    }
+}
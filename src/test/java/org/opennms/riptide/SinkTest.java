@@ -0,0 +1,139 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Test;
+
+public class SinkTest {
+
+    private final static int SOURCE = 0x7F000001;
+
+    private static ByteBuffer packet(final long sequence, final int records, final int engine, final Duration uptime, final Instant time) {
+        final Flow.Builder flow = Flow.builder()
+                .withUptime(uptime)
+                .withTime(time)
+                .withFlowSequence(sequence)
+                .withEngineId((short) engine);
+        for (int i = 0; i < records; i++) {
+            flow.withRecord(NetflowV5EncoderTest.flow().records.get(0));
+        }
+
+        final ByteBuffer buffer = flow.build().write();
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void receive(final Sink sink, final long sequence, final int records) {
+        receive(sink, sequence, records, 0);
+    }
+
+    private static void receive(final Sink sink, final long sequence, final int records, final int engine) {
+        receive(sink, sequence, records, engine, Duration.ofHours(1));
+    }
+
+    private static void receive(final Sink sink, final long sequence, final int records, final int engine, final Duration uptime) {
+        final Instant time = Instant.ofEpochSecond(1000);
+        sink.receive(packet(sequence, records, engine, uptime, time), SOURCE, time.toEpochMilli() * 1000L + 2500L);
+    }
+
+    @Test
+    public void inOrder() {
+        final Sink sink = new Sink();
+        receive(sink, 100, 10);
+        receive(sink, 110, 10);
+        receive(sink, 120, 5);
+
+        assertEquals(3, sink.datagrams());
+        assertEquals(25, sink.records());
+        assertEquals(0, sink.missing());
+        assertEquals(0, sink.duplicates());
+        assertEquals(0, sink.reordered());
+        assertEquals(2500L, sink.latency().max());
+    }
+
+    @Test
+    public void gapsAndReordering() {
+        final Sink sink = new Sink();
+        receive(sink, 0, 10);
+        receive(sink, 20, 10); // 10..19 missing
+        receive(sink, 40, 10); // 30..39 missing
+        assertEquals(20, sink.missing());
+
+        receive(sink, 10, 10); // Late
+        assertEquals(1, sink.reordered());
+        assertEquals(10, sink.missing());
+
+        receive(sink, 10, 10); // Again
+        receive(sink, 40, 10); // Again
+        assertEquals(2, sink.duplicates());
+
+        assertEquals(4, sink.datagrams());
+        assertEquals(40, sink.records());
+    }
+
+    @Test
+    public void exporters() {
+        final Sink sink = new Sink();
+
+        // Sequences are tracked per engine and wrap around at 32 bits
+        receive(sink, 0xFFFFFFFBL, 10, 1);
+        receive(sink, 5, 10, 1);
+        receive(sink, 0, 10, 2);
+        receive(sink, 10, 10, 2);
+
+        assertEquals(2, sink.exporters());
+        assertEquals(0, sink.missing());
+
+        // A restart of the exporter is neither a gap nor a duplicate
+        receive(sink, 0, 10, 1, Duration.ofSeconds(5));
+        assertEquals(0, sink.missing());
+        assertEquals(0, sink.reordered());
+        assertEquals(0, sink.duplicates());
+    }
+
+    @Test
+    public void uptimeWrap() {
+        final Sink sink = new Sink();
+        receive(sink, 0, 10, 0, Duration.ofMillis(0xFFFFFFFFL - 500L));
+
+        // The uptime wraps around - the gap is still counted
+        receive(sink, 20, 10, 0, Duration.ofMillis(500L));
+        assertEquals(10, sink.missing());
+    }
+
+    @Test
+    public void invalid() {
+        final Sink sink = new Sink();
+        sink.receive(ByteBuffer.allocate(10), SOURCE, 0);
+
+        assertEquals(1, sink.invalid());
+        assertEquals(0, sink.datagrams());
+    }
+
+    @Test
+    public void probe() throws IOException {
+        final Sink sink = new Sink();
+        receive(sink, 100, 10);
+        final SinkProbe.Snapshot before = probe(sink);
+
+        receive(sink, 120, 5);
+        final SinkProbe.Snapshot after = probe(sink);
+
+        assertEquals(10, before.records);
+        assertEquals(15, after.records);
+        assertEquals(10, after.missing);
+        assertEquals(0.0025, after.latency(before, 99.0), 0.0);
+        assertEquals(Double.NaN, after.latency(after, 50.0), 0.0);
+    }
+
+    private static SinkProbe.Snapshot probe(final Sink sink) throws IOException {
+        final StringBuilder out = new StringBuilder();
+        sink.prometheus(out);
+        return SinkProbe.parse(out.toString());
+    }
+}
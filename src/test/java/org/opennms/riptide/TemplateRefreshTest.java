@@ -0,0 +1,42 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+public class TemplateRefreshTest {
+
+    @Test
+    public void tracksManySources() {
+        final TemplateRefresh refresh = new TemplateRefresh(3, Duration.ofMinutes(1));
+
+        // Enough sources to grow the table several times, including ones colliding in the low bits
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(refresh.due(i << 8, 0L));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(refresh.due(i << 8, 1L));
+            assertFalse(refresh.due(i << 8, 2L));
+        }
+
+        // Every source is refreshed after three packets on its own
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(refresh.due(i << 8, 3L));
+        }
+    }
+
+    @Test
+    public void refreshesByTime() {
+        final TemplateRefresh refresh = new TemplateRefresh(100, Duration.ofSeconds(1));
+
+        assertTrue(refresh.due(-1, 0L));
+        assertTrue(refresh.due(0, 0L));
+        assertFalse(refresh.due(-1, 999L));
+        assertTrue(refresh.due(-1, 1000L));
+        assertFalse(refresh.due(0, 999L));
+    }
+}
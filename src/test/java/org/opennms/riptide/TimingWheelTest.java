@@ -0,0 +1,103 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TimingWheelTest {
+    @Test
+    public void empty() {
+        final TimingWheel<String> wheel = new TimingWheel<>(1, 8, 0);
+        assertTrue(wheel.isEmpty());
+        assertEquals(Long.MAX_VALUE, wheel.nextDeadline());
+    }
+
+    @Test
+    public void ordered() {
+        final TimingWheel<Long> wheel = new TimingWheel<>(1, 8, 0);
+        wheel.schedule(5, 5L);
+        wheel.schedule(3, 3L);
+        wheel.schedule(100, 100L);
+        wheel.schedule(1000, 1000L);
+        wheel.schedule(7, 7L);
+
+        assertEquals(5, wheel.size());
+        assertEquals(3, wheel.nextDeadline());
+
+        final List<Long> fired = Lists.newArrayList();
+
+        wheel.advance(4, fired::add);
+        assertEquals(Lists.newArrayList(3L), fired);
+
+        wheel.advance(99, fired::add);
+        assertEquals(Lists.newArrayList(3L, 5L, 7L), fired);
+
+        wheel.advance(100, fired::add);
+        assertEquals(Lists.newArrayList(3L, 5L, 7L, 100L), fired);
+
+        wheel.advance(5000, fired::add);
+        assertEquals(Lists.newArrayList(3L, 5L, 7L, 100L, 1000L), fired);
+
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void overflowDeadlines() {
+        final TimingWheel<Long> wheel = new TimingWheel<>(1, 4, 0);
+        for (long i = 1; i <= 1000; i++) {
+            wheel.schedule(i * 37, i * 37);
+        }
+
+        final List<Long> fired = Lists.newArrayList();
+        long now = 0;
+        while (!wheel.isEmpty()) {
+            now = Math.max(now, wheel.nextDeadline());
+            final long current = now;
+            wheel.advance(current, e -> {
+                assertTrue(e <= current);
+                fired.add(e);
+            });
+        }
+
+        assertEquals(1000, fired.size());
+        for (int i = 0; i < fired.size(); i++) {
+            assertEquals((i + 1) * 37L, (long) fired.get(i));
+        }
+    }
+
+    @Test
+    public void rescheduleWhileFiring() {
+        final TimingWheel<Long> wheel = new TimingWheel<>(1, 8, 0);
+        wheel.schedule(10, 10L);
+
+        final List<Long> fired = Lists.newArrayList();
+        wheel.advance(50, e -> {
+            fired.add(e);
+            if (e < 40) {
+                wheel.schedule(e + 10, e + 10);
+            }
+        });
+
+        // Re-scheduled deadlines before now are fired in the same advance
+        assertEquals(Lists.newArrayList(10L, 20L, 30L, 40L), fired);
+        assertTrue(wheel.isEmpty());
+
+        wheel.schedule(60, 60L);
+        wheel.advance(55, fired::add);
+        assertEquals(4, fired.size());
+
+        // Overflow bucket is cascaded down before the element is handed out
+        assertEquals(56, wheel.nextDeadline());
+        wheel.advance(56, fired::add);
+        assertEquals(4, fired.size());
+        assertEquals(60, wheel.nextDeadline());
+
+        wheel.advance(60, fired::add);
+        assertEquals(Lists.newArrayList(10L, 20L, 30L, 40L, 60L), fired);
+    }
+}
@@ -0,0 +1,64 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+    @Test
+    public void refill() {
+        final AtomicLong now = new AtomicLong(0);
+        final TokenBucket bucket = new TokenBucket(1000.0, 10.0, now::get);
+
+        // Empty at start - one token every millisecond
+        assertEquals(2_000_000L, bucket.tryAcquire(2));
+
+        now.set(2_000_000L);
+        assertEquals(0L, bucket.tryAcquire(2));
+        assertEquals(1_000_000L, bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void burst() {
+        final AtomicLong now = new AtomicLong(0);
+        final TokenBucket bucket = new TokenBucket(1000.0, 10.0, now::get);
+
+        // Idle for a long time does not accumulate more than the burst
+        now.set(1_000_000_000L);
+        assertEquals(0L, bucket.tryAcquire(10));
+        assertEquals(1_000_000L, bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void acquire() {
+        final TokenBucket bucket = new TokenBucket(10_000.0, 10.0);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            bucket.acquire(10);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        // 1000 tokens at 10k/s minus the initial burst - the rate must never be exceeded but scheduling may add delay
+        assertTrue(elapsed >= 99_000_000L);
+        assertTrue(elapsed < 200_000_000L);
+    }
+
+    @Test(timeout = 5_000)
+    public void acquireInterrupted() {
+        // Ten seconds until the first token is available
+        final TokenBucket bucket = new TokenBucket(0.1, 1.0);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(bucket.acquire(1));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
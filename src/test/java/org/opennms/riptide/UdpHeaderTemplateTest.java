@@ -0,0 +1,89 @@
+package org.opennms.riptide;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class UdpHeaderTemplateTest {
+
+    private final static int SOURCE = 0x0A000001; // 10.0.0.1
+    private final static int TARGET = 0xC0A80102; // 192.168.1.2
+
+    /**
+     * Calculates the UDP checksum from scratch over the pseudo header, the UDP header and the payload.
+     */
+    private static int udpChecksum(final byte[] packet, final int length) {
+        final int udpLength = length - PacketHeaders.IP_HEADER_SIZE;
+
+        final ByteBuffer pseudo = ByteBuffer.allocate(12 + udpLength);
+        pseudo.put(packet, 12, 8);
+        pseudo.put((byte) 0);
+        pseudo.put((byte) PacketHeaders.PROTOCOL_UDP);
+        pseudo.putShort((short) udpLength);
+        pseudo.put(packet, PacketHeaders.IP_HEADER_SIZE, udpLength);
+
+        // Checksum field is zero while calculating
+        pseudo.putShort(12 + 6, (short) 0);
+
+        return ~PacketHeaders.sum(pseudo.array(), 0, pseudo.capacity()) & 0xFFFF;
+    }
+
+    private static byte[] packet(final int payloadLength, final int identification) {
+        final byte[] packet = new byte[UdpHeaderTemplate.SIZE + payloadLength];
+        new Random(payloadLength).nextBytes(packet);
+
+        final UdpHeaderTemplate template = new UdpHeaderTemplate(SOURCE, 9995, TARGET, 4738);
+        template.write(packet, 0, payloadLength,
+                PacketHeaders.sum(packet, UdpHeaderTemplate.SIZE, payloadLength),
+                identification);
+        return packet;
+    }
+
+    @Test
+    public void header() {
+        final byte[] packet = packet(100, 0x1234);
+
+        final ByteBuffer expected = ByteBuffer.allocate(UdpHeaderTemplate.SIZE);
+        PacketHeaders.ipv4Udp(expected, SOURCE, 9995, TARGET, 4738, 100);
+
+        // Everything but identification and checksums matches the regular header
+        final byte[] actual = Arrays.copyOf(packet, UdpHeaderTemplate.SIZE);
+        assertEquals(0x1234, ((actual[4] & 0xFF) << 8) | (actual[5] & 0xFF));
+        actual[4] = actual[5] = 0;
+        actual[10] = actual[11] = 0;
+        actual[26] = actual[27] = 0;
+        assertArrayEquals(expected.array(), actual);
+    }
+
+    @Test
+    public void checksums() {
+        for (final int length : new int[] { 0, 1, 47, 48, 1464, 8000 }) {
+            for (final int identification : new int[] { 0, 1, 0xFFFF }) {
+                final byte[] packet = packet(length, identification);
+
+                // A correct IPv4 header sums up to all ones
+                assertEquals(0xFFFF, PacketHeaders.sum(packet, 0, PacketHeaders.IP_HEADER_SIZE));
+
+                final int checksum = ((packet[26] & 0xFF) << 8) | (packet[27] & 0xFF);
+                final int expected = udpChecksum(packet, packet.length);
+                assertEquals(expected != 0 ? expected : 0xFFFF, checksum);
+            }
+        }
+    }
+
+    @Test
+    public void checksumInPlace() {
+        // Verifying the UDP checksum including the checksum field yields all ones
+        final byte[] packet = packet(333, 7);
+
+        final int udpLength = packet.length - PacketHeaders.IP_HEADER_SIZE;
+        final long sum = PacketHeaders.sum(packet, 12, 8) + PacketHeaders.PROTOCOL_UDP + udpLength
+                + PacketHeaders.sum(packet, PacketHeaders.IP_HEADER_SIZE, udpLength);
+        assertEquals(0xFFFF, PacketHeaders.fold(sum));
+    }
+}